@@ -23,8 +23,10 @@ package com.github.gquintana.metrics.proxy;
 
 import net.sf.cglib.proxy.*;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
-import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
@@ -32,7 +34,11 @@ import java.util.concurrent.ConcurrentHashMap;
  */
 public class CGLibProxyFactory implements ProxyFactory {
 
-    private final Map<ProxyClass, Class> proxyClasses = new ConcurrentHashMap<ProxyClass, Class>();
+    /**
+     * Proxy class constructors of type {@code ()Object}, by {@link ProxyClass} then by {@link ProxyHandler.InvocationFilter}:
+     * the callback filter depends on the intercepted methods
+     */
+    private final ConcurrentHashMap<ProxyClass, ConcurrentHashMap<ProxyHandler.InvocationFilter, MethodHandle>> proxyConstructors = new ConcurrentHashMap<>();
     private static final Class[] ADAPTER_CALLBACK_TYPES = new Class[]{
         AdapterMethodInterceptor.class,
         AdapterLazyLoader.class
@@ -82,31 +88,44 @@ public class CGLibProxyFactory implements ProxyFactory {
         }
     }
 
-    private Class getProxyClass(ProxyHandler<?> proxyHandler, ProxyClass proxyClass) {
-        Class clazz = proxyClasses.get(proxyClass);
-        if (clazz == null) {
+    private MethodHandle getProxyConstructor(ProxyHandler<?> proxyHandler, ProxyClass proxyClass) {
+        ConcurrentHashMap<ProxyHandler.InvocationFilter, MethodHandle> filterConstructors =
+                proxyConstructors.computeIfAbsent(proxyClass, pc -> new ConcurrentHashMap<>());
+        ProxyHandler.InvocationFilter invocationFilter = proxyHandler.getInvocationFilter();
+        MethodHandle constructor = filterConstructors.get(invocationFilter);
+        if (constructor == null) {
             Enhancer enhancer = new Enhancer();
-            enhancer.setCallbackFilter(new AdapterCallbackFilter(proxyHandler.getInvocationFilter()));
+            enhancer.setCallbackFilter(new AdapterCallbackFilter(invocationFilter));
             enhancer.setCallbackTypes(ADAPTER_CALLBACK_TYPES);
             enhancer.setClassLoader(proxyClass.getClassLoader());
-            enhancer.setInterfaces(proxyClass.getInterfaces());
-            clazz = enhancer.createClass();
-            proxyClasses.put(proxyClass, clazz);
+            enhancer.setInterfaces(proxyClass.interfaces());
+            Class clazz = enhancer.createClass();
+            try {
+                constructor = MethodHandles.publicLookup().findConstructor(clazz, MethodType.methodType(void.class))
+                        .asType(MethodType.methodType(Object.class));
+            } catch (ReflectiveOperationException reflectiveOperationException) {
+                throw new ProxyException(reflectiveOperationException);
+            }
+            MethodHandle oldConstructor = filterConstructors.putIfAbsent(invocationFilter, constructor);
+            constructor = oldConstructor == null ? constructor : oldConstructor;
         }
-        return clazz;
+        return constructor;
     }
 
     @Override
     public <T> T newProxy(ProxyHandler<T> proxyHandler, ProxyClass proxyClass) {
+        Object proxy;
         try {
-            Object proxy = getProxyClass(proxyHandler, proxyClass).newInstance();
-            ((Factory) proxy).setCallbacks(new Callback[]{
-                new AdapterMethodInterceptor(proxyHandler),
-                new AdapterLazyLoader<Object>(proxyHandler.getDelegate())
-            });
-            return (T) proxy;
-        } catch (ReflectiveOperationException e) {
-            throw new ProxyException(e);
+            proxy = getProxyConstructor(proxyHandler, proxyClass).invokeExact();
+        } catch (RuntimeException | Error exception) {
+            throw exception;
+        } catch (Throwable throwable) {
+            throw new ProxyException(throwable);
         }
+        ((Factory) proxy).setCallbacks(new Callback[]{
+            new AdapterMethodInterceptor(proxyHandler),
+            new AdapterLazyLoader<Object>(proxyHandler.getDelegate())
+        });
+        return (T) proxy;
     }
 }
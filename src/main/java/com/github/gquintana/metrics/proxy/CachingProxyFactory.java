@@ -20,30 +20,34 @@ package com.github.gquintana.metrics.proxy;
  * #L%
  */
 
-import java.lang.reflect.Constructor;
+import java.lang.invoke.MethodHandle;
+import java.lang.reflect.InvocationHandler;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * {@link ProxyFactory} using reflection, but caching proxy constructors.
+ * {@link ProxyFactory} using reflection, but caching proxy constructors as method handles.
  * Performance of proxy instantiation is improved (even faster than CGLib).
  * But it may lead to classloader memory leaks.
  */
 public class CachingProxyFactory implements ProxyFactory {
-    private final ConcurrentHashMap<ProxyClass, Constructor<?>> constructorCache = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<ProxyClass, MethodHandle> constructorCache = new ConcurrentHashMap<>();
     @Override
     public <T> T newProxy(ProxyHandler<T> proxyHandler, ProxyClass proxyClass) {
-        Constructor constructor = constructorCache.get(proxyClass);
+        MethodHandle constructor = constructorCache.get(proxyClass);
         if (constructor == null) {
-            constructor = proxyClass.createConstructor();
-            final Constructor oldConstructor = constructorCache.putIfAbsent(proxyClass, constructor);
+            constructor = proxyClass.createConstructorHandle();
+            final MethodHandle oldConstructor = constructorCache.putIfAbsent(proxyClass, constructor);
             constructor = oldConstructor == null ? constructor : oldConstructor;
         }
         try {
-            return (T) constructor.newInstance(proxyHandler);
-        } catch (ReflectiveOperationException reflectiveOperationException) {
-            throw new ProxyException(reflectiveOperationException);
+            return (T) constructor.invokeExact((InvocationHandler) proxyHandler);
+        } catch (RuntimeException | Error exception) {
+            throw exception;
+        } catch (Throwable throwable) {
+            throw new ProxyException(throwable);
         }
     }
+
     /**
      * Clears the constructor cache
      */
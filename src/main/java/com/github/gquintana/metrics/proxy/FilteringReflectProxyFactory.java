@@ -0,0 +1,87 @@
+package com.github.gquintana.metrics.proxy;
+
+/*
+ * #%L
+ * Metrics SQL
+ * %%
+ * Copyright (C) 2014 Open-Source
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@link CachingProxyFactory} honoring {@link ProxyHandler#getInvocationFilter()}:
+ * methods which are not intercepted directly call the delegate, without going through the handler.
+ * The filter is checked once per {@link Method}, using a {@link MethodDispatchTable}.
+ */
+public class FilteringReflectProxyFactory extends CachingProxyFactory {
+    private final ConcurrentHashMap<ProxyHandler.InvocationFilter, MethodDispatchTable<?>> dispatchTables = new ConcurrentHashMap<>();
+
+    private enum Route {
+        INTERCEPTED
+    }
+
+    /**
+     * Dispatch table adapting an {@link ProxyHandler.InvocationFilter}
+     */
+    private static final class FilterDispatchTable extends MethodDispatchTable<Route> {
+        private final ProxyHandler.InvocationFilter invocationFilter;
+
+        private FilterDispatchTable(ProxyHandler.InvocationFilter invocationFilter) {
+            this.invocationFilter = invocationFilter;
+        }
+
+        @Override
+        protected Route classify(Method method) {
+            return invocationFilter.isIntercepted(method) ? Route.INTERCEPTED : null;
+        }
+    }
+
+    private MethodDispatchTable<?> getDispatchTable(ProxyHandler.InvocationFilter invocationFilter) {
+        if (invocationFilter instanceof MethodDispatchTable) {
+            return (MethodDispatchTable<?>) invocationFilter;
+        }
+        MethodDispatchTable<?> dispatchTable = dispatchTables.get(invocationFilter);
+        if (dispatchTable == null) {
+            dispatchTable = new FilterDispatchTable(invocationFilter);
+            MethodDispatchTable<?> oldDispatchTable = dispatchTables.putIfAbsent(invocationFilter, dispatchTable);
+            dispatchTable = oldDispatchTable == null ? dispatchTable : oldDispatchTable;
+        }
+        return dispatchTable;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T> T newProxy(ProxyHandler<T> proxyHandler, ProxyClass proxyClass) {
+        ProxyHandler.InvocationFilter invocationFilter = proxyHandler.getInvocationFilter();
+        if (invocationFilter != ProxyHandler.ALL_INVOCATION_FILTER) {
+            proxyHandler.setDirectDispatchTable(getDispatchTable(invocationFilter));
+        }
+        return super.newProxy(proxyHandler, proxyClass);
+    }
+
+    /**
+     * Clears the constructor and dispatch table caches
+     */
+    @Override
+    public void clearCache() {
+        super.clearCache();
+        dispatchTables.clear();
+    }
+}
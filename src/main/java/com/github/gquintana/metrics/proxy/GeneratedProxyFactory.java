@@ -0,0 +1,492 @@
+package com.github.gquintana.metrics.proxy;
+
+/*
+ * #%L
+ * Metrics SQL
+ * %%
+ * Copyright (C) 2014 Open-Source
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Proxy factory generating at runtime a concrete delegating class per {@link ProxyClass} and handler class.
+ * <ul>
+ *     <li>Methods which are not intercepted (see {@link ProxyHandler#getInvocationFilter()}) directly call the delegate</li>
+ *     <li>Intercepted methods call the public handler method having the same signature (typed hook) when there is one</li>
+ *     <li>Other intercepted methods go through {@link ProxyHandler#invoke(Object, Method, Object[])},
+ *     like {@link java.lang.reflect.Proxy} checked exceptions not declared by the method are wrapped in an {@link UndeclaredThrowableException}</li>
+ * </ul>
+ * Classes are defined as hidden classes when the JVM supports them (Java 15+).
+ * Requires the ASM library on the classpath.
+ */
+public class GeneratedProxyFactory implements ProxyFactory {
+    private static final String PROXY_CLASS_NAME = Type.getInternalName(GeneratedProxyFactory.class).replace("GeneratedProxyFactory", "GeneratedProxy$");
+    private static final String PROXY_HANDLER_NAME = Type.getInternalName(ProxyHandler.class);
+    private static final String HANDLER_FIELD = "handler";
+    private static final String DELEGATE_FIELD = "delegate";
+    private static final String METHODS_FIELD = "methods";
+    private static final String METHODS_DESC = Type.getDescriptor(Method[].class);
+    private static final Method[] OBJECT_METHODS;
+    /**
+     * {@code MethodHandles.Lookup#defineHiddenClass} or null before Java 15
+     */
+    private static final Method DEFINE_HIDDEN_CLASS;
+    /**
+     * Empty {@code MethodHandles.Lookup.ClassOption} array
+     */
+    private static final Object HIDDEN_CLASS_OPTIONS;
+
+    static {
+        try {
+            OBJECT_METHODS = new Method[]{
+                    Object.class.getMethod("hashCode"),
+                    Object.class.getMethod("equals", Object.class),
+                    Object.class.getMethod("toString")
+            };
+        } catch (NoSuchMethodException noSuchMethodException) {
+            throw new ProxyException(noSuchMethodException);
+        }
+        Method defineHiddenClass;
+        Object hiddenClassOptions;
+        try {
+            Class<?> classOptionClass = Class.forName("java.lang.invoke.MethodHandles$Lookup$ClassOption");
+            hiddenClassOptions = Array.newInstance(classOptionClass, 0);
+            defineHiddenClass = MethodHandles.Lookup.class.getMethod("defineHiddenClass", byte[].class, boolean.class, hiddenClassOptions.getClass());
+        } catch (ReflectiveOperationException reflectiveOperationException) {
+            defineHiddenClass = null;
+            hiddenClassOptions = null;
+        }
+        DEFINE_HIDDEN_CLASS = defineHiddenClass;
+        HIDDEN_CLASS_OPTIONS = hiddenClassOptions;
+    }
+
+    /**
+     * Generated classes by handler class, then by {@link ProxyClass}, then by {@link ProxyHandler.InvocationFilter}:
+     * the generated code depends on the handler class (typed hooks) and on the intercepted methods.
+     * Nested maps avoid allocating a composite key on each lookup.
+     */
+    private final ConcurrentHashMap<Class<?>, ConcurrentHashMap<ProxyClass, ConcurrentHashMap<ProxyHandler.InvocationFilter, GeneratedClass>>> generatedClasses = new ConcurrentHashMap<>();
+    private final AtomicInteger classCounter = new AtomicInteger();
+
+    /**
+     * Generated class constructor, bound to the {@link Method}s passed to {@link ProxyHandler#invoke(Object, Method, Object[])}
+     */
+    private static final class GeneratedClass {
+        /**
+         * Constructor bound to the methods, of type {@code (ProxyHandler)Object}
+         */
+        private final MethodHandle constructor;
+
+        private GeneratedClass(MethodHandle constructor) {
+            this.constructor = constructor;
+        }
+    }
+
+    /**
+     * Class loader used when hidden classes are not available, or when the proxied interfaces
+     * are not visible from this library.
+     */
+    private static final class GeneratedClassLoader extends ClassLoader {
+        private final ClassLoader handlerClassLoader;
+
+        private GeneratedClassLoader(ClassLoader parent, ClassLoader handlerClassLoader) {
+            super(parent);
+            this.handlerClassLoader = handlerClassLoader;
+        }
+
+        @Override
+        protected Class<?> findClass(String name) throws ClassNotFoundException {
+            return Class.forName(name, false, handlerClassLoader);
+        }
+
+        private Class<?> defineClass(String name, byte[] bytes) {
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+
+    @Override
+    public <T> T newProxy(ProxyHandler<T> proxyHandler, ProxyClass proxyClass) {
+        try {
+            return (T) getGeneratedClass(proxyHandler, proxyClass).constructor.invokeExact(proxyHandler);
+        } catch (RuntimeException | Error exception) {
+            throw exception;
+        } catch (Throwable throwable) {
+            throw new ProxyException(throwable);
+        }
+    }
+
+    private GeneratedClass getGeneratedClass(ProxyHandler<?> proxyHandler, ProxyClass proxyClass) {
+        ConcurrentHashMap<ProxyClass, ConcurrentHashMap<ProxyHandler.InvocationFilter, GeneratedClass>> handlerClasses =
+                generatedClasses.computeIfAbsent(proxyHandler.getClass(), handlerClass -> new ConcurrentHashMap<>());
+        ConcurrentHashMap<ProxyHandler.InvocationFilter, GeneratedClass> filterClasses =
+                handlerClasses.computeIfAbsent(proxyClass, pc -> new ConcurrentHashMap<>());
+        ProxyHandler.InvocationFilter invocationFilter = proxyHandler.getInvocationFilter();
+        GeneratedClass generatedClass = filterClasses.get(invocationFilter);
+        if (generatedClass == null) {
+            generatedClass = generateClass(proxyHandler, proxyClass);
+            GeneratedClass oldGeneratedClass = filterClasses.putIfAbsent(invocationFilter, generatedClass);
+            generatedClass = oldGeneratedClass == null ? generatedClass : oldGeneratedClass;
+        }
+        return generatedClass;
+    }
+
+    private GeneratedClass generateClass(ProxyHandler<?> proxyHandler, ProxyClass proxyClass) {
+        Class<?> handlerClass = proxyHandler.getClass();
+        Class<?>[] interfaces = proxyClass.interfaces();
+        for (Class<?> iface : interfaces) {
+            if (!Modifier.isPublic(iface.getModifiers())) {
+                throw new ProxyException(new IllegalArgumentException("Interface " + iface.getName() + " is not public"));
+            }
+        }
+        // Typed hooks can only be called when the handler class is reachable from generated code
+        Class<?> handlerType = Modifier.isPublic(handlerClass.getModifiers()) ? handlerClass : ProxyHandler.class;
+        String className = PROXY_CLASS_NAME + classCounter.incrementAndGet();
+        List<Method> invokedMethods = new ArrayList<>();
+        byte[] bytes = generateBytecode(className, interfaces, handlerType, proxyHandler.getInvocationFilter(), invokedMethods);
+        Class<?> clazz = defineClass(className, bytes, proxyClass, handlerClass);
+        try {
+            Constructor<?> constructor = clazz.getConstructor(ProxyHandler.class, Method[].class);
+            MethodHandle constructorHandle = MethodHandles.insertArguments(MethodHandles.lookup().unreflectConstructor(constructor),
+                    1, (Object) invokedMethods.toArray(new Method[invokedMethods.size()]));
+            return new GeneratedClass(constructorHandle.asType(MethodType.methodType(Object.class, ProxyHandler.class)));
+        } catch (ReflectiveOperationException reflectiveOperationException) {
+            throw new ProxyException(reflectiveOperationException);
+        }
+    }
+
+    private static Class<?> defineClass(String className, byte[] bytes, ProxyClass proxyClass, Class<?> handlerClass) {
+        if (DEFINE_HIDDEN_CLASS != null && isVisible(handlerClass) && isVisible(proxyClass.interfaces())) {
+            try {
+                MethodHandles.Lookup hiddenClassLookup = (MethodHandles.Lookup) DEFINE_HIDDEN_CLASS.invoke(MethodHandles.lookup(), bytes, true, HIDDEN_CLASS_OPTIONS);
+                return hiddenClassLookup.lookupClass();
+            } catch (ReflectiveOperationException reflectiveOperationException) {
+                throw new ProxyException(reflectiveOperationException);
+            }
+        }
+        GeneratedClassLoader classLoader = new GeneratedClassLoader(proxyClass.getClassLoader(), handlerClass.getClassLoader());
+        return classLoader.defineClass(className.replace('/', '.'), bytes);
+    }
+
+    /**
+     * Check whether classes can be resolved from this library class loader, where hidden classes are defined
+     */
+    private static boolean isVisible(Class<?>... classes) {
+        ClassLoader classLoader = GeneratedProxyFactory.class.getClassLoader();
+        for (Class<?> clazz : classes) {
+            try {
+                if (Class.forName(clazz.getName(), false, classLoader) != clazz) {
+                    return false;
+                }
+            } catch (ClassNotFoundException classNotFoundException) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static byte[] generateBytecode(String className, Class<?>[] interfaces, Class<?> handlerType, ProxyHandler.InvocationFilter invocationFilter, List<Method> invokedMethods) {
+        ClassWriter classWriter = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        String[] interfaceNames = new String[interfaces.length];
+        for (int i = 0; i < interfaces.length; i++) {
+            interfaceNames[i] = Type.getInternalName(interfaces[i]);
+        }
+        classWriter.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL | Opcodes.ACC_SUPER, className, null, "java/lang/Object", interfaceNames);
+        String handlerDesc = Type.getDescriptor(handlerType);
+        classWriter.visitField(Opcodes.ACC_PRIVATE | Opcodes.ACC_FINAL, HANDLER_FIELD, handlerDesc, null, null).visitEnd();
+        classWriter.visitField(Opcodes.ACC_PRIVATE | Opcodes.ACC_FINAL, DELEGATE_FIELD, "Ljava/lang/Object;", null, null).visitEnd();
+        classWriter.visitField(Opcodes.ACC_PRIVATE | Opcodes.ACC_FINAL, METHODS_FIELD, METHODS_DESC, null, null).visitEnd();
+        generateConstructor(classWriter, className, handlerType);
+        Set<String> signatures = new HashSet<>();
+        for (Method method : OBJECT_METHODS) {
+            signatures.add(method.getName() + Type.getMethodDescriptor(method));
+            generateMethod(classWriter, className, handlerType, invocationFilter, method, invokedMethods);
+        }
+        for (Class<?> iface : interfaces) {
+            for (Method method : iface.getMethods()) {
+                if (Modifier.isStatic(method.getModifiers()) || !signatures.add(method.getName() + Type.getMethodDescriptor(method))) {
+                    continue;
+                }
+                generateMethod(classWriter, className, handlerType, invocationFilter, method, invokedMethods);
+            }
+        }
+        classWriter.visitEnd();
+        return classWriter.toByteArray();
+    }
+
+    /**
+     * Generate {@code GeneratedProxy(ProxyHandler handler, Method[] methods)}
+     */
+    private static void generateConstructor(ClassWriter classWriter, String className, Class<?> handlerType) {
+        MethodVisitor mv = classWriter.visitMethod(Opcodes.ACC_PUBLIC, "<init>", Type.getMethodDescriptor(Type.VOID_TYPE, Type.getType(ProxyHandler.class), Type.getType(Method[].class)), null, null);
+        mv.visitCode();
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitVarInsn(Opcodes.ALOAD, 1);
+        mv.visitTypeInsn(Opcodes.CHECKCAST, Type.getInternalName(handlerType));
+        mv.visitFieldInsn(Opcodes.PUTFIELD, className, HANDLER_FIELD, Type.getDescriptor(handlerType));
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitVarInsn(Opcodes.ALOAD, 1);
+        mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, PROXY_HANDLER_NAME, "getDelegate", "()Ljava/lang/Object;", false);
+        mv.visitFieldInsn(Opcodes.PUTFIELD, className, DELEGATE_FIELD, "Ljava/lang/Object;");
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitVarInsn(Opcodes.ALOAD, 2);
+        mv.visitFieldInsn(Opcodes.PUTFIELD, className, METHODS_FIELD, METHODS_DESC);
+        mv.visitInsn(Opcodes.RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    private static void generateMethod(ClassWriter classWriter, String className, Class<?> handlerType, ProxyHandler.InvocationFilter invocationFilter, Method method, List<Method> invokedMethods) {
+        Class<?>[] exceptionTypes = method.getExceptionTypes();
+        String[] exceptionNames = new String[exceptionTypes.length];
+        for (int i = 0; i < exceptionTypes.length; i++) {
+            exceptionNames[i] = Type.getInternalName(exceptionTypes[i]);
+        }
+        String methodDesc = Type.getMethodDescriptor(method);
+        MethodVisitor mv = classWriter.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL, method.getName(), methodDesc, null, exceptionNames);
+        mv.visitCode();
+        int returnOpcode = Type.getReturnType(method).getOpcode(Opcodes.IRETURN);
+        if (!invocationFilter.isIntercepted(method)) {
+            generateDelegateCall(mv, className, method);
+            mv.visitInsn(returnOpcode);
+        } else {
+            Method hook = findHook(handlerType, method);
+            if (hook == null) {
+                generateHandlerInvoke(mv, className, handlerType, method, invokedMethods.size(), exceptionNames);
+                invokedMethods.add(method);
+            } else {
+                generateHookCall(mv, className, handlerType, hook);
+                mv.visitInsn(returnOpcode);
+            }
+        }
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    /**
+     * Find public handler method having the same name and parameters as the proxied method,
+     * and a compatible return type.
+     * Methods declared by {@link Object} or {@link ProxyHandler} are not hooks.
+     */
+    private static Method findHook(Class<?> handlerType, Method method) {
+        if (handlerType == ProxyHandler.class) {
+            return null;
+        }
+        Method hook;
+        try {
+            hook = handlerType.getMethod(method.getName(), method.getParameterTypes());
+        } catch (NoSuchMethodException noSuchMethodException) {
+            return null;
+        }
+        Class<?> declaringClass = hook.getDeclaringClass();
+        if (Modifier.isStatic(hook.getModifiers())
+                || declaringClass == ProxyHandler.class || !ProxyHandler.class.isAssignableFrom(declaringClass)) {
+            return null;
+        }
+        Class<?> returnType = method.getReturnType();
+        Class<?> hookReturnType = hook.getReturnType();
+        boolean compatible = returnType.isPrimitive() || hookReturnType.isPrimitive() ?
+                returnType == hookReturnType : returnType.isAssignableFrom(hookReturnType);
+        return compatible ? hook : null;
+    }
+
+    /**
+     * Generate {@code return ((Interface) this.delegate).method(args...)}
+     */
+    private static void generateDelegateCall(MethodVisitor mv, String className, Method method) {
+        Class<?> declaringClass = method.getDeclaringClass();
+        String owner = Type.getInternalName(declaringClass);
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitFieldInsn(Opcodes.GETFIELD, className, DELEGATE_FIELD, "Ljava/lang/Object;");
+        if (declaringClass != Object.class) {
+            mv.visitTypeInsn(Opcodes.CHECKCAST, owner);
+        }
+        loadArguments(mv, method.getParameterTypes());
+        if (declaringClass.isInterface()) {
+            mv.visitMethodInsn(Opcodes.INVOKEINTERFACE, owner, method.getName(), Type.getMethodDescriptor(method), true);
+        } else {
+            mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, owner, method.getName(), Type.getMethodDescriptor(method), false);
+        }
+    }
+
+    /**
+     * Generate {@code return this.handler.hook(args...)}
+     */
+    private static void generateHookCall(MethodVisitor mv, String className, Class<?> handlerType, Method hook) {
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitFieldInsn(Opcodes.GETFIELD, className, HANDLER_FIELD, Type.getDescriptor(handlerType));
+        loadArguments(mv, hook.getParameterTypes());
+        mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, Type.getInternalName(handlerType), hook.getName(), Type.getMethodDescriptor(hook), false);
+    }
+
+    /**
+     * Generate
+     * <pre>
+     * try {
+     *     return (ReturnType) this.handler.invoke(this, this.methods[index], new Object[]{args...});
+     * } catch (RuntimeException | Error | DeclaredException e) {
+     *     throw e;
+     * } catch (Throwable t) {
+     *     throw new UndeclaredThrowableException(t);
+     * }
+     * </pre>
+     */
+    private static void generateHandlerInvoke(MethodVisitor mv, String className, Class<?> handlerType, Method method, int methodIndex, String[] exceptionNames) {
+        Label tryStart = new Label();
+        Label tryEnd = new Label();
+        Label rethrow = new Label();
+        Label wrap = new Label();
+        mv.visitTryCatchBlock(tryStart, tryEnd, rethrow, "java/lang/RuntimeException");
+        mv.visitTryCatchBlock(tryStart, tryEnd, rethrow, "java/lang/Error");
+        for (String exceptionName : exceptionNames) {
+            mv.visitTryCatchBlock(tryStart, tryEnd, rethrow, exceptionName);
+        }
+        mv.visitTryCatchBlock(tryStart, tryEnd, wrap, "java/lang/Throwable");
+        mv.visitLabel(tryStart);
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitFieldInsn(Opcodes.GETFIELD, className, HANDLER_FIELD, Type.getDescriptor(handlerType));
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitFieldInsn(Opcodes.GETFIELD, className, METHODS_FIELD, METHODS_DESC);
+        pushInt(mv, methodIndex);
+        mv.visitInsn(Opcodes.AALOAD);
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        if (parameterTypes.length == 0) {
+            // Same as java.lang.reflect.Proxy
+            mv.visitInsn(Opcodes.ACONST_NULL);
+        } else {
+            pushInt(mv, parameterTypes.length);
+            mv.visitTypeInsn(Opcodes.ANEWARRAY, "java/lang/Object");
+            int local = 1;
+            for (int i = 0; i < parameterTypes.length; i++) {
+                Type parameterType = Type.getType(parameterTypes[i]);
+                mv.visitInsn(Opcodes.DUP);
+                pushInt(mv, i);
+                mv.visitVarInsn(parameterType.getOpcode(Opcodes.ILOAD), local);
+                box(mv, parameterType);
+                mv.visitInsn(Opcodes.AASTORE);
+                local += parameterType.getSize();
+            }
+        }
+        mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, PROXY_HANDLER_NAME, "invoke",
+                "(Ljava/lang/Object;Ljava/lang/reflect/Method;[Ljava/lang/Object;)Ljava/lang/Object;", false);
+        Type returnType = Type.getReturnType(method);
+        unbox(mv, returnType);
+        mv.visitInsn(returnType.getOpcode(Opcodes.IRETURN));
+        mv.visitLabel(tryEnd);
+        // Handlers: locals are the arguments, the stack only holds the exception
+        Object[] exceptionStack = {"java/lang/Throwable"};
+        mv.visitLabel(rethrow);
+        mv.visitFrame(Opcodes.F_SAME1, 0, null, 1, exceptionStack);
+        mv.visitInsn(Opcodes.ATHROW);
+        mv.visitLabel(wrap);
+        mv.visitFrame(Opcodes.F_SAME1, 0, null, 1, exceptionStack);
+        String undeclaredName = Type.getInternalName(UndeclaredThrowableException.class);
+        mv.visitTypeInsn(Opcodes.NEW, undeclaredName);
+        mv.visitInsn(Opcodes.DUP_X1);
+        mv.visitInsn(Opcodes.SWAP);
+        mv.visitMethodInsn(Opcodes.INVOKESPECIAL, undeclaredName, "<init>", "(Ljava/lang/Throwable;)V", false);
+        mv.visitInsn(Opcodes.ATHROW);
+    }
+
+    private static void loadArguments(MethodVisitor mv, Class<?>[] parameterTypes) {
+        int local = 1;
+        for (Class<?> parameterClass : parameterTypes) {
+            Type parameterType = Type.getType(parameterClass);
+            mv.visitVarInsn(parameterType.getOpcode(Opcodes.ILOAD), local);
+            local += parameterType.getSize();
+        }
+    }
+
+    private static void pushInt(MethodVisitor mv, int value) {
+        if (value <= 5) {
+            mv.visitInsn(Opcodes.ICONST_0 + value);
+        } else if (value <= Byte.MAX_VALUE) {
+            mv.visitIntInsn(Opcodes.BIPUSH, value);
+        } else {
+            mv.visitIntInsn(Opcodes.SIPUSH, value);
+        }
+    }
+
+    private static Type getBoxedType(Type type) {
+        switch (type.getSort()) {
+            case Type.BOOLEAN:
+                return Type.getType(Boolean.class);
+            case Type.BYTE:
+                return Type.getType(Byte.class);
+            case Type.CHAR:
+                return Type.getType(Character.class);
+            case Type.SHORT:
+                return Type.getType(Short.class);
+            case Type.INT:
+                return Type.getType(Integer.class);
+            case Type.LONG:
+                return Type.getType(Long.class);
+            case Type.FLOAT:
+                return Type.getType(Float.class);
+            case Type.DOUBLE:
+                return Type.getType(Double.class);
+            default:
+                return null;
+        }
+    }
+
+    private static void box(MethodVisitor mv, Type type) {
+        Type boxedType = getBoxedType(type);
+        if (boxedType != null) {
+            mv.visitMethodInsn(Opcodes.INVOKESTATIC, boxedType.getInternalName(), "valueOf",
+                    Type.getMethodDescriptor(boxedType, type), false);
+        }
+    }
+
+    private static void unbox(MethodVisitor mv, Type type) {
+        if (type.getSort() == Type.VOID) {
+            mv.visitInsn(Opcodes.POP);
+            return;
+        }
+        Type boxedType = getBoxedType(type);
+        if (boxedType == null) {
+            if (!type.getDescriptor().equals("Ljava/lang/Object;")) {
+                mv.visitTypeInsn(Opcodes.CHECKCAST, type.getInternalName());
+            }
+        } else {
+            mv.visitTypeInsn(Opcodes.CHECKCAST, boxedType.getInternalName());
+            mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, boxedType.getInternalName(), type.getClassName() + "Value",
+                    Type.getMethodDescriptor(type), false);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.github.gquintana.metrics.proxy;
+
+/*
+ * #%L
+ * Metrics SQL
+ * %%
+ * Copyright (C) 2014 Open-Source
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+
+/**
+ * Maps each {@link Method} to the action a handler takes on it.
+ * Methods are classified once, then looked up by identity: proxy classes keep
+ * the same {@link Method} instances from one call to the next.
+ * The table is also the {@link ProxyHandler.InvocationFilter} of the handler,
+ * methods without action are not intercepted.
+ *
+ * @param <A> Action type
+ */
+public abstract class MethodDispatchTable<A extends Enum<A>> implements ProxyHandler.InvocationFilter {
+    private static final Object NO_ACTION = new Object();
+    /**
+     * Copy on write map, from method to action or {@link #NO_ACTION}
+     */
+    private volatile IdentityHashMap<Method, Object> actions = new IdentityHashMap<>();
+
+    /**
+     * Compute the action for given method, called once per method.
+     *
+     * @param method Method
+     * @return Action, or null if the method is not intercepted
+     */
+    protected abstract A classify(Method method);
+
+    /**
+     * Get the action for given method
+     *
+     * @param method Method
+     * @return Action, or null if the method is not intercepted
+     */
+    @SuppressWarnings("unchecked")
+    public final A getAction(Method method) {
+        Object action = actions.get(method);
+        if (action == null) {
+            action = addAction(method);
+        }
+        return action == NO_ACTION ? null : (A) action;
+    }
+
+    private synchronized Object addAction(Method method) {
+        Object action = actions.get(method);
+        if (action == null) {
+            A classifiedAction = classify(method);
+            action = classifiedAction == null ? NO_ACTION : classifiedAction;
+            IdentityHashMap<Method, Object> newActions = new IdentityHashMap<>(actions);
+            newActions.put(method, action);
+            actions = newActions;
+        }
+        return action;
+    }
+
+    @Override
+    public final boolean isIntercepted(Method method) {
+        return getAction(method) != null;
+    }
+
+    /**
+     * Tell whether method parameters match given types
+     *
+     * @param method Method
+     * @param parameterTypes Expected parameter types
+     * @return true if parameters match
+     */
+    public static boolean hasParameterTypes(Method method, Class<?>... parameterTypes) {
+        return Arrays.equals(method.getParameterTypes(), parameterTypes);
+    }
+}
@@ -0,0 +1,71 @@
+package com.github.gquintana.metrics.proxy;
+
+/*
+ * #%L
+ * Metrics SQL
+ * %%
+ * Copyright (C) 2014 Open-Source
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Resolves, once per {@link Method}, a {@link MethodHandle} invoking the method on a target object.
+ * Handles are cached along the interface declaring the method, proxies of the same
+ * interfaces share them, and the cache goes away with the interface class loader.
+ */
+final class MethodHandleCache {
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+    private static final ClassValue<ConcurrentHashMap<Method, MethodHandle>> HANDLES = new ClassValue<ConcurrentHashMap<Method, MethodHandle>>() {
+        @Override
+        protected ConcurrentHashMap<Method, MethodHandle> computeValue(Class<?> type) {
+            return new ConcurrentHashMap<>();
+        }
+    };
+
+    private MethodHandleCache() {
+    }
+
+    /**
+     * Get the handle invoking given method.
+     *
+     * @param method Method
+     * @return Handle of type {@code (Object target, Object[] args)Object}, args may be null when method has no parameter
+     */
+    static MethodHandle getInvoker(Method method) {
+        ConcurrentHashMap<Method, MethodHandle> handles = HANDLES.get(method.getDeclaringClass());
+        MethodHandle handle = handles.get(method);
+        if (handle == null) {
+            handle = createInvoker(method);
+            MethodHandle oldHandle = handles.putIfAbsent(method, handle);
+            handle = oldHandle == null ? handle : oldHandle;
+        }
+        return handle;
+    }
+
+    private static MethodHandle createInvoker(Method method) {
+        try {
+            MethodHandle handle = LOOKUP.unreflect(method);
+            return handle.asType(handle.type().generic())
+                    .asSpreader(Object[].class, method.getParameterTypes().length);
+        } catch (IllegalAccessException illegalAccessException) {
+            throw new ProxyException(illegalAccessException);
+        }
+    }
+}
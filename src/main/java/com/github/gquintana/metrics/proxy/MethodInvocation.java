@@ -20,7 +20,6 @@ package com.github.gquintana.metrics.proxy;
  * #L%
  */
 
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 
 /**
@@ -70,12 +69,21 @@ public final class MethodInvocation<T> {
         return method.getName();
     }
 
+    /**
+     * @return Proxy on which the method was invoked
+     */
+    public Object getProxy() {
+        return proxy;
+    }
+
+    /**
+     * Invoke the method on the delegate, through a cached {@link java.lang.invoke.MethodHandle}
+     *
+     * @return Method invocation results
+     * @throws Throwable Exception raised by the delegate
+     */
     public Object proceed() throws Throwable {
-        try {
-            return method.invoke(delegate, args);
-        } catch(InvocationTargetException e) {
-            throw e.getTargetException();
-        }
+        return MethodHandleCache.getInvoker(method).invokeExact((Object) delegate, args);
     }
 
 }
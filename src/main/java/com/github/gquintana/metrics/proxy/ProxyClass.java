@@ -20,11 +20,20 @@ package com.github.gquintana.metrics.proxy;
  * #L%
  */
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.lang.reflect.Proxy;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 
 /**
  * Proxy class key
@@ -38,11 +47,59 @@ public final class ProxyClass {
         this.classLoader = classLoader;
         this.interfaces = interfaces;
         // Generate hashcode once for all
-        final Object[] hashValue = new Object[interfaces.length + 1];
-        hashValue[0] = classLoader;
-        System.arraycopy(interfaces, 0, hashValue, 1, interfaces.length);
-        this.hashCode = Objects.hash(hashValue);
-    } // Generate hashcode once for all
+        int hash = 31 + Objects.hashCode(classLoader);
+        for (Class<?> iface : interfaces) {
+            hash = 31 * hash + iface.hashCode();
+        }
+        this.hashCode = hash;
+    }
+
+    /**
+     * Create proxy class implementing the main interface and all the public interfaces of the delegate class.
+     * Interfaces declaring a method with the same parameters as a previous one, but an unrelated return type, are skipped.
+     *
+     * @param delegateClass Delegate class
+     * @param mainInterface Main interface, implemented by delegate class
+     * @return Proxy class
+     */
+    public static ProxyClass ofAllInterfaces(Class<?> delegateClass, Class<?> mainInterface) {
+        Set<Class<?>> interfaces = new LinkedHashSet<>();
+        interfaces.add(mainInterface);
+        for (Class<?> clazz = delegateClass; clazz != null; clazz = clazz.getSuperclass()) {
+            for (Class<?> iface : clazz.getInterfaces()) {
+                if (Modifier.isPublic(iface.getModifiers())) {
+                    interfaces.add(iface);
+                }
+            }
+        }
+        Map<String, Class<?>> returnTypes = new HashMap<>();
+        Set<Class<?>> compatibleInterfaces = new LinkedHashSet<>();
+        for (Class<?> iface : interfaces) {
+            if (addReturnTypes(iface, returnTypes)) {
+                compatibleInterfaces.add(iface);
+            }
+        }
+        return new ProxyClass(delegateClass.getClassLoader(), compatibleInterfaces.toArray(new Class<?>[compatibleInterfaces.size()]));
+    }
+
+    private static boolean addReturnTypes(Class<?> iface, Map<String, Class<?>> returnTypes) {
+        Map<String, Class<?>> ifaceReturnTypes = new HashMap<>();
+        for (Method method : iface.getMethods()) {
+            if (Modifier.isStatic(method.getModifiers())) {
+                continue;
+            }
+            String signature = method.getName() + Arrays.toString(method.getParameterTypes());
+            // Keep the most specific return type
+            Class<?> returnType = returnTypes.get(signature);
+            if (returnType == null || returnType.isAssignableFrom(method.getReturnType())) {
+                ifaceReturnTypes.put(signature, method.getReturnType());
+            } else if (!method.getReturnType().isAssignableFrom(returnType)) {
+                return false;
+            }
+        }
+        returnTypes.putAll(ifaceReturnTypes);
+        return true;
+    }
 
     public ClassLoader getClassLoader() {
         return classLoader;
@@ -54,6 +111,13 @@ public final class ProxyClass {
         return copy;
     }
 
+    /**
+     * Interfaces without defensive copy, must not be modified
+     */
+    Class<?>[] interfaces() {
+        return interfaces;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) {
@@ -76,7 +140,7 @@ public final class ProxyClass {
      * @return Class of proxy for given classloader and interfaces
      */
     public <T> Class<T> createClass() {
-        return (Class<T>) Proxy.getProxyClass(getClassLoader(), getInterfaces());
+        return (Class<T>) Proxy.getProxyClass(classLoader, interfaces);
     }
     /**
      * Create proxy constructor
@@ -92,4 +156,17 @@ public final class ProxyClass {
             throw new ProxyException(noSuchMethodException);
         }
     }
+
+    /**
+     * Create proxy constructor handle
+     * @return Handle of type {@code (InvocationHandler)Object} creating proxies for given classloader and interfaces
+     */
+    MethodHandle createConstructorHandle() {
+        try {
+            MethodHandle constructor = MethodHandles.lookup().unreflectConstructor(createConstructor());
+            return constructor.asType(MethodType.methodType(Object.class, InvocationHandler.class));
+        } catch (IllegalAccessException illegalAccessException) {
+            throw new ProxyException(illegalAccessException);
+        }
+    }
 }
@@ -39,6 +39,12 @@ public class ProxyHandler<T> implements InvocationHandler {
      */
     protected final T delegate;
 
+    /**
+     * Methods missing from this table are called directly on the delegate,
+     * set by {@link FilteringReflectProxyFactory}, null when every method goes through the handler
+     */
+    private MethodDispatchTable<?> directDispatchTable;
+
     /**
      * Main constructor
      *
@@ -53,6 +59,24 @@ public class ProxyHandler<T> implements InvocationHandler {
      * {@inheritDoc }
      */
     public final Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        if (directDispatchTable != null && directDispatchTable.getAction(method) == null) {
+            return proceed(method, args);
+        }
+        return intercept(proxy, method, args);
+    }
+
+    /**
+     * Method to override in child classes, to intercept calls without allocating
+     * a {@link MethodInvocation}.
+     * By default, delegates to {@link #invoke(MethodInvocation)}.
+     *
+     * @param proxy Proxy on which the method was invoked
+     * @param method Invoked method
+     * @param args Invocation arguments, null when there are none
+     * @return Method invocation results
+     * @throws Throwable Method invocation raised exception
+     */
+    protected Object intercept(Object proxy, Method method, Object[] args) throws Throwable {
         return invoke(new MethodInvocation<T>(delegate, proxy, method, args));
     }
 
@@ -68,6 +92,27 @@ public class ProxyHandler<T> implements InvocationHandler {
         return delegatingMethodInvocation.proceed();
     }
 
+    /**
+     * Invoke the method on the delegate
+     *
+     * @param method Invoked method
+     * @param args Invocation arguments, null when there are none
+     * @return Method invocation results
+     * @throws Throwable Exception raised by the delegate
+     */
+    protected final Object proceed(Method method, Object[] args) throws Throwable {
+        return MethodHandleCache.getInvoker(method).invokeExact((Object) delegate, args);
+    }
+
+    /**
+     * Route the methods which are not intercepted directly to the delegate, must be called before the proxy is created
+     *
+     * @param directDispatchTable Intercepted methods
+     */
+    final void setDirectDispatchTable(MethodDispatchTable<?> directDispatchTable) {
+        this.directDispatchTable = directDispatchTable;
+    }
+
     /**
      * Return Wrapped class and concrete implementation.
      * @return Wrapped implementation
@@ -32,6 +32,6 @@ public class ReflectProxyFactory implements ProxyFactory {
 	 */
         @Override
 	public <T> T newProxy(ProxyHandler<T> proxyHandler, ProxyClass proxyClass) {
-		return (T) Proxy.newProxyInstance(proxyClass.getClassLoader(), proxyClass.getInterfaces(), proxyHandler);
+		return (T) Proxy.newProxyInstance(proxyClass.getClassLoader(), proxyClass.interfaces(), proxyHandler);
 	}
 }
@@ -21,9 +21,11 @@ package com.github.gquintana.metrics.sql;
  */
 
 
-import com.github.gquintana.metrics.proxy.MethodInvocation;
-
+import java.lang.reflect.Method;
+import java.sql.CallableStatement;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.sql.Statement;
 
 /**
@@ -33,41 +35,198 @@ import java.sql.Statement;
  */
 public abstract class AbstractStatementProxyHandler<T extends Statement> extends JdbcProxyHandler<T> {
 
-    public AbstractStatementProxyHandler(T delegate, Class<T> delegateType, JdbcProxyFactory proxyFactory, TimeObservation lifeTimerContext) {
+    /**
+     * Metric family of failed executions, depends on statement type
+     */
+    private final MetricFamily executeFailureFamily;
+    /**
+     * Prepared query, null for plain statements
+     */
+    protected final Query query;
+    /**
+     * Connection handler tracking this statement, null when result set rows are not counted
+     */
+    ConnectionProxyHandler connectionHandler;
+    /**
+     * Handler of the last result set opened by this statement,
+     * executing again or closing the statement implicitly closes it
+     */
+    private ResultSetProxyHandler<?> resultSetHandler;
+
+    public AbstractStatementProxyHandler(T delegate, Class<T> delegateType, JdbcProxyFactory proxyFactory, Query query, TimeObservation lifeTimerContext) {
         super(delegate, delegateType, proxyFactory, lifeTimerContext);
+        this.query = query;
+        if (delegateType == CallableStatement.class) {
+            this.executeFailureFamily = MetricFamily.CALLABLE_STATEMENT_EXECUTE_FAILURE;
+        } else if (delegateType == PreparedStatement.class) {
+            this.executeFailureFamily = MetricFamily.PREPARED_STATEMENT_EXECUTE_FAILURE;
+        } else {
+            this.executeFailureFamily = MetricFamily.STATEMENT_EXECUTE_FAILURE;
+        }
     }
 
     @Override
-    protected Object invoke(MethodInvocation<T> delegatingMethodInvocation) throws Throwable {
-        final String methodName = delegatingMethodInvocation.getMethodName();
+    protected Object intercept(Object proxy, Method method, Object[] args) throws Throwable {
+        final JdbcMethod action = dispatchTable.getAction(method);
+        if (action == null) {
+            return proceed(method, args);
+        }
         Object result;
-        if (methodName.equals("isWrapperFor")) {
-            result = isWrapperFor(delegatingMethodInvocation);
-        } else if (methodName.equals("unwrap")) {
-            result = unwrap(delegatingMethodInvocation);
-        } else if (methodName.equals("close")) {
-            result = close(delegatingMethodInvocation);
-        } else if (methodName.equals("execute") || methodName.equals("executeQuery") || methodName.equals("executeUpdate")) {
-            result = execute(delegatingMethodInvocation);
-        } else {
-            result = delegatingMethodInvocation.proceed();
+        switch (action) {
+            case IS_WRAPPER_FOR:
+                result = isWrapperFor(method, args);
+                break;
+            case UNWRAP:
+                result = unwrap(method, args);
+                break;
+            case CLOSE:
+                close();
+                result = null;
+                break;
+            case EXECUTE:
+                result = execute(method, args);
+                break;
+            default:
+                result = proceed(method, args);
         }
         return result;
     }
 
-    protected abstract Object execute(MethodInvocation<T> delegatingMethodInvocation) throws Throwable;
+    /**
+     * Execute methods having no typed hook, like {@link Statement#execute(String, int)}
+     */
+    private Object execute(Method method, Object[] args) throws Throwable {
+        Query currentQuery = args == null || args.length == 0 ? query : getTimerStarter().getQuery((String) args[0]);
+        if (currentQuery == null) {
+            return proceed(method, args);
+        }
+        return execute(currentQuery, () -> proceed(method, args));
+    }
+
+    /**
+     * Typed hook for {@link Statement#executeQuery(String)}
+     */
+    public ResultSet executeQuery(String sql) throws SQLException {
+        return execute(getTimerStarter().getQuery(sql), () -> delegate.executeQuery(sql));
+    }
 
-    private static final InvocationFilter THIS_INVOCATION_FILTER = new MethodNamesInvocationFilter("isWrapperFor", "unwrap", "close", "execute", "executeQuery", "executeUpdate");
+    /**
+     * Typed hook for {@link Statement#execute(String)}
+     */
+    public boolean execute(String sql) throws SQLException {
+        return timeExecute(getTimerStarter().getQuery(sql), () -> delegate.execute(sql));
+    }
 
-    @Override
-    public InvocationFilter getInvocationFilter() {
-        return THIS_INVOCATION_FILTER;
+    /**
+     * Typed hook for {@link Statement#executeUpdate(String)}
+     */
+    public int executeUpdate(String sql) throws SQLException {
+        return timeExecute(getTimerStarter().getQuery(sql), () -> delegate.executeUpdate(sql));
+    }
+
+    /**
+     * Typed hook for {@link PreparedStatement#executeQuery()}, only called by prepared and callable statement proxies
+     */
+    public ResultSet executeQuery() throws SQLException {
+        return execute(query, ((PreparedStatement) delegate)::executeQuery);
+    }
+
+    /**
+     * Typed hook for {@link PreparedStatement#execute()}, only called by prepared and callable statement proxies
+     */
+    public boolean execute() throws SQLException {
+        return timeExecute(query, ((PreparedStatement) delegate)::execute);
+    }
+
+    /**
+     * Typed hook for {@link PreparedStatement#executeUpdate()}, only called by prepared and callable statement proxies
+     */
+    public int executeUpdate() throws SQLException {
+        return timeExecute(query, ((PreparedStatement) delegate)::executeUpdate);
+    }
+
+    /**
+     * Start the execution timer of this statement type
+     *
+     * @return Started timer context or null
+     */
+    protected abstract TimeObservation startExecuteTimer(Query query);
+
+    /**
+     * Call to the delegate timed by {@link #timeExecute(Query, Execution)}
+     *
+     * @param <R> Result type
+     * @param <E> Thrown exception type
+     */
+    @FunctionalInterface
+    protected interface Execution<R, E extends Throwable> {
+        R call() throws E;
+    }
+
+    /**
+     * Time an execution, and record it as failed when it throws, the failure is rethrown
+     *
+     * @param query Executed query
+     * @param execution Call to the delegate
+     * @return Execution result
+     */
+    protected final <R, E extends Throwable> R timeExecute(Query query, Execution<R, E> execution) throws E {
+        TimeObservation timerContext = startExecuteTimer(query);
+        R result;
+        try {
+            result = execution.call();
+        } catch (Throwable throwable) {
+            getTimerStarter().recordExecuteFailure(executeFailureFamily, query, timerContext, throwable);
+            throw throwable;
+        }
+        stopTimer(timerContext);
+        return result;
+    }
+
+    /**
+     * Typed hook for {@link Statement#close()}
+     */
+    public void close() throws SQLException {
+        closeResultSet();
+        stopLifeTimer();
+        delegate.close();
+    }
+
+    /**
+     * Publish the rows read from the result set of this statement, which is closed along with it
+     */
+    void closeResultSet() {
+        flushResultSetRows();
+        if (connectionHandler != null) {
+            connectionHandler.removeStatement(this);
+            connectionHandler = null;
+        }
+    }
+
+    private void flushResultSetRows() {
+        if (resultSetHandler != null) {
+            resultSetHandler.flushRows();
+            resultSetHandler = null;
+        }
+    }
+
+    /**
+     * Time an execution, and wrap the result set it returns
+     */
+    @SuppressWarnings("unchecked")
+    private <R, E extends Throwable> R execute(Query query, Execution<R, E> execution) throws E {
+        return (R) wrapResultSet(query, timeExecute(query, execution));
     }
 
-    protected Object wrapResultSet(Query query, Object result) {
+    private Object wrapResultSet(Query query, Object result) {
         if (result instanceof ResultSet) {
-            TimeObservation timerContext1 = getTimerStarter().startResultSetLifeTimer(query);
-            return proxyFactory.wrapResultSet((ResultSet) result, query, timerContext1);
+            ResultSetProxyHandler<?> handler = proxyFactory.createResultSetProxyHandler((ResultSet) result, query);
+            if (handler == null) {
+                return result;
+            }
+            flushResultSetRows();
+            resultSetHandler = handler;
+            return proxyFactory.newProxy(handler);
         } else {
             return result;
         }
@@ -0,0 +1,302 @@
+package com.github.gquintana.metrics.sql;
+
+/*
+ * #%L
+ * Metrics SQL
+ * %%
+ * Copyright (C) 2014 Open-Source
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Records meters on a background thread: application threads publish events (meter, value, weight)
+ * into a preallocated ring buffer, a single consumer thread applies them to the meters.
+ * The ring buffer is a bounded multi producer single consumer queue where each slot has a sequence number
+ * telling whether it can be written or read, producers only compete on a compare and set of the tail.
+ * When the buffer is empty, the consumer parks until a producer wakes it up.
+ * Execution failure timers bypass the buffer: they are rare, and their tags are only known when the failure occurs,
+ * so they are registered and recorded synchronously by {@link MetricHelper#recordExecuteFailure}.
+ * Internal helper class.
+ */
+final class AsyncMeterRecorder {
+    private static final Logger LOGGER = Logger.getLogger(AsyncMeterRecorder.class.getName());
+    /**
+     * Longest consumer pause when there is nothing to record, so that it notices when the recorder is garbage collected
+     */
+    private static final long IDLE_PARK_NANOS = TimeUnit.SECONDS.toNanos(1);
+    /**
+     * Producer pause when the buffer is full and blocking is enabled
+     */
+    private static final long FULL_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(10);
+    private final int mask;
+    /**
+     * Slot sequences: equal to the producer position when the slot can be written,
+     * to the position plus one when it can be read
+     */
+    private final AtomicLongArray sequences;
+    private final Object[] meters;
+    private final long[] values;
+    private final int[] weights;
+    private final AtomicLong tail = new AtomicLong();
+    /**
+     * Consumer position, only written while draining
+     */
+    private volatile long head;
+    private final boolean blockWhenFull;
+    private final LongAdder droppedCount = new LongAdder();
+    private final LongAdder blockedCount = new LongAdder();
+    private final Thread consumerThread;
+    /**
+     * Whether the consumer is parked or about to, and should be woken up by producers
+     */
+    private volatile boolean consumerParked;
+    /**
+     * Once closed, the consumer stops and events are recorded synchronously
+     */
+    private volatile boolean closed;
+    private final MeterRegistry meterRegistry;
+    /**
+     * Meters publishing the recorder state
+     */
+    private final List<Meter> stateMeters;
+
+    /**
+     * @param meterRegistry Registry where the recorder state is published
+     * @param capacity Number of events the buffer can hold, rounded up to a power of 2
+     * @param blockWhenFull Whether application threads wait when the buffer is full, instead of dropping events
+     */
+    AsyncMeterRecorder(MeterRegistry meterRegistry, int capacity, boolean blockWhenFull) {
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        this.mask = size - 1;
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        this.meters = new Object[size];
+        this.values = new long[size];
+        this.weights = new int[size];
+        this.blockWhenFull = blockWhenFull;
+        this.meterRegistry = meterRegistry;
+        this.stateMeters = Arrays.asList(
+                FunctionCounter.builder("metrics.sql.recorder.dropped", this, AsyncMeterRecorder::getDroppedCount)
+                        .register(meterRegistry),
+                FunctionCounter.builder("metrics.sql.recorder.blocked", this, AsyncMeterRecorder::getBlockedCount)
+                        .register(meterRegistry),
+                Gauge.builder("metrics.sql.recorder.pending", this, AsyncMeterRecorder::size)
+                        .register(meterRegistry));
+        this.consumerThread = new Thread(new Consumer(this), "metrics-sql-recorder");
+        consumerThread.setDaemon(true);
+        consumerThread.start();
+    }
+
+    /**
+     * Drains the buffer until the recorder is garbage collected
+     */
+    private static final class Consumer implements Runnable {
+        private final WeakReference<AsyncMeterRecorder> recorderReference;
+
+        private Consumer(AsyncMeterRecorder recorder) {
+            this.recorderReference = new WeakReference<>(recorder);
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                AsyncMeterRecorder recorder = recorderReference.get();
+                if (recorder == null) {
+                    return;
+                }
+                int recorded = recorder.drain();
+                if (recorder.closed) {
+                    recorder.drain();
+                    return;
+                }
+                if (recorded == 0) {
+                    recorder.consumerParked = true;
+                    // Producers may have published before seeing the flag
+                    boolean empty = recorder.isEmpty();
+                    recorder = null;
+                    if (empty) {
+                        LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                    }
+                    recorder = recorderReference.get();
+                    if (recorder != null) {
+                        recorder.consumerParked = false;
+                    }
+                }
+            }
+        }
+    }
+
+    void recordTimer(Timer timer, long duration) {
+        publish(timer, duration, 1);
+    }
+
+    void recordWeightedTimer(WeightedTimer weightedTimer, long duration, int weight) {
+        publish(weightedTimer, duration, weight);
+    }
+
+    void incrementCounter(Counter counter, long amount) {
+        publish(counter, amount, 1);
+    }
+
+    private void publish(Object meter, long value, int weight) {
+        if (closed) {
+            record(meter, value, weight);
+            return;
+        }
+        if (offer(meter, value, weight)) {
+            wakeUpConsumer();
+            return;
+        }
+        if (!blockWhenFull) {
+            droppedCount.increment();
+            return;
+        }
+        blockedCount.increment();
+        do {
+            LockSupport.parkNanos(FULL_PARK_NANOS);
+        } while (!offer(meter, value, weight));
+        wakeUpConsumer();
+    }
+
+    /**
+     * Unpark the consumer on the empty to non empty transition, other publications only read the flag
+     */
+    private void wakeUpConsumer() {
+        if (consumerParked) {
+            consumerParked = false;
+            LockSupport.unpark(consumerThread);
+        }
+    }
+
+    /**
+     * @return true when no event can be read
+     */
+    private boolean isEmpty() {
+        return sequences.get((int) head & mask) != head + 1;
+    }
+
+    /**
+     * @return false when the buffer is full
+     */
+    private boolean offer(Object meter, long value, int weight) {
+        long position = tail.get();
+        int index;
+        while (true) {
+            index = (int) position & mask;
+            long difference = sequences.get(index) - position;
+            if (difference == 0L) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    break;
+                }
+                position = tail.get();
+            } else if (difference < 0L) {
+                return false;
+            } else {
+                position = tail.get();
+            }
+        }
+        meters[index] = meter;
+        values[index] = value;
+        weights[index] = weight;
+        // Volatile write, ordered before the read of the consumer parked flag
+        sequences.set(index, position + 1);
+        return true;
+    }
+
+    /**
+     * Apply buffered events to their meters
+     *
+     * @return Number of recorded events
+     */
+    synchronized int drain() {
+        int recorded = 0;
+        while (true) {
+            int index = (int) head & mask;
+            if (sequences.get(index) != head + 1) {
+                return recorded;
+            }
+            Object meter = meters[index];
+            long value = values[index];
+            int weight = weights[index];
+            meters[index] = null;
+            sequences.lazySet(index, head + mask + 1);
+            head++;
+            record(meter, value, weight);
+            recorded++;
+        }
+    }
+
+    private static void record(Object meter, long value, int weight) {
+        try {
+            if (meter instanceof Timer) {
+                ((Timer) meter).record(value, TimeUnit.NANOSECONDS);
+            } else if (meter instanceof Counter) {
+                ((Counter) meter).increment(value);
+            } else {
+                ((WeightedTimer) meter).record(value, weight);
+            }
+        } catch (RuntimeException exception) {
+            LOGGER.log(Level.WARNING, "Meter recording failed", exception);
+        }
+    }
+
+    /**
+     * Stop the background thread, after it recorded pending events, and remove the recorder state meters from the registry.
+     * Events published afterwards are recorded synchronously
+     */
+    void close() {
+        closed = true;
+        LockSupport.unpark(consumerThread);
+        for (Meter stateMeter : stateMeters) {
+            meterRegistry.remove(stateMeter);
+        }
+    }
+
+    /**
+     * @return Number of events waiting to be recorded
+     */
+    int size() {
+        long size = tail.get() - head;
+        return (int) Math.max(0L, Math.min(size, mask + 1L));
+    }
+
+    long getDroppedCount() {
+        return droppedCount.sum();
+    }
+
+    long getBlockedCount() {
+        return blockedCount.sum();
+    }
+}
@@ -0,0 +1,270 @@
+package com.github.gquintana.metrics.sql;
+
+/*
+ * #%L
+ * Metrics SQL
+ * %%
+ * Copyright (C) 2014 Open-Source
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Decorator of {@link MetricNamingStrategy} memoizing the names and tags of the decorated strategy,
+ * including null names of disabled metrics.
+ * Names depending on the query are cached per SQL Id, SQL Ids are cached per SQL, both caches are bounded.
+ * The decorated strategy is expected to return the same names for the same SQL Id.
+ * Bind it to a {@link MeterRegistry} to monitor cache hits, misses and evictions.
+ */
+public class CachingMetricNamingStrategy implements MetricNamingStrategy, MeterBinder {
+    /**
+     * Cached null value
+     */
+    private static final Object NULL = new Object();
+    private static final int FAMILY_COUNT = MetricFamily.values().length;
+    private final MetricNamingStrategy delegate;
+    private final boolean[] enabled = new boolean[FAMILY_COUNT];
+    /**
+     * Names not depending on the query
+     */
+    private final Names constantNames = new Names();
+    private final ClockCache<String, Names> namesBySqlId;
+    private final ClockCache<String, String> sqlIdsBySql;
+
+    /**
+     * @param delegate Decorated strategy
+     * @param capacity Maximum number of cached SQL Ids, and of cached SQL queries
+     */
+    public CachingMetricNamingStrategy(MetricNamingStrategy delegate, int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Invalid capacity " + capacity);
+        }
+        this.delegate = delegate;
+        for (MetricFamily metricFamily : MetricFamily.values()) {
+            enabled[metricFamily.ordinal()] = delegate.isEnabled(metricFamily);
+        }
+        this.namesBySqlId = new ClockCache<>(capacity);
+        this.sqlIdsBySql = new ClockCache<>(capacity);
+    }
+
+    /**
+     * @return Decorated strategy
+     */
+    public MetricNamingStrategy getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * Names and tags of the metric families for a given SQL Id
+     */
+    private static final class Names {
+        private final AtomicReferenceArray<Object> names = new AtomicReferenceArray<>(FAMILY_COUNT);
+        private final AtomicReferenceArray<Object> tags = new AtomicReferenceArray<>(FAMILY_COUNT);
+    }
+
+    private static Object maskNull(Object value) {
+        return value == null ? NULL : value;
+    }
+
+    private static <T> T unmaskNull(Object value) {
+        return value == NULL ? null : (T) value;
+    }
+
+    private String getConstantName(MetricFamily metricFamily) {
+        Object name = constantNames.names.get(metricFamily.ordinal());
+        if (name == null) {
+            switch (metricFamily) {
+                case CONNECTION_GET:
+                    name = maskNull(delegate.getConnectionGetTimer());
+                    break;
+                case CONNECTION_LIFE:
+                    name = maskNull(delegate.getConnectionLifeTimer());
+                    break;
+                default:
+                    name = maskNull(delegate.getStatementLifeTimer());
+            }
+            constantNames.names.set(metricFamily.ordinal(), name);
+        }
+        return unmaskNull(name);
+    }
+
+    private String getName(MetricFamily metricFamily, String sql, String sqlId) {
+        if (sqlId == null) {
+            return getDelegateName(metricFamily, sql, null);
+        }
+        Names names = namesBySqlId.get(sqlId, id -> new Names());
+        Object name = names.names.get(metricFamily.ordinal());
+        if (name == null) {
+            name = maskNull(getDelegateName(metricFamily, sql, sqlId));
+            names.names.set(metricFamily.ordinal(), name);
+        }
+        return unmaskNull(name);
+    }
+
+    private String getDelegateName(MetricFamily metricFamily, String sql, String sqlId) {
+        switch (metricFamily) {
+            case STATEMENT_EXECUTE:
+                return delegate.getStatementExecuteTimer(sql, sqlId);
+            case PREPARED_STATEMENT_LIFE:
+                return delegate.getPreparedStatementLifeTimer(sql, sqlId);
+            case PREPARED_STATEMENT_EXECUTE:
+                return delegate.getPreparedStatementExecuteTimer(sql, sqlId);
+            case CALLABLE_STATEMENT_LIFE:
+                return delegate.getCallableStatementLifeTimer(sql, sqlId);
+            case CALLABLE_STATEMENT_EXECUTE:
+                return delegate.getCallableStatementExecuteTimer(sql, sqlId);
+            case RESULT_SET_LIFE:
+                return delegate.getResultSetLifeTimer(sql, sqlId);
+            case RESULT_SET_ROWS:
+                return delegate.getResultSetRowMeter(sql, sqlId);
+            case STATEMENT_EXECUTE_FAILURE:
+                return delegate.getStatementExecuteFailureTimer(sql, sqlId);
+            case PREPARED_STATEMENT_EXECUTE_FAILURE:
+                return delegate.getPreparedStatementExecuteFailureTimer(sql, sqlId);
+            case CALLABLE_STATEMENT_EXECUTE_FAILURE:
+                return delegate.getCallableStatementExecuteFailureTimer(sql, sqlId);
+            default:
+                throw new IllegalArgumentException("Unknown metric " + metricFamily);
+        }
+    }
+
+    @Override
+    public String getConnectionGetTimer() {
+        return getConstantName(MetricFamily.CONNECTION_GET);
+    }
+
+    @Override
+    public String getConnectionLifeTimer() {
+        return getConstantName(MetricFamily.CONNECTION_LIFE);
+    }
+
+    @Override
+    public String getStatementLifeTimer() {
+        return getConstantName(MetricFamily.STATEMENT_LIFE);
+    }
+
+    @Override
+    public String getStatementExecuteTimer(String sql, String sqlId) {
+        return getName(MetricFamily.STATEMENT_EXECUTE, sql, sqlId);
+    }
+
+    @Override
+    public String getPreparedStatementLifeTimer(String sql, String sqlId) {
+        return getName(MetricFamily.PREPARED_STATEMENT_LIFE, sql, sqlId);
+    }
+
+    @Override
+    public String getPreparedStatementExecuteTimer(String sql, String sqlId) {
+        return getName(MetricFamily.PREPARED_STATEMENT_EXECUTE, sql, sqlId);
+    }
+
+    @Override
+    public String getCallableStatementLifeTimer(String sql, String sqlId) {
+        return getName(MetricFamily.CALLABLE_STATEMENT_LIFE, sql, sqlId);
+    }
+
+    @Override
+    public String getCallableStatementExecuteTimer(String sql, String sqlId) {
+        return getName(MetricFamily.CALLABLE_STATEMENT_EXECUTE, sql, sqlId);
+    }
+
+    @Override
+    public String getResultSetLifeTimer(String sql, String sqlId) {
+        return getName(MetricFamily.RESULT_SET_LIFE, sql, sqlId);
+    }
+
+    @Override
+    public String getResultSetRowMeter(String sql, String sqlId) {
+        return getName(MetricFamily.RESULT_SET_ROWS, sql, sqlId);
+    }
+
+    @Override
+    public String getStatementExecuteFailureTimer(String sql, String sqlId) {
+        return getName(MetricFamily.STATEMENT_EXECUTE_FAILURE, sql, sqlId);
+    }
+
+    @Override
+    public String getPreparedStatementExecuteFailureTimer(String sql, String sqlId) {
+        return getName(MetricFamily.PREPARED_STATEMENT_EXECUTE_FAILURE, sql, sqlId);
+    }
+
+    @Override
+    public String getCallableStatementExecuteFailureTimer(String sql, String sqlId) {
+        return getName(MetricFamily.CALLABLE_STATEMENT_EXECUTE_FAILURE, sql, sqlId);
+    }
+
+    @Override
+    public String getSqlId(String sql) {
+        if (sql == null) {
+            return delegate.getSqlId(null);
+        }
+        return sqlIdsBySql.get(sql, delegate::getSqlId);
+    }
+
+    @Override
+    public Tags getTags(MetricFamily metricFamily, String sql, String sqlId) {
+        Names names;
+        if (sql == null && sqlId == null) {
+            names = constantNames;
+        } else if (sqlId == null) {
+            return delegate.getTags(metricFamily, sql, null);
+        } else {
+            names = namesBySqlId.get(sqlId, id -> new Names());
+        }
+        Object tags = names.tags.get(metricFamily.ordinal());
+        if (tags == null) {
+            tags = maskNull(delegate.getTags(metricFamily, sql, sqlId));
+            names.tags.set(metricFamily.ordinal(), tags);
+        }
+        return unmaskNull(tags);
+    }
+
+    @Override
+    public boolean isEnabled(MetricFamily metricFamily) {
+        return enabled[metricFamily.ordinal()];
+    }
+
+    /**
+     * Register cache metrics: {@code metrics.sql.naming.cache} hits and misses,
+     * {@code metrics.sql.naming.cache.evictions} and {@code metrics.sql.naming.cache.size}, tagged by cache
+     */
+    @Override
+    public void bindTo(MeterRegistry meterRegistry) {
+        bindTo(meterRegistry, "names", namesBySqlId);
+        bindTo(meterRegistry, "sql_ids", sqlIdsBySql);
+    }
+
+    private static void bindTo(MeterRegistry meterRegistry, String cacheName, ClockCache<?, ?> cache) {
+        FunctionCounter.builder("metrics.sql.naming.cache", cache, ClockCache::getHitCount)
+                .tags("cache", cacheName, "result", "hit").register(meterRegistry);
+        FunctionCounter.builder("metrics.sql.naming.cache", cache, ClockCache::getMissCount)
+                .tags("cache", cacheName, "result", "miss").register(meterRegistry);
+        FunctionCounter.builder("metrics.sql.naming.cache.evictions", cache, ClockCache::getEvictionCount)
+                .tag("cache", cacheName).register(meterRegistry);
+        Gauge.builder("metrics.sql.naming.cache.size", cache, ClockCache::size)
+                .tag("cache", cacheName).register(meterRegistry);
+    }
+
+    long getEvictionCount() {
+        return namesBySqlId.getEvictionCount() + sqlIdsBySql.getEvictionCount();
+    }
+}
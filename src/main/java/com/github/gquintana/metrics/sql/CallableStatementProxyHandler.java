@@ -21,8 +21,6 @@ package com.github.gquintana.metrics.sql;
  */
 
 
-import com.github.gquintana.metrics.proxy.MethodInvocation;
-
 import java.sql.CallableStatement;
 
 /**
@@ -30,24 +28,12 @@ import java.sql.CallableStatement;
  */
 public class CallableStatementProxyHandler extends AbstractStatementProxyHandler<CallableStatement> {
 
-    private final Query query;
-
     public CallableStatementProxyHandler(CallableStatement delegate, JdbcProxyFactory proxyFactory, Query query, TimeObservation lifeTimerContext) {
-        super(delegate, CallableStatement.class, proxyFactory, lifeTimerContext);
-        this.query = query;
+        super(delegate, CallableStatement.class, proxyFactory, query, lifeTimerContext);
     }
 
-    protected final Object execute(MethodInvocation<CallableStatement> methodInvocation) throws Throwable {
-        Query currentQuery;
-        if (methodInvocation.getArgCount() > 0) {
-            currentQuery = new Query(methodInvocation.getArgAt(0, String.class));
-        } else {
-            currentQuery = this.query;
-        }
-        TimeObservation timerContext = getTimerStarter().startCallableStatementExecuteTimer(currentQuery);
-        Object result = methodInvocation.proceed();
-        stopTimer(timerContext);
-        return wrapResultSet(currentQuery, result);
+    @Override
+    protected TimeObservation startExecuteTimer(Query query) {
+        return getTimerStarter().startCallableStatementExecuteTimer(query);
     }
-
 }
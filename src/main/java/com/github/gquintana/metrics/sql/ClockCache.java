@@ -0,0 +1,162 @@
+package com.github.gquintana.metrics.sql;
+
+/*
+ * #%L
+ * Metrics SQL
+ * %%
+ * Copyright (C) 2014 Open-Source
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Bounded cache using the CLOCK algorithm: a hit only sets the reference bit of the entry,
+ * the clock hand clears reference bits and evicts the first entry which was not hit since the previous turn.
+ * Lookups don't lock, only misses do.
+ *
+ * @param <K> Key type
+ * @param <V> Value type
+ */
+class ClockCache<K, V> {
+    private static final class Entry<K, V> {
+        private final K key;
+        private final V value;
+        private volatile boolean referenced;
+
+        private Entry(K key, V value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    private final ConcurrentHashMap<K, Entry<K, V>> entries;
+    /**
+     * Clock slots, guarded by this
+     */
+    private final Entry<K, V>[] slots;
+    private int size;
+    private int hand;
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+
+    /**
+     * @param capacity Maximum number of cached entries
+     */
+    ClockCache(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Invalid capacity " + capacity);
+        }
+        this.entries = new ConcurrentHashMap<>(capacity * 4 / 3 + 1);
+        this.slots = new Entry[capacity];
+    }
+
+    /**
+     * Get the cached value for given key, load and cache it when missing
+     *
+     * @param key Key, not null
+     * @param loader Value loader, called outside of the lock
+     * @return Value
+     */
+    V get(K key, Function<? super K, ? extends V> loader) {
+        Entry<K, V> entry = entries.get(key);
+        if (entry != null) {
+            if (!entry.referenced) {
+                entry.referenced = true;
+            }
+            hitCount.increment();
+            return entry.value;
+        }
+        missCount.increment();
+        return add(key, loader.apply(key));
+    }
+
+    /**
+     * Get the cached value for given key, without loading nor marking it as used
+     *
+     * @param key Key, not null
+     * @return Value, or null when not cached
+     */
+    V getIfPresent(K key) {
+        Entry<K, V> entry = entries.get(key);
+        return entry == null ? null : entry.value;
+    }
+
+    /**
+     * @return Snapshot of the cached values
+     */
+    List<V> values() {
+        List<V> values = new ArrayList<>(entries.size());
+        for (Entry<K, V> entry : entries.values()) {
+            values.add(entry.value);
+        }
+        return values;
+    }
+
+    private synchronized V add(K key, V value) {
+        Entry<K, V> entry = entries.get(key);
+        if (entry != null) {
+            // Added by another thread meanwhile
+            return entry.value;
+        }
+        entry = new Entry<>(key, value);
+        if (size < slots.length) {
+            slots[size++] = entry;
+        } else {
+            while (slots[hand].referenced) {
+                slots[hand].referenced = false;
+                hand = (hand + 1) % slots.length;
+            }
+            Entry<K, V> evicted = slots[hand];
+            entries.remove(evicted.key);
+            evictionCount.increment();
+            slots[hand] = entry;
+            hand = (hand + 1) % slots.length;
+            onEviction(evicted.key, evicted.value);
+        }
+        entries.put(key, entry);
+        return value;
+    }
+
+    /**
+     * Called, under the lock, when an entry is evicted
+     *
+     * @param key Evicted key
+     * @param value Evicted value
+     */
+    protected void onEviction(K key, V value) {
+    }
+
+    long getHitCount() {
+        return hitCount.sum();
+    }
+
+    long getMissCount() {
+        return missCount.sum();
+    }
+
+    long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    int size() {
+        return entries.size();
+    }
+}
@@ -0,0 +1,191 @@
+package com.github.gquintana.metrics.sql;
+
+/*
+ * #%L
+ * Metrics SQL
+ * %%
+ * Copyright (C) 2014 Open-Source
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import io.micrometer.core.instrument.Tags;
+
+/**
+ * Decorator of {@link MetricNamingStrategy} taking SQL Ids from a hint in the leading comment of SQL queries:
+ * <code>/* q=orders.byCustomer *&#47; select ...</code> is named {@code orders.byCustomer}, without any normalization.
+ * Only a bounded prefix of the SQL is scanned, queries without hint are named by the decorated strategy.
+ * Example: java.sql.PreparedStatement.orders.byCustomer.exec
+ */
+public class CommentHintMetricNamingStrategy implements MetricNamingStrategy {
+    /**
+     * Maximum number of chars scanned for the leading comment
+     */
+    static final int MAX_HINT_PREFIX = 256;
+    private final MetricNamingStrategy delegate;
+    private final String hintKey;
+
+    /**
+     * Use the {@code q} hint
+     *
+     * @param delegate Strategy naming queries without hint, and naming metrics
+     */
+    public CommentHintMetricNamingStrategy(MetricNamingStrategy delegate) {
+        this(delegate, "q");
+    }
+
+    /**
+     * @param delegate Strategy naming queries without hint, and naming metrics
+     * @param hintKey  Hint key, {@code q} in <code>/* q=orders.byCustomer *&#47;</code>
+     */
+    public CommentHintMetricNamingStrategy(MetricNamingStrategy delegate, String hintKey) {
+        this.delegate = delegate;
+        this.hintKey = hintKey;
+    }
+
+    /**
+     * @return Hint of the leading comment, or the SQL Id given by the decorated strategy
+     */
+    @Override
+    public String getSqlId(String sql) {
+        String hint = getHint(sql);
+        return hint == null ? delegate.getSqlId(sql) : hint;
+    }
+
+    /**
+     * Extract the hint from the leading comment
+     *
+     * @param sql SQL query
+     * @return Hint made of letters, digits, {@code .}, {@code _} and {@code -}, or null
+     */
+    String getHint(String sql) {
+        if (sql == null) {
+            return null;
+        }
+        final int length = Math.min(sql.length(), MAX_HINT_PREFIX);
+        int i = 0;
+        while (i < length && Character.isWhitespace(sql.charAt(i))) {
+            i++;
+        }
+        if (i + 1 >= length || sql.charAt(i) != '/' || sql.charAt(i + 1) != '*') {
+            return null;
+        }
+        i += 2;
+        while (i < length) {
+            char c = sql.charAt(i);
+            if (c == '*' && i + 1 < length && sql.charAt(i + 1) == '/') {
+                return null;
+            }
+            if (sql.startsWith(hintKey, i) && !isHintPart(sql.charAt(i - 1))) {
+                int start = i + hintKey.length();
+                if (start < length && sql.charAt(start) == '=') {
+                    start++;
+                    int end = start;
+                    while (end < length && isHintPart(sql.charAt(end))) {
+                        end++;
+                    }
+                    return end > start && end < length ? sql.substring(start, end) : null;
+                }
+            }
+            i++;
+        }
+        return null;
+    }
+
+    private static boolean isHintPart(char c) {
+        return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || c == '.' || c == '_' || c == '-';
+    }
+
+    /**
+     * @return Decorated strategy
+     */
+    public MetricNamingStrategy getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public String getConnectionGetTimer() {
+        return delegate.getConnectionGetTimer();
+    }
+
+    @Override
+    public String getConnectionLifeTimer() {
+        return delegate.getConnectionLifeTimer();
+    }
+
+    @Override
+    public String getStatementLifeTimer() {
+        return delegate.getStatementLifeTimer();
+    }
+
+    @Override
+    public String getStatementExecuteTimer(String sql, String sqlId) {
+        return delegate.getStatementExecuteTimer(sql, sqlId);
+    }
+
+    @Override
+    public String getPreparedStatementLifeTimer(String sql, String sqlId) {
+        return delegate.getPreparedStatementLifeTimer(sql, sqlId);
+    }
+
+    @Override
+    public String getPreparedStatementExecuteTimer(String sql, String sqlId) {
+        return delegate.getPreparedStatementExecuteTimer(sql, sqlId);
+    }
+
+    @Override
+    public String getCallableStatementLifeTimer(String sql, String sqlId) {
+        return delegate.getCallableStatementLifeTimer(sql, sqlId);
+    }
+
+    @Override
+    public String getCallableStatementExecuteTimer(String sql, String sqlId) {
+        return delegate.getCallableStatementExecuteTimer(sql, sqlId);
+    }
+
+    @Override
+    public String getResultSetLifeTimer(String sql, String sqlId) {
+        return delegate.getResultSetLifeTimer(sql, sqlId);
+    }
+
+    @Override
+    public String getResultSetRowMeter(String sql, String sqlId) {
+        return delegate.getResultSetRowMeter(sql, sqlId);
+    }
+
+    @Override
+    public String getStatementExecuteFailureTimer(String sql, String sqlId) {
+        return delegate.getStatementExecuteFailureTimer(sql, sqlId);
+    }
+
+    @Override
+    public String getPreparedStatementExecuteFailureTimer(String sql, String sqlId) {
+        return delegate.getPreparedStatementExecuteFailureTimer(sql, sqlId);
+    }
+
+    @Override
+    public String getCallableStatementExecuteFailureTimer(String sql, String sqlId) {
+        return delegate.getCallableStatementExecuteFailureTimer(sql, sqlId);
+    }
+
+    @Override
+    public Tags getTags(MetricFamily metricFamily, String sql, String sqlId) {
+        return delegate.getTags(metricFamily, sql, sqlId);
+    }
+
+    @Override
+    public boolean isEnabled(MetricFamily metricFamily) {
+        return delegate.isEnabled(metricFamily);
+    }
+}
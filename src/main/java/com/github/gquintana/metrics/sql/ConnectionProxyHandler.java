@@ -20,17 +20,24 @@ package com.github.gquintana.metrics.sql;
  * #L%
  */
 
-import com.github.gquintana.metrics.proxy.MethodInvocation;
-
+import java.lang.reflect.Method;
 import java.sql.CallableStatement;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * JDBC Proxy handler for {@link Connection}
  */
 public class ConnectionProxyHandler extends JdbcProxyHandler<Connection> {
+    /**
+     * Open statements, the rows of their result sets are published when the connection is closed.
+     * Null when result set rows are not counted
+     */
+    private final Set<AbstractStatementProxyHandler<?>> openStatements;
 
     /**
      * Main constructor
@@ -41,62 +48,101 @@ public class ConnectionProxyHandler extends JdbcProxyHandler<Connection> {
      */
     public ConnectionProxyHandler(Connection delegate, JdbcProxyFactory proxyFactory, TimeObservation lifeTimerContext) {
         super(delegate, Connection.class, proxyFactory, lifeTimerContext);
+        this.openStatements = proxyFactory.isResultSetRowsCounted() ? ConcurrentHashMap.newKeySet() : null;
     }
 
     @Override
-    protected Object invoke(MethodInvocation<Connection> delegatingMethodInvocation) throws Throwable {
-        final String methodName = delegatingMethodInvocation.getMethodName();
+    protected Object intercept(Object proxy, Method method, Object[] args) throws Throwable {
+        final JdbcMethod action = dispatchTable.getAction(method);
+        if (action == null) {
+            return proceed(method, args);
+        }
         Object result;
-        if (methodName.equals("isWrapperFor")) {
-            result = isWrapperFor(delegatingMethodInvocation);
-        } else if (methodName.equals("unwrap")) {
-            result = unwrap(delegatingMethodInvocation);
-        } else if (methodName.equals("close")) {
-            result = close(delegatingMethodInvocation);
-        } else if (methodName.equals("createStatement")) {
-            result = createStatement(delegatingMethodInvocation);
-        } else if (methodName.equals("prepareStatement")) {
-            result = prepareStatement(delegatingMethodInvocation);
-        } else if (methodName.equals("prepareCall")) {
-            result = prepareCall(delegatingMethodInvocation);
-        } else {
-            result = delegatingMethodInvocation.proceed();
+        switch (action) {
+            case IS_WRAPPER_FOR:
+                result = isWrapperFor(method, args);
+                break;
+            case UNWRAP:
+                result = unwrap(method, args);
+                break;
+            case CLOSE:
+                close();
+                result = null;
+                break;
+            case CREATE_STATEMENT:
+                result = args == null ? createStatement() : proxyFactory.wrapStatement((Statement) proceed(method, args), this);
+                break;
+            case PREPARE_STATEMENT:
+                result = args.length == 1 ? prepareStatement((String) args[0])
+                        : proxyFactory.wrapPreparedStatement((PreparedStatement) proceed(method, args), (String) args[0], this);
+                break;
+            case PREPARE_CALL:
+                result = args.length == 1 ? prepareCall((String) args[0])
+                        : proxyFactory.wrapCallableStatement((CallableStatement) proceed(method, args), (String) args[0], this);
+                break;
+            default:
+                result = proceed(method, args);
         }
         return result;
     }
 
     /**
-     * Wrap Statement during {@link Connection#createStatement()}
-     * @param methodInvocation Current {@link Connection#createStatement()} invocation
+     * Typed hook for {@link Connection#close()}
+     */
+    public void close() throws SQLException {
+        closeStatements();
+        stopLifeTimer();
+        delegate.close();
+    }
+
+    /**
+     * Track a statement created by this connection
+     */
+    void addStatement(AbstractStatementProxyHandler<?> statementHandler) {
+        if (openStatements != null) {
+            statementHandler.connectionHandler = this;
+            openStatements.add(statementHandler);
+        }
+    }
+
+    void removeStatement(AbstractStatementProxyHandler<?> statementHandler) {
+        openStatements.remove(statementHandler);
+    }
+
+    /**
+     * Publish the rows read from the result sets of open statements, which are closed along with the connection
+     */
+    private void closeStatements() {
+        if (openStatements != null) {
+            for (AbstractStatementProxyHandler<?> statementHandler : openStatements) {
+                statementHandler.closeResultSet();
+            }
+        }
+    }
+
+    /**
+     * Typed hook for {@link Connection#createStatement()}
      * @return Proxified {@link Statement}
      */
-    private Statement createStatement(MethodInvocation<Connection> methodInvocation) throws Throwable {
-        Statement result = (Statement) methodInvocation.proceed();
-        result = proxyFactory.wrapStatement(result);
-        return result;
+    public Statement createStatement() throws SQLException {
+        return proxyFactory.wrapStatement(delegate.createStatement(), this);
     }
 
     /**
-     * Wrap Statement during {@link Connection#prepareStatement(String)} ()}
-     * @param methodInvocation Current {@link Connection#prepareStatement(String)} invocation
+     * Typed hook for {@link Connection#prepareStatement(String)}
+     * @param sql SQL
      * @return Proxified {@link PreparedStatement}
      */
-    private PreparedStatement prepareStatement(MethodInvocation<Connection> methodInvocation) throws Throwable {
-        String sql = methodInvocation.getArgAt(0, String.class);
-        PreparedStatement result = (PreparedStatement) methodInvocation.proceed();
-        result = proxyFactory.wrapPreparedStatement(result, sql);
-        return result;
+    public PreparedStatement prepareStatement(String sql) throws SQLException {
+        return proxyFactory.wrapPreparedStatement(delegate.prepareStatement(sql), sql, this);
     }
 
     /**
-     * Wrap Statement during {@link Connection#prepareCall(String)}
-     * @param methodInvocation Current {@link Connection#prepareCall(String)}  invocation
+     * Typed hook for {@link Connection#prepareCall(String)}
+     * @param sql SQL
      * @return Proxified {@link CallableStatement}
      */
-    private CallableStatement prepareCall(MethodInvocation<Connection> methodInvocation) throws Throwable {
-        String sql = methodInvocation.getArgAt(0, String.class);
-        CallableStatement result = (CallableStatement) methodInvocation.proceed();
-        result = proxyFactory.wrapCallableStatement(result, sql);
-        return result;
+    public CallableStatement prepareCall(String sql) throws SQLException {
+        return proxyFactory.wrapCallableStatement(delegate.prepareCall(sql), sql, this);
     }
 }
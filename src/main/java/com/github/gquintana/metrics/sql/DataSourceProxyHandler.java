@@ -21,10 +21,10 @@ package com.github.gquintana.metrics.sql;
  */
 
 
-import com.github.gquintana.metrics.proxy.MethodInvocation;
-
 import javax.sql.DataSource;
+import java.lang.reflect.Method;
 import java.sql.Connection;
+import java.sql.SQLException;
 
 /**
  * JDBC Proxy handler for {@link DataSource}
@@ -33,23 +33,48 @@ public class DataSourceProxyHandler extends JdbcProxyHandler<DataSource> {
     public DataSourceProxyHandler(DataSource delegate, JdbcProxyFactory proxyFactory) {
         super(delegate, DataSource.class, proxyFactory, null);
     }
+
     @Override
-    protected Object invoke(MethodInvocation<DataSource> methodInvocation) throws Throwable {
-        final String methodName=methodInvocation.getMethodName();
+    protected Object intercept(Object proxy, Method method, Object[] args) throws Throwable {
+        final JdbcMethod action = dispatchTable.getAction(method);
+        if (action == null) {
+            return proceed(method, args);
+        }
         Object result;
-        if (methodName.equals("getConnection")) {
-            result=getConnection(methodInvocation);
-        } else {
-            result=methodInvocation.proceed();
+        switch (action) {
+            case IS_WRAPPER_FOR:
+                result=isWrapperFor(method, args);
+                break;
+            case UNWRAP:
+                result=unwrap(method, args);
+                break;
+            case GET_CONNECTION:
+                result = args == null ? getConnection() : getConnection((String) args[0], (String) args[1]);
+                break;
+            default:
+                result=proceed(method, args);
         }
         return result;
     }
 
-    private Connection getConnection(MethodInvocation<DataSource> methodInvocation) throws Throwable {
+    /**
+     * Typed hook for {@link DataSource#getConnection()}
+     */
+    public Connection getConnection() throws SQLException {
+        TimeObservation getTimerContext = getTimerStarter().startConnectionGetTimer();
+        return wrapConnection(getTimerContext, delegate.getConnection());
+    }
+
+    /**
+     * Typed hook for {@link DataSource#getConnection(String, String)}
+     */
+    public Connection getConnection(String username, String password) throws SQLException {
         TimeObservation getTimerContext = getTimerStarter().startConnectionGetTimer();
-        Connection connection=(Connection) methodInvocation.proceed();
+        return wrapConnection(getTimerContext, delegate.getConnection(username, password));
+    }
+
+    private Connection wrapConnection(TimeObservation getTimerContext, Connection connection) {
         stopTimer(getTimerContext);
-        connection = proxyFactory.wrapConnection(connection);
-        return connection;
+        return proxyFactory.wrapConnection(connection);
     }
 }
@@ -26,15 +26,36 @@ import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
 
 import java.lang.reflect.Constructor;
 import java.sql.*;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
 /**
- * Metrics SQL JDBC Driver
+ * Metrics SQL JDBC Driver.
+ * The parsed URL, the {@link JdbcProxyFactory} and the target driver are resolved once per URL,
+ * connections opened with the same URL share their meters and caches.
  */
 public class Driver implements java.sql.Driver {
     private static final Driver INSTANCE = new Driver();
     private static MeterRegistry REGISTRY = new CompositeMeterRegistry();
+    /**
+     * Registries selected by the {@code metrics_registry} property, by name
+     */
+    private static final ConcurrentHashMap<String, MeterRegistry> REGISTRIES = new ConcurrentHashMap<>();
+    /**
+     * Maximum number of cached connection factories, the least recently used one is closed and evicted when it's full
+     */
+    private static final int MAX_CONNECTION_FACTORIES = 64;
+    /**
+     * Connection factories, by raw URL, created and evicted under lock
+     */
+    private static final ConcurrentHashMap<String, ConnectionFactory> CONNECTION_FACTORIES = new ConcurrentHashMap<>();
+    /**
+     * Last use times of connection factories are not updated more often, to avoid contended writes
+     */
+    private static final long TOUCH_RESOLUTION_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
     private static boolean registered = false;
     private final Logger parentLogger = Logger.getLogger("com.github.gquintana.metrics");
 
@@ -42,15 +63,51 @@ public class Driver implements java.sql.Driver {
         register();
     }
 
+    /**
+     * Set the registry used when the URL has no {@code metrics_registry} property,
+     * connections opened afterwards use new connection factories
+     *
+     * @param registry Default registry
+     */
     public static void setMeterRegistry(MeterRegistry registry) {
         REGISTRY = registry;
+        closeConnectionFactories();
     }
 
     public static MeterRegistry getMeterRegistry() {
         return REGISTRY;
     }
 
-    private static synchronized void register() {
+    /**
+     * Set the registry selected by the {@code metrics_registry=name} URL property,
+     * connections opened afterwards use new connection factories
+     *
+     * @param name Registry name
+     * @param registry Registry
+     */
+    public static void setMeterRegistry(String name, MeterRegistry registry) {
+        REGISTRIES.put(name, registry);
+        closeConnectionFactories();
+    }
+
+    /**
+     * Get the registry selected by the {@code metrics_registry=name} URL property,
+     * an empty {@link CompositeMeterRegistry} is created when missing
+     *
+     * @param name Registry name
+     * @return Registry
+     */
+    public static MeterRegistry getMeterRegistry(String name) {
+        MeterRegistry registry = REGISTRIES.get(name);
+        if (registry == null) {
+            registry = new CompositeMeterRegistry();
+            MeterRegistry oldRegistry = REGISTRIES.putIfAbsent(name, registry);
+            registry = oldRegistry == null ? registry : oldRegistry;
+        }
+        return registry;
+    }
+
+    static synchronized void register() {
         try {
             if (!registered) {
                 registered = true;
@@ -61,6 +118,30 @@ public class Driver implements java.sql.Driver {
         }
     }
 
+    /**
+     * Deregister this driver from the {@link DriverManager}, and release the cached connection factories
+     * along with the target drivers they reference, for instance when a web application is stopped
+     */
+    public static synchronized void deregister() throws SQLException {
+        if (registered) {
+            registered = false;
+            DriverManager.deregisterDriver(INSTANCE);
+        }
+        closeConnectionFactories();
+    }
+
+    /**
+     * Close and forget all connection factories
+     */
+    private static void closeConnectionFactories() {
+        synchronized (CONNECTION_FACTORIES) {
+            for (ConnectionFactory connectionFactory : CONNECTION_FACTORIES.values()) {
+                connectionFactory.proxyFactory.close();
+            }
+            CONNECTION_FACTORIES.clear();
+        }
+    }
+
     /**
      * Instantiate a new object of type T
      *
@@ -99,21 +180,130 @@ public class Driver implements java.sql.Driver {
         }
     }
 
+    /**
+     * Parsed URL, proxy factory and target driver of a URL
+     */
+    private static final class ConnectionFactory {
+        private final DriverUrl driverUrl;
+        private final JdbcProxyFactory proxyFactory;
+        private final java.sql.Driver driver;
+        private volatile long lastUsed;
+
+        private ConnectionFactory(DriverUrl driverUrl, JdbcProxyFactory proxyFactory, java.sql.Driver driver) {
+            this.driverUrl = driverUrl;
+            this.proxyFactory = proxyFactory;
+            this.driver = driver;
+            this.lastUsed = System.nanoTime();
+        }
+
+        private void touch() {
+            long now = System.nanoTime();
+            if (now - lastUsed > TOUCH_RESOLUTION_NANOS) {
+                lastUsed = now;
+            }
+        }
+    }
+
+    /**
+     * Get the connection factory of a URL, create it on first use
+     */
+    private ConnectionFactory getConnectionFactory(String url) throws SQLException {
+        ConnectionFactory connectionFactory = CONNECTION_FACTORIES.get(url);
+        if (connectionFactory == null) {
+            synchronized (CONNECTION_FACTORIES) {
+                connectionFactory = CONNECTION_FACTORIES.get(url);
+                if (connectionFactory == null) {
+                    if (CONNECTION_FACTORIES.size() >= MAX_CONNECTION_FACTORIES) {
+                        // Too many distinct URLs, don't pin their drivers forever
+                        evictLeastRecentlyUsed();
+                    }
+                    connectionFactory = createConnectionFactory(url);
+                    CONNECTION_FACTORIES.put(url, connectionFactory);
+                }
+            }
+        }
+        connectionFactory.touch();
+        return connectionFactory;
+    }
+
+    /**
+     * Close and forget the least recently used connection factory, guarded by the factory map
+     */
+    private static void evictLeastRecentlyUsed() {
+        String lruUrl = null;
+        ConnectionFactory lruConnectionFactory = null;
+        for (Map.Entry<String, ConnectionFactory> entry : CONNECTION_FACTORIES.entrySet()) {
+            if (lruConnectionFactory == null || entry.getValue().lastUsed - lruConnectionFactory.lastUsed < 0L) {
+                lruUrl = entry.getKey();
+                lruConnectionFactory = entry.getValue();
+            }
+        }
+        if (lruConnectionFactory != null) {
+            CONNECTION_FACTORIES.remove(lruUrl);
+            lruConnectionFactory.proxyFactory.close();
+        }
+    }
+
+    private ConnectionFactory createConnectionFactory(String url) throws SQLException {
+        DriverUrl driverUrl = DriverUrl.parse(url);
+        String registryName = driverUrl.getRegistryName();
+        MeterRegistry registry = registryName == null ? getMeterRegistry() : getMeterRegistry(registryName);
+        ProxyFactory factory = newInstance(driverUrl.getProxyFactoryClass());
+        MetricsSql.Builder builder = MetricsSql.forRegistry(registry)
+                .withNamingStrategy(getMetricNamingStrategy(driverUrl))
+                .withProxyFactory(factory)
+                .withQueryCache(driverUrl.getQueryCacheSize())
+                .withMaxSqlIds(driverUrl.getMaxSqlIds())
+                .withMeterIdleTimeout(driverUrl.getMeterIdleTimeout(), TimeUnit.MILLISECONDS)
+                .withSampling(driverUrl.getSamplingPolicy())
+                .withAsyncRecording(driverUrl.getAsyncBufferSize(), driverUrl.isAsyncBlockWhenFull())
+                .withPercentiles(driverUrl.getPercentiles())
+                .withNamingCache(driverUrl.getNamingCacheSize());
+        if (driverUrl.isVendorInterfaces()) {
+            builder.withVendorInterfaces();
+        }
+        if (driverUrl.isTableMetrics()) {
+            builder.withTableMetrics();
+        }
+        java.sql.Driver driver = getDriver(driverUrl);
+        if (driverUrl.isWarmUp()) {
+            builder.withWarmUp(driver.getClass().getClassLoader());
+        }
+        return new ConnectionFactory(driverUrl, builder.build(), driver);
+    }
+
+    /**
+     * Get the target driver of a URL
+     */
+    private static java.sql.Driver getDriver(DriverUrl driverUrl) throws SQLException {
+        // Force Driver loading
+        driverUrl.getDriverClass();
+        return DriverManager.getDriver(driverUrl.getCleanUrl());
+    }
+
+    /**
+     * @return Proxy factory shared by the connections of given URL
+     */
+    JdbcProxyFactory getJdbcProxyFactory(String url) throws SQLException {
+        return getConnectionFactory(url).proxyFactory;
+    }
+
     @Override
     public Connection connect(String url, Properties info) throws SQLException {
         if (!acceptsURL(url)) {
             return null;
         }
-        DriverUrl driverUrl = DriverUrl.parse(url);
-        MeterRegistry registry = getMeterRegistry();
-        ProxyFactory factory = newInstance(driverUrl.getProxyFactoryClass());
-        MetricNamingStrategy namingStrategy = getMetricNamingStrategy(driverUrl);
-        JdbcProxyFactory proxyFactory = new JdbcProxyFactory(registry, namingStrategy, factory);
-        // Force Driver loading
-        Class<? extends Driver> driverClass = driverUrl.getDriverClass();
+        ConnectionFactory connectionFactory = getConnectionFactory(url);
+        DriverUrl driverUrl = connectionFactory.driverUrl;
+        JdbcProxyFactory proxyFactory = connectionFactory.proxyFactory;
         // Open connection
+        Properties properties = info == null ? new Properties() : info;
         TimeObservation getTimerContext = proxyFactory.getMetricHelper().startConnectionGetTimer();
-        Connection rawConnection = DriverManager.getConnection(driverUrl.getCleanUrl(), info);
+        Connection rawConnection = connectionFactory.driver.connect(driverUrl.getCleanUrl(), properties);
+        if (rawConnection == null) {
+            // Target driver doesn't accept the URL anymore
+            rawConnection = DriverManager.getConnection(driverUrl.getCleanUrl(), properties);
+        }
         if (getTimerContext != null) {
             getTimerContext.close();
         }
@@ -124,7 +314,9 @@ public class Driver implements java.sql.Driver {
     private MetricNamingStrategy getMetricNamingStrategy(DriverUrl driverUrl) throws SQLException {
         Class<? extends MetricNamingStrategy> namingStrategyClass = driverUrl.getNamingStrategyClass();
         String databaseName = driverUrl.getDatabaseName();
-        return databaseName == null ? newInstance(namingStrategyClass) : newInstance(namingStrategyClass, databaseName);
+        MetricNamingStrategy namingStrategy = databaseName == null ? newInstance(namingStrategyClass) : newInstance(namingStrategyClass, databaseName);
+        String commentHintKey = driverUrl.getCommentHintKey();
+        return commentHintKey == null ? namingStrategy : new CommentHintMetricNamingStrategy(namingStrategy, commentHintKey);
     }
 
     @Override
@@ -135,8 +327,7 @@ public class Driver implements java.sql.Driver {
     @Override
     public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) throws SQLException {
         DriverUrl driverUrl = DriverUrl.parse(url);
-        java.sql.Driver driver = DriverManager.getDriver(driverUrl.getCleanUrl());
-        return driver.getPropertyInfo(driverUrl.getCleanUrl(), info);
+        return getDriver(driverUrl).getPropertyInfo(driverUrl.getCleanUrl(), info);
     }
 
     @Override
@@ -22,6 +22,8 @@ package com.github.gquintana.metrics.sql;
 
 import com.github.gquintana.metrics.proxy.CGLibProxyFactory;
 import com.github.gquintana.metrics.proxy.CachingProxyFactory;
+import com.github.gquintana.metrics.proxy.FilteringReflectProxyFactory;
+import com.github.gquintana.metrics.proxy.GeneratedProxyFactory;
 import com.github.gquintana.metrics.proxy.ProxyFactory;
 import com.github.gquintana.metrics.proxy.ReflectProxyFactory;
 
@@ -164,9 +166,15 @@ class DriverUrl {
             case "cglib":
                 factoryClass = CGLibProxyFactory.class;
                 break;
+            case "reflect_filtering":
+                factoryClass = FilteringReflectProxyFactory.class;
+                break;
             case "caching":
                 factoryClass = CachingProxyFactory.class;
                 break;
+            case "generated":
+                factoryClass = GeneratedProxyFactory.class;
+                break;
             default:
                 factoryClass = toClass(proxyFactoryName);
         }
@@ -186,6 +194,15 @@ class DriverUrl {
             case "strict":
                 namingStrategy = StrictMetricNamingStrategy.class;
                 break;
+            case "fingerprint":
+                namingStrategy = FingerprintMetricNamingStrategy.class;
+                break;
+            case "hashed":
+                namingStrategy = HashedMetricNamingStrategy.class;
+                break;
+            case "tagged":
+                namingStrategy = TaggedMetricNamingStrategy.class;
+                break;
             default:
                 namingStrategy = toClass(namingStrategyName);
         }
@@ -199,6 +216,100 @@ class DriverUrl {
         return getProperty("metrics_registry", null);
     }
 
+    /**
+     * @return true when proxy classes should be generated in background
+     */
+    public boolean isWarmUp() {
+        return Boolean.parseBoolean(getProperty("metrics_warm_up", "false"));
+    }
+
+    /**
+     * @return true when proxies should implement vendor interfaces
+     */
+    public boolean isVendorInterfaces() {
+        return Boolean.parseBoolean(getProperty("metrics_vendor_interfaces", "false"));
+    }
+
+    /**
+     * @return Number of distinct SQL queries cached, 0 when the query cache is disabled
+     */
+    public int getQueryCacheSize() {
+        return Integer.parseInt(getProperty("metrics_query_cache", "0"));
+    }
+
+    /**
+     * @return Maximum number of SQL Ids having their own meters, 0 for no limit
+     */
+    public int getMaxSqlIds() {
+        return Integer.parseInt(getProperty("metrics_max_sql_ids", "0"));
+    }
+
+    /**
+     * @return Idle time in milliseconds after which the meters of a SQL Id are removed, 0 to keep them
+     */
+    public long getMeterIdleTimeout() {
+        return Long.parseLong(getProperty("metrics_meter_idle_timeout", "0"));
+    }
+
+    /**
+     * @return Sampling policy of executions and read rows, null when everything is measured
+     */
+    public SamplingPolicy getSamplingPolicy() {
+        String samplingPolicy = getProperty("metrics_sampling");
+        return samplingPolicy == null ? null : SamplingPolicies.parse(samplingPolicy);
+    }
+
+    /**
+     * @return Number of events buffered for the background recorder, 0 when meters are recorded synchronously
+     */
+    public int getAsyncBufferSize() {
+        return Integer.parseInt(getProperty("metrics_async_buffer", "0"));
+    }
+
+    /**
+     * @return true when threads wait for room in the background recorder buffer, instead of dropping events
+     */
+    public boolean isAsyncBlockWhenFull() {
+        return Boolean.parseBoolean(getProperty("metrics_async_block", "false"));
+    }
+
+    /**
+     * @return Percentiles of execution timers, null when disabled
+     */
+    public double[] getPercentiles() {
+        String percentiles = getProperty("metrics_percentiles");
+        if (percentiles == null) {
+            return null;
+        }
+        String[] items = percentiles.split(",");
+        double[] values = new double[items.length];
+        for (int i = 0; i < items.length; i++) {
+            values[i] = Double.parseDouble(items[i].trim());
+        }
+        return values;
+    }
+
+    /**
+     * @return Number of SQL Ids whose metric names are cached, 0 when names are not cached
+     */
+    public int getNamingCacheSize() {
+        return Integer.parseInt(getProperty("metrics_naming_cache", "0"));
+    }
+
+    /**
+     * @return true when executions and rows are also measured per operation and table
+     */
+    public boolean isTableMetrics() {
+        return Boolean.parseBoolean(getProperty("metrics_table_metrics", "false"));
+    }
+
+    /**
+     * @return Key of the SQL Id hint in the leading comment of SQL queries, null when hints are ignored
+     */
+    public String getCommentHintKey() {
+        return getProperty("metrics_comment_hint");
+    }
+
     /**
      * @return Connection factory name
      */
@@ -0,0 +1,60 @@
+package com.github.gquintana.metrics.sql;
+
+/*
+ * #%L
+ * Metrics SQL
+ * %%
+ * Copyright (C) 2014 Open-Source
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+/**
+ * Implementation of {@link MetricNamingStrategy} whose SQL Ids are SQL fingerprints:
+ * literals are replaced by {@code ?}, lists of parameters are collapsed, comments and extra whitespaces are removed.
+ * Unprepared statements differing only by their literals share their metrics.
+ * Example: java.sql.Statement.[select * from my_table where id in (?)].exec
+ */
+public class FingerprintMetricNamingStrategy extends DefaultMetricNamingStrategy {
+    public FingerprintMetricNamingStrategy() {
+        super();
+    }
+
+    public FingerprintMetricNamingStrategy(String databaseName) {
+        super(databaseName);
+    }
+
+    @Override
+    public String getSqlId(String sql) {
+        return "[" + SqlFingerprinter.fingerprint(sql) + "]";
+    }
+
+    /**
+     * Start a builder
+     * @return Builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Builder of {@link FingerprintMetricNamingStrategy}
+     */
+    public static class Builder extends DefaultMetricNamingStrategy.Builder<FingerprintMetricNamingStrategy.Builder> {
+        @Override
+        public FingerprintMetricNamingStrategy build() {
+            return new FingerprintMetricNamingStrategy(databaseName);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.github.gquintana.metrics.sql;
+
+/*
+ * #%L
+ * Metrics SQL
+ * %%
+ * Copyright (C) 2014 Open-Source
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+/**
+ * Implementation of {@link MetricNamingStrategy} whose SQL Ids are 64-bit hashes of SQL fingerprints.
+ * Metric names stay short whatever the SQL length, the {@link SqlDictionary} translates them back to SQL.
+ * Example: java.sql.Statement.q_3fa1c9d2e4b5a607.exec
+ */
+public class HashedMetricNamingStrategy extends DefaultMetricNamingStrategy {
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    private final SqlDictionary dictionary;
+
+    public HashedMetricNamingStrategy() {
+        this("");
+    }
+
+    public HashedMetricNamingStrategy(String databaseName) {
+        this(databaseName, new SqlDictionary());
+    }
+
+    /**
+     * @param databaseName Database name
+     * @param dictionary   Dictionary where SQL Ids are registered
+     */
+    public HashedMetricNamingStrategy(String databaseName, SqlDictionary dictionary) {
+        super(databaseName);
+        this.dictionary = dictionary;
+    }
+
+    @Override
+    public String getSqlId(String sql) {
+        String fingerprint = SqlFingerprinter.fingerprint(sql);
+        String sqlId = hash(fingerprint);
+        dictionary.register(sqlId, fingerprint);
+        return sqlId;
+    }
+
+    /**
+     * Hash SQL using 64-bit FNV-1a, stable across JVMs and restarts
+     *
+     * @param sql Normalized SQL
+     * @return q_ followed by 16 hexadecimal digits
+     */
+    static String hash(String sql) {
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = 0; i < sql.length(); i++) {
+            char c = sql.charAt(i);
+            hash = (hash ^ (c & 0xff)) * FNV_PRIME;
+            hash = (hash ^ (c >>> 8)) * FNV_PRIME;
+        }
+        String hex = Long.toHexString(hash);
+        StringBuilder sqlId = new StringBuilder(18).append("q_");
+        for (int i = hex.length(); i < 16; i++) {
+            sqlId.append('0');
+        }
+        return sqlId.append(hex).toString();
+    }
+
+    /**
+     * @return Dictionary where SQL Ids are registered
+     */
+    public SqlDictionary getDictionary() {
+        return dictionary;
+    }
+
+    /**
+     * Start a builder
+     * @return Builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Builder of {@link HashedMetricNamingStrategy}
+     */
+    public static class Builder extends DefaultMetricNamingStrategy.Builder<HashedMetricNamingStrategy.Builder> {
+        private SqlDictionary dictionary;
+
+        public Builder withDictionary(SqlDictionary dictionary) {
+            this.dictionary = dictionary;
+            return this;
+        }
+
+        @Override
+        public HashedMetricNamingStrategy build() {
+            return dictionary == null ? new HashedMetricNamingStrategy(databaseName) : new HashedMetricNamingStrategy(databaseName, dictionary);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.github.gquintana.metrics.sql;
+
+/*
+ * #%L
+ * Metrics SQL
+ * %%
+ * Copyright (C) 2014 Open-Source
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.github.gquintana.metrics.proxy.MethodDispatchTable;
+
+import java.lang.reflect.Method;
+
+/**
+ * JDBC methods intercepted by the proxy handlers,
+ * see {@link JdbcMethodDispatchTable}
+ */
+enum JdbcMethod {
+    IS_WRAPPER_FOR,
+    UNWRAP,
+    CLOSE,
+    GET_CONNECTION,
+    CREATE_STATEMENT,
+    PREPARE_STATEMENT,
+    PREPARE_CALL,
+    EXECUTE,
+    NEXT;
+
+    /**
+     * Classify a method of any JDBC interface
+     *
+     * @param method Method
+     * @return JDBC method, or null if the method is never intercepted
+     */
+    static JdbcMethod classify(Method method) {
+        final String methodName = method.getName();
+        final Class<?>[] parameterTypes = method.getParameterTypes();
+        // prepareStatement(String, ...), execute(String, int)...
+        final boolean sqlMethod = parameterTypes.length > 0 && parameterTypes[0].equals(String.class);
+        if (methodName.equals("isWrapperFor") && MethodDispatchTable.hasParameterTypes(method, Class.class)) {
+            return IS_WRAPPER_FOR;
+        } else if (methodName.equals("unwrap") && MethodDispatchTable.hasParameterTypes(method, Class.class)) {
+            return UNWRAP;
+        } else if (methodName.equals("close") && parameterTypes.length == 0) {
+            return CLOSE;
+        } else if (methodName.equals("getConnection")) {
+            return GET_CONNECTION;
+        } else if (methodName.equals("createStatement")) {
+            return CREATE_STATEMENT;
+        } else if (methodName.equals("prepareStatement") && sqlMethod) {
+            return PREPARE_STATEMENT;
+        } else if (methodName.equals("prepareCall") && sqlMethod) {
+            return PREPARE_CALL;
+        } else if ((methodName.equals("execute") || methodName.equals("executeQuery") || methodName.equals("executeUpdate"))
+                && (parameterTypes.length == 0 || sqlMethod)) {
+            return EXECUTE;
+        } else if (methodName.equals("next") && parameterTypes.length == 0) {
+            return NEXT;
+        }
+        return null;
+    }
+}
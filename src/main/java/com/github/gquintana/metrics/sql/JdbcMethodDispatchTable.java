@@ -0,0 +1,64 @@
+package com.github.gquintana.metrics.sql;
+
+/*
+ * #%L
+ * Metrics SQL
+ * %%
+ * Copyright (C) 2014 Open-Source
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.github.gquintana.metrics.proxy.MethodDispatchTable;
+
+import java.lang.reflect.Method;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Dispatch table of a JDBC proxy handler type: only the given {@link JdbcMethod}s are intercepted.
+ * Tables holding the same methods are equal, proxy factories caching classes per
+ * {@link com.github.gquintana.metrics.proxy.ProxyHandler.InvocationFilter} can share them.
+ */
+final class JdbcMethodDispatchTable extends MethodDispatchTable<JdbcMethod> {
+    private final Set<JdbcMethod> jdbcMethods;
+    private final int hashCode;
+
+    JdbcMethodDispatchTable(EnumSet<JdbcMethod> jdbcMethods) {
+        this.jdbcMethods = EnumSet.copyOf(jdbcMethods);
+        this.hashCode = jdbcMethods.hashCode();
+    }
+
+    @Override
+    protected JdbcMethod classify(Method method) {
+        JdbcMethod jdbcMethod = JdbcMethod.classify(method);
+        return jdbcMethods.contains(jdbcMethod) ? jdbcMethod : null;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        return jdbcMethods.equals(((JdbcMethodDispatchTable) o).jdbcMethods);
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+}
@@ -21,6 +21,7 @@ package com.github.gquintana.metrics.sql;
  */
 
 
+import com.github.gquintana.metrics.proxy.ProxyClass;
 import com.github.gquintana.metrics.proxy.ProxyFactory;
 import com.github.gquintana.metrics.proxy.ReflectProxyFactory;
 import io.micrometer.core.instrument.MeterRegistry;
@@ -28,6 +29,9 @@ import io.micrometer.core.instrument.MeterRegistry;
 import javax.sql.*;
 import javax.sql.rowset.*;
 import java.sql.*;
+import java.util.EnumSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * Factory of {@code JdbcProxyHandler} sub classes, central class of Metrics SQL.
@@ -35,6 +39,15 @@ import java.sql.*;
  * result set...). 
  */
 public class JdbcProxyFactory {
+    private static final Logger LOGGER = Logger.getLogger(JdbcProxyFactory.class.getName());
+    /**
+     * Result set types, see {@link #getResultSetType(ResultSet)}
+     */
+    private static final Class[] RESULT_SET_TYPES = {
+            ResultSet.class, RowSet.class, JdbcRowSet.class, CachedRowSet.class,
+            WebRowSet.class, FilteredRowSet.class, JoinRowSet.class
+    };
+    private static final JdbcMethodDispatchTable ALL_DISPATCH_TABLE = new JdbcMethodDispatchTable(EnumSet.allOf(JdbcMethod.class));
     /**
      * Timer manager
      */
@@ -43,6 +56,24 @@ public class JdbcProxyFactory {
      * Proxy factory
      */
     private final ProxyFactory proxyFactory;
+    /**
+     * Whether proxies implement the vendor interfaces of wrapped objects
+     */
+    private final boolean vendorInterfaces;
+    /**
+     * Methods to intercept for each JDBC type, null when objects of this type are not wrapped
+     * because they don't feed any enabled metric
+     */
+    private final JdbcMethodDispatchTable dataSourceDispatchTable;
+    private final JdbcMethodDispatchTable connectionDispatchTable;
+    private final JdbcMethodDispatchTable statementDispatchTable;
+    private final JdbcMethodDispatchTable preparedStatementDispatchTable;
+    private final JdbcMethodDispatchTable callableStatementDispatchTable;
+    private final JdbcMethodDispatchTable resultSetDispatchTable;
+    /**
+     * Whether result set rows are counted, by the row meters or the table meters
+     */
+    private final boolean resultSetRowsCounted;
 
     /**
      * Constructor using default {@link ReflectProxyFactory} and default {@link DefaultMetricNamingStrategy}
@@ -70,8 +101,108 @@ public class JdbcProxyFactory {
      * @param proxyFactory AbstractProxyFactory to use for proxy creation
      */
     public JdbcProxyFactory(MeterRegistry registry, MetricNamingStrategy namingStrategy, ProxyFactory proxyFactory) {
-        this.metricHelper = new MetricHelper(registry, namingStrategy);
+        this(new MetricHelper(registry, namingStrategy), proxyFactory, false);
+    }
+
+    /**
+     * Constructor used by {@link MetricsSql.Builder}, metric options are held by the helper
+     *
+     * @param metricHelper Helper resolving and recording meters
+     * @param proxyFactory AbstractProxyFactory to use for proxy creation
+     * @param vendorInterfaces Whether proxies implement all the public interfaces of wrapped objects
+     */
+    JdbcProxyFactory(MetricHelper metricHelper, ProxyFactory proxyFactory, boolean vendorInterfaces) {
+        MetricNamingStrategy namingStrategy = metricHelper.getMetricNamingStrategy();
+        this.metricHelper = metricHelper;
         this.proxyFactory = proxyFactory;
+        this.vendorInterfaces = vendorInterfaces;
+        // Start from ResultSet and go up to DataSource: a parent is wrapped when one of its children is
+        EnumSet<JdbcMethod> resultSetMethods = EnumSet.noneOf(JdbcMethod.class);
+        // Rows are counted in batches, published when result sets, statements or connections are closed
+        this.resultSetRowsCounted = namingStrategy.isEnabled(MetricFamily.RESULT_SET_ROWS) || metricHelper.isTableMetrics();
+        if (namingStrategy.isEnabled(MetricFamily.RESULT_SET_LIFE) || resultSetRowsCounted) {
+            resultSetMethods.add(JdbcMethod.CLOSE);
+        }
+        if (resultSetRowsCounted) {
+            resultSetMethods.add(JdbcMethod.NEXT);
+        }
+        this.resultSetDispatchTable = createDispatchTable(resultSetMethods);
+        this.statementDispatchTable = createStatementDispatchTable(namingStrategy, MetricFamily.STATEMENT_LIFE,
+                MetricFamily.STATEMENT_EXECUTE, MetricFamily.STATEMENT_EXECUTE_FAILURE);
+        this.preparedStatementDispatchTable = createStatementDispatchTable(namingStrategy, MetricFamily.PREPARED_STATEMENT_LIFE,
+                MetricFamily.PREPARED_STATEMENT_EXECUTE, MetricFamily.PREPARED_STATEMENT_EXECUTE_FAILURE);
+        this.callableStatementDispatchTable = createStatementDispatchTable(namingStrategy, MetricFamily.CALLABLE_STATEMENT_LIFE,
+                MetricFamily.CALLABLE_STATEMENT_EXECUTE, MetricFamily.CALLABLE_STATEMENT_EXECUTE_FAILURE);
+        EnumSet<JdbcMethod> connectionMethods = EnumSet.noneOf(JdbcMethod.class);
+        if (namingStrategy.isEnabled(MetricFamily.CONNECTION_LIFE) || resultSetRowsCounted) {
+            connectionMethods.add(JdbcMethod.CLOSE);
+        }
+        if (statementDispatchTable != null) {
+            connectionMethods.add(JdbcMethod.CREATE_STATEMENT);
+        }
+        if (preparedStatementDispatchTable != null) {
+            connectionMethods.add(JdbcMethod.PREPARE_STATEMENT);
+        }
+        if (callableStatementDispatchTable != null) {
+            connectionMethods.add(JdbcMethod.PREPARE_CALL);
+        }
+        this.connectionDispatchTable = createDispatchTable(connectionMethods);
+        EnumSet<JdbcMethod> dataSourceMethods = EnumSet.noneOf(JdbcMethod.class);
+        if (namingStrategy.isEnabled(MetricFamily.CONNECTION_GET) || connectionDispatchTable != null) {
+            dataSourceMethods.add(JdbcMethod.GET_CONNECTION);
+        }
+        this.dataSourceDispatchTable = createDispatchTable(dataSourceMethods);
+    }
+
+    private JdbcMethodDispatchTable createStatementDispatchTable(MetricNamingStrategy namingStrategy, MetricFamily lifeFamily,
+                                                                 MetricFamily executeFamily, MetricFamily executeFailureFamily) {
+        EnumSet<JdbcMethod> statementMethods = EnumSet.noneOf(JdbcMethod.class);
+        if (namingStrategy.isEnabled(lifeFamily) || resultSetRowsCounted) {
+            statementMethods.add(JdbcMethod.CLOSE);
+        }
+        if (namingStrategy.isEnabled(executeFamily) || namingStrategy.isEnabled(executeFailureFamily) || resultSetDispatchTable != null
+                || metricHelper.isTableMetrics()) {
+            statementMethods.add(JdbcMethod.EXECUTE);
+        }
+        return createDispatchTable(statementMethods);
+    }
+
+    /**
+     * Create the dispatch table of a JDBC type
+     * @param jdbcMethods Methods feeding enabled metrics
+     * @return Dispatch table, or null when no method feeds an enabled metric
+     */
+    private static JdbcMethodDispatchTable createDispatchTable(EnumSet<JdbcMethod> jdbcMethods) {
+        if (jdbcMethods.isEmpty()) {
+            return null;
+        }
+        // Wrapped objects must still hide the proxy
+        jdbcMethods.add(JdbcMethod.IS_WRAPPER_FOR);
+        jdbcMethods.add(JdbcMethod.UNWRAP);
+        return new JdbcMethodDispatchTable(jdbcMethods);
+    }
+
+    /**
+     * Get methods to intercept for given JDBC type
+     * @param delegateType JDBC interface
+     * @return Dispatch table
+     */
+    JdbcMethodDispatchTable getDispatchTable(Class<?> delegateType) {
+        JdbcMethodDispatchTable dispatchTable;
+        if (delegateType == DataSource.class) {
+            dispatchTable = dataSourceDispatchTable;
+        } else if (delegateType == Connection.class) {
+            dispatchTable = connectionDispatchTable;
+        } else if (delegateType == Statement.class) {
+            dispatchTable = statementDispatchTable;
+        } else if (delegateType == PreparedStatement.class) {
+            dispatchTable = preparedStatementDispatchTable;
+        } else if (delegateType == CallableStatement.class) {
+            dispatchTable = callableStatementDispatchTable;
+        } else {
+            dispatchTable = resultSetDispatchTable;
+        }
+        return dispatchTable == null ? ALL_DISPATCH_TABLE : dispatchTable;
     }
 
     /**
@@ -80,7 +211,7 @@ public class JdbcProxyFactory {
      * @param proxyHandler Proxy handler
      * @return Proxy
      */
-    private <T> T newProxy(JdbcProxyHandler<T> proxyHandler) {
+    <T> T newProxy(JdbcProxyHandler<T> proxyHandler) {
         return proxyFactory.newProxy(proxyHandler, proxyHandler.getProxyClass());
     }
     
@@ -91,6 +222,9 @@ public class JdbcProxyFactory {
      * @return Wrapped data source
      */
     public DataSource wrapDataSource(DataSource wrappedDataSource) {
+        if (dataSourceDispatchTable == null) {
+            return wrappedDataSource;
+        }
         return newProxy(new DataSourceProxyHandler(wrappedDataSource, this));
     }
 
@@ -101,6 +235,9 @@ public class JdbcProxyFactory {
      * @return Wrapped connection
      */
     public Connection wrapConnection(Connection wrappedConnection) {
+        if (connectionDispatchTable == null) {
+            return wrappedConnection;
+        }
         TimeObservation lifeTimerContext = metricHelper.startConnectionLifeTimer();
         return newProxy(new ConnectionProxyHandler(wrappedConnection, this, lifeTimerContext));
     }
@@ -112,8 +249,22 @@ public class JdbcProxyFactory {
      * @return Wrapped statement
      */
     public Statement wrapStatement(Statement statement) {
+        return wrapStatement(statement, null);
+    }
+
+    /**
+     * Wrap a simple statement created by a wrapped connection.
+     *
+     * @param statement Statement to wrap
+     * @param connectionHandler Handler of the connection, tracking open statements
+     * @return Wrapped statement
+     */
+    Statement wrapStatement(Statement statement, ConnectionProxyHandler connectionHandler) {
+        if (statementDispatchTable == null) {
+            return statement;
+        }
         TimeObservation lifeTimerContext = getMetricHelper().startStatementLifeTimer();
-        return newProxy(new StatementProxyHandler(statement, this, lifeTimerContext));
+        return newStatementProxy(new StatementProxyHandler(statement, this, lifeTimerContext), connectionHandler);
     }
 
     /**
@@ -124,9 +275,24 @@ public class JdbcProxyFactory {
      * @return Wrapped prepared statement
      */
     public PreparedStatement wrapPreparedStatement(PreparedStatement preparedStatement, String sql) {
-        Query query = new Query(sql);
+        return wrapPreparedStatement(preparedStatement, sql, null);
+    }
+
+    /**
+     * Wrap a prepared statement created by a wrapped connection.
+     *
+     * @param preparedStatement Prepared statement to wrap
+     * @param sql SQL
+     * @param connectionHandler Handler of the connection, tracking open statements
+     * @return Wrapped prepared statement
+     */
+    PreparedStatement wrapPreparedStatement(PreparedStatement preparedStatement, String sql, ConnectionProxyHandler connectionHandler) {
+        if (preparedStatementDispatchTable == null) {
+            return preparedStatement;
+        }
+        Query query = metricHelper.getQuery(sql);
         TimeObservation lifeTimerContext = getMetricHelper().startPreparedStatementLifeTimer(query);
-        return newProxy(new PreparedStatementProxyHandler(preparedStatement, this, query, lifeTimerContext));
+        return newStatementProxy(new PreparedStatementProxyHandler(preparedStatement, this, query, lifeTimerContext), connectionHandler);
     }
 
     /**
@@ -137,9 +303,31 @@ public class JdbcProxyFactory {
      * @return Wrapped prepared statement
      */
     public CallableStatement wrapCallableStatement(CallableStatement callableStatement, String sql) {
-        Query query = new Query(sql);
+        return wrapCallableStatement(callableStatement, sql, null);
+    }
+
+    /**
+     * Wrap a callable statement created by a wrapped connection.
+     *
+     * @param callableStatement Callable statement to wrap
+     * @param sql SQL
+     * @param connectionHandler Handler of the connection, tracking open statements
+     * @return Wrapped callable statement
+     */
+    CallableStatement wrapCallableStatement(CallableStatement callableStatement, String sql, ConnectionProxyHandler connectionHandler) {
+        if (callableStatementDispatchTable == null) {
+            return callableStatement;
+        }
+        Query query = metricHelper.getQuery(sql);
         TimeObservation lifeTimerContext = getMetricHelper().startCallableStatementLifeTimer(query);
-        return newProxy(new CallableStatementProxyHandler(callableStatement, this, query, lifeTimerContext));
+        return newStatementProxy(new CallableStatementProxyHandler(callableStatement, this, query, lifeTimerContext), connectionHandler);
+    }
+
+    private <T extends Statement> T newStatementProxy(AbstractStatementProxyHandler<T> statementHandler, ConnectionProxyHandler connectionHandler) {
+        if (connectionHandler != null) {
+            connectionHandler.addStatement(statementHandler);
+        }
+        return newProxy(statementHandler);
     }
 
     /**
@@ -150,9 +338,40 @@ public class JdbcProxyFactory {
      * @return Wrapped prepared statement
      */
     public ResultSet wrapResultSet(ResultSet resultSet, String sql) {
-        Query query = new Query(sql);
+        if (resultSetDispatchTable == null) {
+            return resultSet;
+        }
+        return wrapResultSet(resultSet, metricHelper.getQuery(sql));
+    }
+
+    /**
+     * Wrap a result set to monitor it, and start its life timer.
+     *
+     * @param resultSet set to wrap
+     * @param query SQL query of result set
+     * @return Wrapped result set
+     */
+    public ResultSet wrapResultSet(ResultSet resultSet, Query query) {
+        ResultSetProxyHandler<?> resultSetHandler = createResultSetProxyHandler(resultSet, query);
+        if (resultSetHandler == null) {
+            return resultSet;
+        }
+        return newProxy(resultSetHandler);
+    }
+
+    /**
+     * Create the handler of a result set proxy, and start its life timer.
+     *
+     * @param resultSet set to wrap
+     * @param query SQL query of result set
+     * @return Result set handler, null when result sets are not wrapped
+     */
+    ResultSetProxyHandler<?> createResultSetProxyHandler(ResultSet resultSet, Query query) {
+        if (resultSetDispatchTable == null) {
+            return null;
+        }
         TimeObservation lifeTimerContext = metricHelper.startResultSetLifeTimer(query);
-        return (ResultSet) newProxy(new ResultSetProxyHandler(resultSet, getResultSetType(resultSet), this, query, lifeTimerContext));
+        return new ResultSetProxyHandler(resultSet, getResultSetType(resultSet), this, query, lifeTimerContext);
     }
 
     /**
@@ -164,6 +383,9 @@ public class JdbcProxyFactory {
      * @return Wrapped prepared statement
      */
     public ResultSet wrapResultSet(ResultSet resultSet, Query query, TimeObservation lifeTimerContext) {
+        if (resultSetDispatchTable == null) {
+            return resultSet;
+        }
         return (ResultSet) newProxy(new ResultSetProxyHandler(resultSet, getResultSetType(resultSet), this, query, lifeTimerContext));
     }
     /**
@@ -197,7 +419,109 @@ public class JdbcProxyFactory {
         return resultSetType;
     }
 
+    /**
+     * Generate and cache the proxy classes of all JDBC types, so that the first wrapped
+     * objects don't pay for proxy class generation and handler class loading.
+     * Proxy classes depend on the class loader of the wrapped objects,
+     * proxies implementing vendor interfaces depend on wrapped classes and are not warmed up.
+     *
+     * @param classLoader Class loader of the JDBC driver
+     */
+    @SuppressWarnings("unchecked")
+    public void warmUp(ClassLoader classLoader) {
+        if (dataSourceDispatchTable != null) {
+            warmUp(new DataSourceProxyHandler(null, this), classLoader, DataSource.class);
+        }
+        if (connectionDispatchTable != null) {
+            warmUp(new ConnectionProxyHandler(null, this, null), classLoader, Connection.class);
+        }
+        if (statementDispatchTable != null) {
+            warmUp(new StatementProxyHandler(null, this, null), classLoader, Statement.class);
+        }
+        if (preparedStatementDispatchTable != null) {
+            warmUp(new PreparedStatementProxyHandler(null, this, null, null), classLoader, PreparedStatement.class);
+        }
+        if (callableStatementDispatchTable != null) {
+            warmUp(new CallableStatementProxyHandler(null, this, null, null), classLoader, CallableStatement.class);
+        }
+        if (resultSetDispatchTable != null) {
+            for (Class resultSetType : RESULT_SET_TYPES) {
+                warmUp(new ResultSetProxyHandler(null, resultSetType, this, null, null), classLoader, resultSetType);
+            }
+        }
+    }
+
+    private void warmUp(JdbcProxyHandler<?> proxyHandler, ClassLoader classLoader, Class<?> jdbcType) {
+        proxyFactory.newProxy(proxyHandler, new ProxyClass(classLoader, jdbcType));
+    }
+
+    /**
+     * Run {@link #warmUp(ClassLoader)} on a background daemon thread
+     *
+     * @param classLoader Class loader of the JDBC driver
+     * @return Started thread
+     */
+    public Thread warmUpInBackground(final ClassLoader classLoader) {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    warmUp(classLoader);
+                } catch (RuntimeException exception) {
+                    LOGGER.log(Level.WARNING, "Proxy warm up failed", exception);
+                }
+            }
+        }, "metrics-sql-warm-up");
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * Change the sampling policy at runtime
+     *
+     * @param samplingPolicy New sampling policy
+     * @throws IllegalStateException when this factory was not built with a sampling policy
+     */
+    public void setSamplingPolicy(SamplingPolicy samplingPolicy) {
+        metricHelper.setSamplingPolicy(samplingPolicy);
+    }
+
+    /**
+     * Register a named query, and create its meters at startup instead of on first execution
+     *
+     * @param sqlId SQL Id used in metric names
+     * @param sql SQL query, exactly as it will be passed to the JDBC driver
+     * @param statementType {@link Statement}, {@link PreparedStatement} or {@link CallableStatement}
+     * @return Registered query
+     */
+    public Query registerQuery(String sqlId, String sql, Class<? extends Statement> statementType) {
+        return metricHelper.registerQuery(sqlId, sql, statementType);
+    }
+
+    /**
+     * @return true if result set rows are counted, then statements and connections publish them when closed
+     */
+    boolean isResultSetRowsCounted() {
+        return resultSetRowsCounted;
+    }
+
+    /**
+     * @return true when proxies implement vendor interfaces
+     */
+    public boolean isVendorInterfaces() {
+        return vendorInterfaces;
+    }
+
     public MetricHelper getMetricHelper() {
         return metricHelper;
     }
+
+    /**
+     * Stop the background recorder, and remove the meters publishing caches and recorder state from the registry.
+     * Proxies created earlier still work, and record synchronously
+     */
+    public void close() {
+        metricHelper.close();
+    }
 }
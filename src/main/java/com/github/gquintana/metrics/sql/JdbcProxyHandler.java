@@ -21,19 +21,37 @@ package com.github.gquintana.metrics.sql;
  */
 
 
-import com.github.gquintana.metrics.proxy.MethodInvocation;
 import com.github.gquintana.metrics.proxy.ProxyClass;
 import com.github.gquintana.metrics.proxy.ProxyHandler;
 
+import java.lang.reflect.Method;
 import java.sql.SQLException;
 import java.sql.Wrapper;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Base class for all JDBC Proxy handlers.
+ * Public methods having the same signature as a JDBC method are typed hooks,
+ * they are called directly by generated proxies (see {@link com.github.gquintana.metrics.proxy.GeneratedProxyFactory}).
  * 
  * @param <T> Proxied type
  */
 public abstract class JdbcProxyHandler<T> extends ProxyHandler<T> {
+    /**
+     * Proxy classes by delegate class, then by JDBC interface
+     */
+    private static final ClassValue<ConcurrentHashMap<Class<?>, ProxyClass>> PROXY_CLASSES = new ProxyClassValue();
+    /**
+     * Proxy classes implementing vendor interfaces, by delegate class, then by JDBC interface
+     */
+    private static final ClassValue<ConcurrentHashMap<Class<?>, ProxyClass>> VENDOR_PROXY_CLASSES = new ProxyClassValue();
+
+    private static final class ProxyClassValue extends ClassValue<ConcurrentHashMap<Class<?>, ProxyClass>> {
+        @Override
+        protected ConcurrentHashMap<Class<?>, ProxyClass> computeValue(Class<?> delegateClass) {
+            return new ConcurrentHashMap<>();
+        }
+    }
 
     /**
      * JDBC Interface class
@@ -47,6 +65,10 @@ public abstract class JdbcProxyHandler<T> extends ProxyHandler<T> {
      * Parent factory of proxy factories
      */
     protected final JdbcProxyFactory proxyFactory;
+    /**
+     * Intercepted methods, depends on enabled metrics
+     */
+    final JdbcMethodDispatchTable dispatchTable;
 
     /**
      * Main constructor
@@ -61,24 +83,36 @@ public abstract class JdbcProxyHandler<T> extends ProxyHandler<T> {
         this.delegateType = delegateType;
         this.proxyFactory = proxyFactory;
         this.lifeTimerContext = lifeTimerContext;
+        this.dispatchTable = proxyFactory.getDispatchTable(delegateType);
     }
 
     private boolean isDelegateType(Class<?> iface) {
         return this.delegateType.equals(iface);
     }
 
-    private Class getClassArg(MethodInvocation methodInvocation) {
-        return (Class) methodInvocation.getArgAt(0, Class.class);
+    private static Class getClassArg(Object[] args) {
+        return (Class) args[0];
+    }
+
+    protected Object isWrapperFor(Method method, Object[] args) throws Throwable {
+        return isWrapperFor(getClassArg(args));
     }
 
-    protected Object isWrapperFor(MethodInvocation methodInvocation) throws Throwable {
-        final Class iface = getClassArg(methodInvocation);
-        return isDelegateType(iface) ? true : methodInvocation.proceed();
+    /**
+     * Typed hook for {@link Wrapper#isWrapperFor(Class)}
+     *
+     * @param iface Interface
+     * @return true if this proxy or the delegate implements the interface
+     */
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return isDelegateType(iface) || ((Wrapper) delegate).isWrapperFor(iface);
     }
 
-    protected Object close(MethodInvocation methodInvocation) throws Throwable {
+    /**
+     * Stop the timer measuring this proxy lifetime
+     */
+    protected final void stopLifeTimer() {
         stopTimer(lifeTimerContext);
-        return methodInvocation.proceed();
     }
 
     protected static void stopTimer(TimeObservation timerContext) {
@@ -87,10 +121,20 @@ public abstract class JdbcProxyHandler<T> extends ProxyHandler<T> {
         }
     }
 
-    protected Object unwrap(MethodInvocation<T> methodInvocation) throws SQLException {
-        final Class iface = getClassArg(methodInvocation);
+    protected Object unwrap(Method method, Object[] args) throws SQLException {
+        return unwrap(getClassArg(args));
+    }
+
+    /**
+     * Typed hook for {@link Wrapper#unwrap(Class)}
+     *
+     * @param iface Interface
+     * @param <X> Interface type
+     * @return Delegate, or object unwrapped by the delegate
+     */
+    public <X> X unwrap(Class<X> iface) throws SQLException {
         final Wrapper delegateWrapper = (Wrapper) delegate;
-        Object result;
+        X result;
         if (isDelegateType(iface)) {
             result = delegateWrapper.isWrapperFor(iface) ? delegateWrapper.unwrap(iface) : iface.cast(delegateWrapper);
         } else {
@@ -99,8 +143,27 @@ public abstract class JdbcProxyHandler<T> extends ProxyHandler<T> {
         return result;
     }
 
+    /**
+     * Get proxy class, implementing the JDBC interface,
+     * and the vendor interfaces of the delegate when {@link JdbcProxyFactory#isVendorInterfaces()}
+     * @return Proxy class
+     */
     public ProxyClass getProxyClass() {
-        return new ProxyClass(delegate.getClass().getClassLoader(), delegateType);
+        final boolean vendorInterfaces = proxyFactory.isVendorInterfaces();
+        final Class<?> delegateClass = delegate.getClass();
+        ConcurrentHashMap<Class<?>, ProxyClass> proxyClasses = (vendorInterfaces ? VENDOR_PROXY_CLASSES : PROXY_CLASSES).get(delegateClass);
+        ProxyClass proxyClass = proxyClasses.get(delegateType);
+        if (proxyClass == null) {
+            proxyClass = vendorInterfaces ? ProxyClass.ofAllInterfaces(delegateClass, delegateType) : new ProxyClass(delegateClass.getClassLoader(), delegateType);
+            ProxyClass oldProxyClass = proxyClasses.putIfAbsent(delegateType, proxyClass);
+            proxyClass = oldProxyClass == null ? proxyClass : oldProxyClass;
+        }
+        return proxyClass;
+    }
+
+    @Override
+    public InvocationFilter getInvocationFilter() {
+        return dispatchTable;
     }
 
     protected MetricHelper getTimerStarter() {
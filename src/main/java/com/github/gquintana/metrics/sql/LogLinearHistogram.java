@@ -0,0 +1,239 @@
+package com.github.gquintana.metrics.sql;
+
+/*
+ * #%L
+ * Metrics SQL
+ * %%
+ * Copyright (C) 2014 Open-Source
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed size histogram of durations in nanoseconds, with log-linear buckets:
+ * values below {@value #SUB_BUCKET_COUNT} have their own bucket, then each power of two is split
+ * in {@value #HALF_SUB_BUCKET_COUNT} buckets of equal width, so that the relative error stays under 1/{@value #HALF_SUB_BUCKET_COUNT}.
+ * Values above 2<sup>{@value #MAX_VALUE_BITS}</sup> ns (about 68 s) are counted in the last bucket.
+ * Durations are recorded in the current of two buffers, which are swapped every rotation interval,
+ * the older one being cleared: percentiles cover between one and two intervals.
+ * Buffer counts are striped by thread, a record is one atomic add in the array of a stripe, stripes are merged on read.
+ * A buffer starts with one stripe, and doubles them when concurrent records collide.
+ * Internal helper class.
+ */
+final class LogLinearHistogram {
+    private static final int SUB_BUCKET_BITS = 6;
+    static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    static final int HALF_SUB_BUCKET_COUNT = SUB_BUCKET_COUNT >> 1;
+    static final int MAX_VALUE_BITS = 36;
+    private static final long MAX_VALUE = (1L << MAX_VALUE_BITS) - 1L;
+    static final int BUCKET_COUNT = ((MAX_VALUE_BITS - SUB_BUCKET_BITS) << (SUB_BUCKET_BITS - 1)) + SUB_BUCKET_COUNT;
+    private static final int MAX_STRIPE_COUNT = Math.min(8, Integer.highestOneBit(Runtime.getRuntime().availableProcessors()));
+    private static final long DEFAULT_ROTATION_NANOS = TimeUnit.MINUTES.toNanos(1L);
+
+    /**
+     * Counts by bucket, striped by thread
+     */
+    private static final class Buffer {
+        private volatile AtomicLongArray[] stripes = {new AtomicLongArray(BUCKET_COUNT)};
+
+        private void record(int index, int weight) {
+            AtomicLongArray[] currentStripes = stripes;
+            AtomicLongArray stripe = currentStripes[(int) Thread.currentThread().getId() & (currentStripes.length - 1)];
+            long count = stripe.get(index);
+            if (!stripe.compareAndSet(index, count, count + weight)) {
+                stripe.getAndAdd(index, weight);
+                grow(currentStripes);
+            }
+        }
+
+        /**
+         * Double the stripes, existing ones are kept so that no count is lost
+         */
+        private synchronized void grow(AtomicLongArray[] currentStripes) {
+            if (stripes != currentStripes || currentStripes.length >= MAX_STRIPE_COUNT) {
+                return;
+            }
+            AtomicLongArray[] newStripes = new AtomicLongArray[currentStripes.length * 2];
+            System.arraycopy(currentStripes, 0, newStripes, 0, currentStripes.length);
+            for (int i = currentStripes.length; i < newStripes.length; i++) {
+                newStripes[i] = new AtomicLongArray(BUCKET_COUNT);
+            }
+            stripes = newStripes;
+        }
+
+        private void addCounts(long[] counts) {
+            for (AtomicLongArray stripe : stripes) {
+                for (int i = 0; i < BUCKET_COUNT; i++) {
+                    counts[i] += stripe.get(i);
+                }
+            }
+        }
+
+        private void clear() {
+            for (AtomicLongArray stripe : stripes) {
+                for (int i = 0; i < BUCKET_COUNT; i++) {
+                    stripe.set(i, 0L);
+                }
+            }
+        }
+
+        private int getStripeCount() {
+            return stripes.length;
+        }
+    }
+
+    private final Buffer[] buffers = {new Buffer(), new Buffer()};
+    private final long rotationNanos;
+    private volatile int currentBuffer;
+    private volatile long nextRotationTime;
+
+    LogLinearHistogram() {
+        this(DEFAULT_ROTATION_NANOS, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @param rotationInterval Time after which the buffers are swapped
+     * @param timeUnit Unit of rotation interval
+     */
+    LogLinearHistogram(long rotationInterval, TimeUnit timeUnit) {
+        this.rotationNanos = timeUnit.toNanos(rotationInterval);
+        this.nextRotationTime = System.nanoTime() + rotationNanos;
+    }
+
+    /**
+     * Get the bucket of a value
+     */
+    static int getIndex(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return value < 0L ? 0 : (int) value;
+        }
+        long clampedValue = Math.min(value, MAX_VALUE);
+        int shift = 64 - Long.numberOfLeadingZeros(clampedValue) - SUB_BUCKET_BITS;
+        return (shift << (SUB_BUCKET_BITS - 1)) + (int) (clampedValue >>> shift);
+    }
+
+    /**
+     * Get the lowest value counted in a bucket
+     */
+    static long getLowestValue(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = (index >> (SUB_BUCKET_BITS - 1)) - 1;
+        return (long) (index - (shift << (SUB_BUCKET_BITS - 1))) << shift;
+    }
+
+    /**
+     * Get the highest value counted in a bucket
+     */
+    static long getHighestValue(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = (index >> (SUB_BUCKET_BITS - 1)) - 1;
+        return getLowestValue(index) + (1L << shift) - 1L;
+    }
+
+    /**
+     * @param duration Duration in nanoseconds
+     * @param weight Number of durations this one stands for
+     */
+    void record(long duration, int weight) {
+        rotate(System.nanoTime());
+        buffers[currentBuffer].record(getIndex(duration), weight);
+    }
+
+    /**
+     * Swap the buffers when the rotation interval has elapsed, the new current one is cleared,
+     * both are cleared after two intervals without rotation
+     */
+    private void rotate(long now) {
+        if (now - nextRotationTime < 0L) {
+            return;
+        }
+        synchronized (this) {
+            if (now - nextRotationTime < 0L) {
+                return;
+            }
+            int nextBuffer = currentBuffer ^ 1;
+            buffers[nextBuffer].clear();
+            if (now - nextRotationTime >= rotationNanos) {
+                buffers[currentBuffer].clear();
+            }
+            currentBuffer = nextBuffer;
+            nextRotationTime = now + rotationNanos;
+        }
+    }
+
+    /**
+     * Merge buffers and stripes
+     *
+     * @return Counts by bucket
+     */
+    private long[] getCounts() {
+        rotate(System.nanoTime());
+        long[] counts = new long[BUCKET_COUNT];
+        for (Buffer buffer : buffers) {
+            buffer.addCounts(counts);
+        }
+        return counts;
+    }
+
+    /**
+     * @return Number of durations in the window
+     */
+    long count() {
+        long count = 0L;
+        for (long bucketCount : getCounts()) {
+            count += bucketCount;
+        }
+        return count;
+    }
+
+    /**
+     * @return Number of stripes of the current buffer
+     */
+    int getStripeCount() {
+        return buffers[currentBuffer].getStripeCount();
+    }
+
+    /**
+     * Get the value below which given ratio of values of the window fall, like HdrHistogram the highest value of the bucket is returned
+     *
+     * @param percentile Ratio between 0 and 1
+     * @return Duration in nanoseconds, 0 when empty
+     */
+    long getValueAtPercentile(double percentile) {
+        long[] counts = getCounts();
+        long count = 0L;
+        for (long bucketCount : counts) {
+            count += bucketCount;
+        }
+        if (count == 0L) {
+            return 0L;
+        }
+        long rank = Math.max(1L, (long) Math.ceil(percentile * count));
+        long cumulatedCount = 0L;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            cumulatedCount += counts[i];
+            if (cumulatedCount >= rank) {
+                return getHighestValue(i);
+            }
+        }
+        return getHighestValue(BUCKET_COUNT - 1);
+    }
+}
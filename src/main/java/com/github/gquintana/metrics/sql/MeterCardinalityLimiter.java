@@ -0,0 +1,269 @@
+package com.github.gquintana.metrics.sql;
+
+/*
+ * #%L
+ * Metrics SQL
+ * %%
+ * Copyright (C) 2014 Open-Source
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import io.micrometer.core.instrument.Meter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Limits the number of distinct SQL Ids owning meters.
+ * Once the limit is reached, new SQL Ids share the meters of an overflow entry.
+ * SQL Ids unused for longer than the idle timeout are evicted, and their meters removed,
+ * at most once per idle timeout, when any SQL Id is used.
+ * Meters are reference counted: a meter whose name doesn't depend on the SQL Id is shared by several entries,
+ * and only removed with the last one.
+ * Registered queries share an entry which is neither counted nor evicted.
+ * Lookups of known SQL Ids don't lock, only new SQL Ids and evictions do.
+ */
+final class MeterCardinalityLimiter {
+    /**
+     * SQL of the overflow entry, named by the naming strategy like any other SQL
+     */
+    static final String OVERFLOW_SQL = "overflow";
+    /**
+     * Last use times are not updated more often, to avoid contended writes on hot SQL Ids
+     */
+    private static final long TOUCH_RESOLUTION_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    /**
+     * Meters of a SQL Id
+     */
+    static final class Entry {
+        private final String sqlId;
+        private final Set<Meter> meters = ConcurrentHashMap.newKeySet();
+        /**
+         * Reference counts of the meters of all entries
+         */
+        private final ConcurrentHashMap<Meter, Integer> meterReferences;
+        private volatile long lastUsed;
+        private volatile boolean evicted;
+
+        private Entry(String sqlId, long now, ConcurrentHashMap<Meter, Integer> meterReferences) {
+            this.sqlId = sqlId;
+            this.lastUsed = now;
+            this.meterReferences = meterReferences;
+        }
+
+        /**
+         * Mark this entry as used
+         *
+         * @return false when it was evicted and its meters should be resolved again
+         */
+        boolean touch(long now) {
+            if (now - lastUsed > TOUCH_RESOLUTION_NANOS) {
+                lastUsed = now;
+            }
+            return !evicted;
+        }
+
+        /**
+         * Record a meter registered for this SQL Id
+         *
+         * @return false when this entry was evicted meanwhile and no other entry holds the meter,
+         * the meter should be removed by the caller
+         */
+        synchronized boolean addMeter(Meter meter) {
+            if (evicted) {
+                return meterReferences.containsKey(meter);
+            }
+            if (meters.add(meter)) {
+                meterReferences.merge(meter, 1, Integer::sum);
+            }
+            return true;
+        }
+
+        /**
+         * @return Meters which are not held by any other entry
+         */
+        private synchronized List<Meter> evict() {
+            evicted = true;
+            List<Meter> evictedMeters = new ArrayList<>();
+            for (Meter meter : meters) {
+                if (meterReferences.computeIfPresent(meter, (m, count) -> count == 1 ? null : count - 1) == null) {
+                    evictedMeters.add(meter);
+                }
+            }
+            meters.clear();
+            return evictedMeters;
+        }
+    }
+
+    private final int maxSqlIds;
+    private final long idleTimeoutNanos;
+    private final Consumer<List<Meter>> meterRemover;
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Meter, Integer> meterReferences = new ConcurrentHashMap<>();
+    private final Entry overflowEntry;
+    /**
+     * Entry of registered queries, their meters are never removed
+     */
+    private final Entry registeredEntry;
+    /**
+     * Next time idle entries are looked for, written under lock
+     */
+    private volatile long nextEvictionTime;
+    private final LongAdder overflowCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+
+    /**
+     * @param maxSqlIds Maximum number of SQL Ids, 0 for no limit
+     * @param idleTimeoutMillis Idle time after which SQL Ids are evicted, 0 to never evict
+     * @param meterRemover Called with the meters of evicted SQL Ids
+     */
+    MeterCardinalityLimiter(int maxSqlIds, long idleTimeoutMillis, Consumer<List<Meter>> meterRemover) {
+        this.maxSqlIds = maxSqlIds <= 0 ? Integer.MAX_VALUE : maxSqlIds;
+        this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis);
+        this.meterRemover = meterRemover;
+        long now = System.nanoTime();
+        this.overflowEntry = new Entry(OVERFLOW_SQL, now, meterReferences);
+        this.registeredEntry = new Entry(null, now, meterReferences);
+        this.nextEvictionTime = now + idleTimeoutNanos;
+    }
+
+    /**
+     * Get the entry of a SQL Id, creating it when there is room left
+     *
+     * @param sqlId SQL Id
+     * @return Entry of the SQL Id, or the overflow entry
+     */
+    Entry acquire(String sqlId) {
+        long now = System.nanoTime();
+        Entry entry = entries.get(sqlId);
+        if (entry != null) {
+            entry.touch(now);
+            return entry;
+        }
+        List<Meter> evictedMeters;
+        synchronized (this) {
+            entry = entries.get(sqlId);
+            if (entry != null) {
+                return entry;
+            }
+            evictedMeters = idleTimeoutNanos > 0 && (entries.size() >= maxSqlIds || now - nextEvictionTime >= 0)
+                    ? evictIdleEntries(now) : Collections.emptyList();
+            if (entries.size() >= maxSqlIds) {
+                entry = overflowEntry;
+                overflowCount.increment();
+            } else {
+                entry = new Entry(sqlId, now, meterReferences);
+                entries.put(sqlId, entry);
+            }
+        }
+        if (!evictedMeters.isEmpty()) {
+            meterRemover.accept(evictedMeters);
+        }
+        return entry;
+    }
+
+    /**
+     * Evict entries unused since the idle timeout, guarded by this
+     *
+     * @return Meters of evicted entries
+     */
+    private List<Meter> evictIdleEntries(long now) {
+        nextEvictionTime = now + idleTimeoutNanos;
+        List<Meter> evictedMeters = new ArrayList<>();
+        for (Entry entry : entries.values()) {
+            if (now - entry.lastUsed > idleTimeoutNanos) {
+                entries.remove(entry.sqlId, entry);
+                evictedMeters.addAll(entry.evict());
+                evictionCount.increment();
+            }
+        }
+        return evictedMeters;
+    }
+
+    /**
+     * Evict idle entries now
+     */
+    void evictIdle() {
+        if (idleTimeoutNanos <= 0) {
+            return;
+        }
+        List<Meter> evictedMeters;
+        synchronized (this) {
+            evictedMeters = evictIdleEntries(System.nanoTime());
+        }
+        if (!evictedMeters.isEmpty()) {
+            meterRemover.accept(evictedMeters);
+        }
+    }
+
+    /**
+     * Evict idle entries when the last eviction is older than the idle timeout,
+     * only reads a volatile otherwise
+     *
+     * @param now Current time in nanoseconds
+     */
+    void evictIdle(long now) {
+        if (idleTimeoutNanos <= 0 || now - nextEvictionTime < 0) {
+            return;
+        }
+        List<Meter> evictedMeters;
+        synchronized (this) {
+            if (now - nextEvictionTime < 0) {
+                return;
+            }
+            evictedMeters = evictIdleEntries(now);
+        }
+        if (!evictedMeters.isEmpty()) {
+            meterRemover.accept(evictedMeters);
+        }
+    }
+
+    Entry getRegisteredEntry() {
+        return registeredEntry;
+    }
+
+    boolean isOverflow(Entry entry) {
+        return entry == overflowEntry;
+    }
+
+    /**
+     * @return true when given entry is the overflow one, and a SQL Id could now get its own entry
+     */
+    boolean isOverflowWithRoom(Entry entry) {
+        return entry == overflowEntry && entries.size() < maxSqlIds;
+    }
+
+    /**
+     * @return Number of SQL Ids owning meters, overflow excluded
+     */
+    int size() {
+        return entries.size();
+    }
+
+    long getOverflowCount() {
+        return overflowCount.sum();
+    }
+
+    long getEvictionCount() {
+        return evictionCount.sum();
+    }
+}
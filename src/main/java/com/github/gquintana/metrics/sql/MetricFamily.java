@@ -0,0 +1,80 @@
+package com.github.gquintana.metrics.sql;
+
+/*
+ * #%L
+ * Metrics SQL
+ * %%
+ * Copyright (C) 2014 Open-Source
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+/**
+ * Families of metrics produced by the JDBC proxies,
+ * see {@link MetricNamingStrategy#isEnabled(MetricFamily)}
+ */
+public enum MetricFamily {
+    /**
+     * {@link MetricNamingStrategy#getConnectionGetTimer()}
+     */
+    CONNECTION_GET,
+    /**
+     * {@link MetricNamingStrategy#getConnectionLifeTimer()}
+     */
+    CONNECTION_LIFE,
+    /**
+     * {@link MetricNamingStrategy#getStatementLifeTimer()}
+     */
+    STATEMENT_LIFE,
+    /**
+     * {@link MetricNamingStrategy#getStatementExecuteTimer(String, String)}
+     */
+    STATEMENT_EXECUTE,
+    /**
+     * {@link MetricNamingStrategy#getStatementExecuteFailureTimer(String, String)}
+     */
+    STATEMENT_EXECUTE_FAILURE,
+    /**
+     * {@link MetricNamingStrategy#getPreparedStatementLifeTimer(String, String)}
+     */
+    PREPARED_STATEMENT_LIFE,
+    /**
+     * {@link MetricNamingStrategy#getPreparedStatementExecuteTimer(String, String)}
+     */
+    PREPARED_STATEMENT_EXECUTE,
+    /**
+     * {@link MetricNamingStrategy#getPreparedStatementExecuteFailureTimer(String, String)}
+     */
+    PREPARED_STATEMENT_EXECUTE_FAILURE,
+    /**
+     * {@link MetricNamingStrategy#getCallableStatementLifeTimer(String, String)}
+     */
+    CALLABLE_STATEMENT_LIFE,
+    /**
+     * {@link MetricNamingStrategy#getCallableStatementExecuteTimer(String, String)}
+     */
+    CALLABLE_STATEMENT_EXECUTE,
+    /**
+     * {@link MetricNamingStrategy#getCallableStatementExecuteFailureTimer(String, String)}
+     */
+    CALLABLE_STATEMENT_EXECUTE_FAILURE,
+    /**
+     * {@link MetricNamingStrategy#getResultSetLifeTimer(String, String)}
+     */
+    RESULT_SET_LIFE,
+    /**
+     * {@link MetricNamingStrategy#getResultSetRowMeter(String, String)}
+     */
+    RESULT_SET_ROWS
+}
@@ -21,20 +21,96 @@ package com.github.gquintana.metrics.sql;
  */
 
 import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
 import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
 import io.micrometer.core.instrument.Timer;
 
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * Start <code>Timer</code>s and increments <code>Counter</code>s
  * Internal helper class.
  */
 class MetricHelper {
+    /**
+     * Cached on queries when the naming strategy doesn't meter them
+     */
+    private static final Object NO_METER = new Object();
     private final MeterRegistry meterRegistry;
     private final MetricNamingStrategy metricNamingStrategy;
+    private final EnumSet<MetricFamily> enabledMetricFamilies = EnumSet.noneOf(MetricFamily.class);
     private final ConcurrentHashMap<String, Timer> timerMap = new ConcurrentHashMap<>();
     private final ConcurrentHashMap<String, Counter> counterMap = new ConcurrentHashMap<>();
+    /**
+     * Queries by SQL, null when disabled
+     */
+    private final QueryCache queryCache;
+    /**
+     * Queries registered by the application, by SQL
+     */
+    private final ConcurrentHashMap<String, Query> registeredQueries = new ConcurrentHashMap<>();
+    private volatile boolean hasRegisteredQueries;
+    /**
+     * Resolved meters of metric families not depending on the query
+     */
+    private final AtomicReferenceArray<Object> familyMeters = new AtomicReferenceArray<>(MetricFamily.values().length);
+    /**
+     * Limits SQL Ids owning meters, null when disabled
+     */
+    private final MeterCardinalityLimiter cardinalityLimiter;
+    /**
+     * Meters publishing the state of this helper: query cache, cardinality limiter
+     */
+    private final List<Meter> stateMeters = new ArrayList<>();
+    /**
+     * SQL Id of the overflow entry of the cardinality limiter
+     */
+    private final String overflowSqlId;
+    /**
+     * Sampling policy of executions and rows, null when sampling is disabled
+     */
+    private volatile SamplingPolicy samplingPolicy;
+    /**
+     * Execution timers when sampling or percentiles are enabled, by meter id
+     */
+    private final ConcurrentHashMap<Meter.Id, WeightedTimer> weightedTimers;
+    /**
+     * Published percentiles of execution timers, null when disabled
+     */
+    private final double[] percentiles;
+    /**
+     * Records meters on a background thread, null to record on the calling thread
+     */
+    private final AsyncMeterRecorder asyncRecorder;
+    /**
+     * Whether executions and rows are also measured per operation and table
+     */
+    private final boolean tableMetrics;
+
+    /**
+     * Name and tags of failure timers, the outcome tags are added on failure
+     */
+    private static final class FailureTimerId {
+        private final String name;
+        private final Tags tags;
+        private final MeterCardinalityLimiter.Entry limiterEntry;
+
+        private FailureTimerId(String name, Tags tags, MeterCardinalityLimiter.Entry limiterEntry) {
+            this.name = name;
+            this.tags = tags == null ? Tags.empty() : tags;
+            this.limiterEntry = limiterEntry;
+        }
+    }
 
     /**
      * Constructor
@@ -42,32 +118,244 @@ class MetricHelper {
      * @param metricNamingStrategy Strategy to name metrics
      */
     MetricHelper(MeterRegistry meterRegistry, MetricNamingStrategy metricNamingStrategy) {
+        this(meterRegistry, metricNamingStrategy, 0, 0, 0L, null, 0, false, null, false);
+    }
+
+    /**
+     * Constructor used by {@link MetricsSql.Builder}, which holds the defaults of the options
+     * @param meterRegistry Registry storing metrics
+     * @param metricNamingStrategy Strategy to name metrics
+     * @param queryCacheSize Maximum number of cached queries, 0 to disable the cache
+     * @param maxSqlIds Maximum number of SQL Ids owning meters, others share overflow meters, 0 for no limit
+     * @param meterIdleTimeoutMillis Idle time after which the meters of a SQL Id are removed, 0 to keep them
+     * @param samplingPolicy Sampling policy of executions and rows, null to measure everything.
+     *                       When set, execution timers are published as {@link FunctionTimer}s
+     * @param asyncBufferSize Number of events buffered for the background recorder, 0 to record synchronously
+     * @param blockWhenFull Whether threads wait for room in the buffer, instead of dropping events
+     * @param percentiles Percentiles of execution timers computed by a {@link LogLinearHistogram}, null to disable.
+     *                    When set, execution timers are published as {@link FunctionTimer}s
+     * @param tableMetrics Whether executions and read rows are also measured per operation and table,
+     *                     by the {@code jdbc.table.execute} timers and {@code jdbc.table.rows} counters
+     */
+    MetricHelper(MeterRegistry meterRegistry, MetricNamingStrategy metricNamingStrategy, int queryCacheSize,
+                 int maxSqlIds, long meterIdleTimeoutMillis, SamplingPolicy samplingPolicy,
+                 int asyncBufferSize, boolean blockWhenFull, double[] percentiles, boolean tableMetrics) {
+        this.tableMetrics = tableMetrics;
         this.meterRegistry = meterRegistry;
+        this.asyncRecorder = asyncBufferSize > 0 ? new AsyncMeterRecorder(meterRegistry, asyncBufferSize, blockWhenFull) : null;
         this.metricNamingStrategy = metricNamingStrategy;
+        this.samplingPolicy = samplingPolicy;
+        this.percentiles = percentiles == null || percentiles.length == 0 ? null : percentiles.clone();
+        this.weightedTimers = samplingPolicy == null && this.percentiles == null ? null : new ConcurrentHashMap<>();
+        for (MetricFamily metricFamily : MetricFamily.values()) {
+            if (metricNamingStrategy.isEnabled(metricFamily)) {
+                enabledMetricFamilies.add(metricFamily);
+            }
+        }
+        if (queryCacheSize > 0) {
+            queryCache = new QueryCache(queryCacheSize);
+            stateMeters.add(FunctionCounter.builder("metrics.sql.query.cache", queryCache, QueryCache::getHitCount)
+                    .tag("result", "hit").register(meterRegistry));
+            stateMeters.add(FunctionCounter.builder("metrics.sql.query.cache", queryCache, QueryCache::getMissCount)
+                    .tag("result", "miss").register(meterRegistry));
+            stateMeters.add(FunctionCounter.builder("metrics.sql.query.cache.evictions", queryCache, QueryCache::getEvictionCount)
+                    .register(meterRegistry));
+            stateMeters.add(Gauge.builder("metrics.sql.query.cache.size", queryCache, QueryCache::size)
+                    .register(meterRegistry));
+        } else {
+            queryCache = null;
+        }
+        if (maxSqlIds > 0 || meterIdleTimeoutMillis > 0L) {
+            cardinalityLimiter = new MeterCardinalityLimiter(maxSqlIds, meterIdleTimeoutMillis, this::removeMeters);
+            overflowSqlId = metricNamingStrategy.getSqlId(MeterCardinalityLimiter.OVERFLOW_SQL);
+            stateMeters.add(Gauge.builder("metrics.sql.cardinality", cardinalityLimiter, MeterCardinalityLimiter::size)
+                    .register(meterRegistry));
+            stateMeters.add(FunctionCounter.builder("metrics.sql.cardinality.overflow", cardinalityLimiter, MeterCardinalityLimiter::getOverflowCount)
+                    .register(meterRegistry));
+            stateMeters.add(FunctionCounter.builder("metrics.sql.cardinality.evictions", cardinalityLimiter, MeterCardinalityLimiter::getEvictionCount)
+                    .register(meterRegistry));
+        } else {
+            cardinalityLimiter = null;
+            overflowSqlId = null;
+        }
     }
 
-    private TimeObservation startTimer(String name) {
-        if (name == null) {
-            return null;
+    /**
+     * Release the resources of this helper: stop the background recorder,
+     * and remove the meters publishing the state of this helper from the registry.
+     * Meters of queries are kept, they may be shared with other helpers
+     */
+    void close() {
+        if (asyncRecorder != null) {
+            asyncRecorder.close();
+        }
+        for (Meter stateMeter : stateMeters) {
+            meterRegistry.remove(stateMeter);
         }
-        Timer timer = timerMap.computeIfAbsent(name, n -> Timer.builder(n).register(meterRegistry));
-        return new TimeObservation(timer, System.nanoTime());
     }
 
-    private void incCounter(String name) {
-        if (name == null) {
-            return;
+    /**
+     * Get the query of given SQL, from the query cache when enabled
+     *
+     * @param sql SQL
+     * @return Query, shared by threads when cached
+     */
+    public Query getQuery(String sql) {
+        if (hasRegisteredQueries && sql != null) {
+            Query query = registeredQueries.get(sql);
+            if (query != null) {
+                return query;
+            }
+        }
+        return queryCache == null ? new Query(sql) : queryCache.get(sql);
+    }
+
+    /**
+     * Register a query and create its meters upfront, the SQL Id is not computed by the naming strategy.
+     * Registered queries bypass the cardinality limiter: they don't count against the maximum number of SQL Ids,
+     * never overflow and their meters are never evicted.
+     *
+     * @param sqlId SQL Id, null to compute it with the naming strategy
+     * @param sql SQL query, as passed to the JDBC driver
+     * @param statementType Type of statement executing the query: {@link Statement}, {@link PreparedStatement} or {@link CallableStatement}
+     * @return Registered query
+     */
+    public Query registerQuery(String sqlId, String sql, Class<? extends Statement> statementType) {
+        Query query = new Query(sql, sqlId);
+        Query oldQuery = registeredQueries.putIfAbsent(sql, query);
+        if (oldQuery != null) {
+            return oldQuery;
+        }
+        hasRegisteredQueries = true;
+        if (cardinalityLimiter != null) {
+            query.setLimiterEntry(this, cardinalityLimiter.getRegisteredEntry());
+        }
+        if (CallableStatement.class.isAssignableFrom(statementType)) {
+            getMeter(MetricFamily.CALLABLE_STATEMENT_LIFE, query);
+            getMeter(MetricFamily.CALLABLE_STATEMENT_EXECUTE, query);
+        } else if (PreparedStatement.class.isAssignableFrom(statementType)) {
+            getMeter(MetricFamily.PREPARED_STATEMENT_LIFE, query);
+            getMeter(MetricFamily.PREPARED_STATEMENT_EXECUTE, query);
+        } else {
+            getMeter(MetricFamily.STATEMENT_EXECUTE, query);
+        }
+        getMeter(MetricFamily.RESULT_SET_LIFE, query);
+        getMeter(MetricFamily.RESULT_SET_ROWS, query);
+        if (tableMetrics && sql != null) {
+            getTableMeters(Query.TABLE_EXECUTE_SLOT, query);
+            getTableMeters(Query.TABLE_ROWS_SLOT, query);
+        }
+        return query;
+    }
+
+    QueryCache getQueryCache() {
+        return queryCache;
+    }
+
+    MeterCardinalityLimiter getCardinalityLimiter() {
+        return cardinalityLimiter;
+    }
+
+    AsyncMeterRecorder getAsyncRecorder() {
+        return asyncRecorder;
+    }
+
+    MetricNamingStrategy getMetricNamingStrategy() {
+        return metricNamingStrategy;
+    }
+
+    /**
+     * Record a duration measured by the caller
+     *
+     * @param timer Timer
+     * @param duration Duration in nanoseconds
+     */
+    void recordTimer(Timer timer, long duration) {
+        if (asyncRecorder == null) {
+            timer.record(duration, TimeUnit.NANOSECONDS);
+        } else {
+            asyncRecorder.recordTimer(timer, duration);
+        }
+    }
+
+    boolean isTableMetrics() {
+        return tableMetrics;
+    }
+
+    SamplingPolicy getSamplingPolicy() {
+        return samplingPolicy;
+    }
+
+    /**
+     * Change the sampling policy at runtime
+     *
+     * @param samplingPolicy New sampling policy
+     * @throws IllegalStateException when sampling was not enabled at construction,
+     *                               execution timers can not change from {@link Timer} to {@link FunctionTimer}
+     */
+    void setSamplingPolicy(SamplingPolicy samplingPolicy) {
+        if (this.samplingPolicy == null || samplingPolicy == null) {
+            throw new IllegalStateException("Sampling must be enabled at construction");
+        }
+        this.samplingPolicy = samplingPolicy;
+    }
+
+    /**
+     * Remove evicted meters from this helper and from the registry
+     */
+    private void removeMeters(List<Meter> meters) {
+        for (Meter meter : meters) {
+            removeMeter(meter);
+        }
+    }
+
+    private void removeMeter(Meter meter) {
+        String name = meter.getId().getName();
+        timerMap.remove(name, meter);
+        counterMap.remove(name, meter);
+        if (weightedTimers != null) {
+            weightedTimers.remove(meter.getId());
         }
-        Counter counter = counterMap.computeIfAbsent(name, n -> Counter.builder(n).register(meterRegistry));
-        counter.increment();
+        meterRegistry.remove(meter);
+    }
+
+    private void addMeter(MeterCardinalityLimiter.Entry limiterEntry, Meter meter) {
+        if (limiterEntry != null && !limiterEntry.addMeter(meter)) {
+            removeMeter(meter);
+        }
+    }
+
+    private Timer getTimer(String name, Tags tags) {
+        if (isEmpty(tags)) {
+            return timerMap.computeIfAbsent(name, n -> Timer.builder(n).register(meterRegistry));
+        }
+        return Timer.builder(name).tags(tags).register(meterRegistry);
+    }
+
+    private Counter getCounter(String name, Tags tags) {
+        if (isEmpty(tags)) {
+            return counterMap.computeIfAbsent(name, n -> Counter.builder(n).register(meterRegistry));
+        }
+        return Counter.builder(name).tags(tags).register(meterRegistry);
+    }
+
+    private static boolean isEmpty(Tags tags) {
+        return tags == null || !tags.iterator().hasNext();
+    }
+
+    private TimeObservation startTimer(Timer timer) {
+        if (timer == null) {
+            return null;
+        }
+        return new TimeObservation(timer, System.nanoTime(), asyncRecorder);
     }
 
     public TimeObservation startConnectionLifeTimer() {
-        return startTimer(metricNamingStrategy.getConnectionLifeTimer());
+        return startTimer(getTimer(MetricFamily.CONNECTION_LIFE, null));
     }
 
     public TimeObservation startConnectionGetTimer() {
-        return startTimer(metricNamingStrategy.getConnectionGetTimer());
+        return startTimer(getTimer(MetricFamily.CONNECTION_GET, null));
     }
 
     /**
@@ -76,8 +364,9 @@ class MetricHelper {
      * @return Started timer context or null
      */
     public TimeObservation startStatementLifeTimer() {
-        return startTimer(metricNamingStrategy.getStatementLifeTimer());
+        return startTimer(getTimer(MetricFamily.STATEMENT_LIFE, null));
     }
+
     /**
      * Start Timer when statement is executed
      *
@@ -85,24 +374,355 @@ class MetricHelper {
      * @return Started timer context or null
      */
     public TimeObservation startStatementExecuteTimer(Query query) {
+        return startExecuteTimer(MetricFamily.STATEMENT_EXECUTE, MetricFamily.STATEMENT_EXECUTE_FAILURE, query);
+    }
+
+    /**
+     * Start execution timer, the observation is also needed to time failures
+     */
+    private TimeObservation startExecuteTimer(MetricFamily executeFamily, MetricFamily executeFailureFamily, Query query) {
+        TimeObservation observation = startQueryExecuteTimer(executeFamily, executeFailureFamily, query);
+        if (!tableMetrics || query.getSql() == null) {
+            return observation;
+        }
+        Timer[] tableTimers = (Timer[]) getTableMeters(Query.TABLE_EXECUTE_SLOT, query);
+        return new TableTimeObservation(observation, tableTimers, observation == null ? System.nanoTime() : observation.getStartTime());
+    }
+
+    /**
+     * Get the meters aggregated by operation and table, resolved once per query.
+     * They are shared by queries, and not subject to the cardinality limit
+     *
+     * @param slot {@link Query#TABLE_EXECUTE_SLOT} for timers, {@link Query#TABLE_ROWS_SLOT} for counters
+     * @return One meter per table
+     */
+    private Meter[] getTableMeters(int slot, Query query) {
+        Meter[] tableMeters = (Meter[]) query.getMeter(this, slot);
+        if (tableMeters == null) {
+            SqlClassification classification = query.getClassification();
+            List<String> tables = classification.getTables();
+            tableMeters = slot == Query.TABLE_EXECUTE_SLOT ? new Timer[Math.max(1, tables.size())] : new Counter[Math.max(1, tables.size())];
+            for (int i = 0; i < tableMeters.length; i++) {
+                Tags tags = Tags.of("operation", classification.getOperation(), "table", tables.isEmpty() ? "none" : tables.get(i));
+                tableMeters[i] = slot == Query.TABLE_EXECUTE_SLOT ? getTimer("jdbc.table.execute", tags) : getCounter("jdbc.table.rows", tags);
+            }
+            query.setMeter(this, slot, tableMeters);
+        }
+        return tableMeters;
+    }
+
+    /**
+     * Observation of an execution, also recorded in the timers of the tables
+     */
+    private final class TableTimeObservation extends TimeObservation {
+        private final TimeObservation observation;
+        private final Timer[] tableTimers;
+
+        private TableTimeObservation(TimeObservation observation, Timer[] tableTimers, long startTime) {
+            super(null, startTime);
+            this.observation = observation;
+            this.tableTimers = tableTimers;
+        }
+
+        @Override
+        public void close() {
+            if (observation != null) {
+                observation.close();
+            }
+            long duration = System.nanoTime() - getStartTime();
+            for (Timer tableTimer : tableTimers) {
+                recordTimer(tableTimer, duration);
+            }
+        }
+    }
+
+    private TimeObservation startQueryExecuteTimer(MetricFamily executeFamily, MetricFamily executeFailureFamily, Query query) {
+        SamplingPolicy policy = samplingPolicy;
+        if (policy != null) {
+            return startSampledExecuteTimer(policy, executeFamily, executeFailureFamily, query);
+        }
+        if (weightedTimers != null) {
+            WeightedTimer timer = (WeightedTimer) getMeter(executeFamily, query);
+            if (timer == null && !enabledMetricFamilies.contains(executeFailureFamily)) {
+                return null;
+            }
+            return new WeightedTimeObservation(timer, 1, null, query, System.nanoTime(), asyncRecorder);
+        }
+        Timer timer = getTimer(executeFamily, query);
+        if (timer == null && !enabledMetricFamilies.contains(executeFailureFamily)) {
+            return null;
+        }
+        return new TimeObservation(timer, System.nanoTime(), asyncRecorder);
+    }
+
+    /**
+     * Start execution timer when the execution is sampled.
+     * Otherwise, the clock is only read to time a failure, failures are always recorded unsampled
+     */
+    private TimeObservation startSampledExecuteTimer(SamplingPolicy policy, MetricFamily executeFamily, MetricFamily executeFailureFamily, Query query) {
+        if (!enabledMetricFamilies.contains(executeFamily) && !enabledMetricFamilies.contains(executeFailureFamily)) {
+            return null;
+        }
         ensureSqlId(query);
-        String name = metricNamingStrategy.getStatementExecuteTimer(query.getSql(), query.getSqlId());
-        return startTimer(name);
+        int weight = policy.sample(executeFamily, query);
+        if (weight <= 0) {
+            return enabledMetricFamilies.contains(executeFailureFamily) ? new TimeObservation(null, System.nanoTime()) : null;
+        }
+        WeightedTimer timer = (WeightedTimer) getMeter(executeFamily, query);
+        if (timer == null && !enabledMetricFamilies.contains(executeFailureFamily)) {
+            return null;
+        }
+        return new WeightedTimeObservation(timer, weight, policy, query, System.nanoTime(), asyncRecorder);
+    }
+
+    /**
+     * Observation of an execution timed by a {@link WeightedTimer}
+     */
+    private static final class WeightedTimeObservation extends TimeObservation {
+        private final WeightedTimer weightedTimer;
+        private final int weight;
+        private final SamplingPolicy samplingPolicy;
+        private final Query query;
+        private final AsyncMeterRecorder recorder;
+
+        private WeightedTimeObservation(WeightedTimer weightedTimer, int weight, SamplingPolicy samplingPolicy, Query query, long startTime,
+                                       AsyncMeterRecorder recorder) {
+            super(null, startTime);
+            this.weightedTimer = weightedTimer;
+            this.weight = weight;
+            this.samplingPolicy = samplingPolicy;
+            this.query = query;
+            this.recorder = recorder;
+        }
+
+        @Override
+        public void close() {
+            if (weightedTimer != null) {
+                long duration = System.nanoTime() - getStartTime();
+                if (recorder == null) {
+                    weightedTimer.record(duration, weight);
+                } else {
+                    recorder.recordWeightedTimer(weightedTimer, duration, weight);
+                }
+                if (samplingPolicy != null) {
+                    samplingPolicy.onSampled(query, duration);
+                }
+            }
+        }
+    }
+
+    /**
+     * Record a failed execution in a timer tagged with the outcome, the SQL state class and the vendor error code,
+     * instead of the execution timer.
+     * It is always recorded synchronously, even with an {@link AsyncMeterRecorder}.
+     *
+     * @param executeFailureFamily Failure metric family of the statement type
+     * @param query SQL query
+     * @param timerContext Execution timer started by the matching {@code start...ExecuteTimer} method, may be null
+     * @param failure Exception thrown by the execution
+     */
+    public void recordExecuteFailure(MetricFamily executeFailureFamily, Query query, TimeObservation timerContext, Throwable failure) {
+        if (timerContext == null) {
+            return;
+        }
+        long duration = System.nanoTime() - timerContext.getStartTime();
+        FailureTimerId failureTimerId = (FailureTimerId) getMeter(executeFailureFamily, query);
+        if (failureTimerId == null) {
+            return;
+        }
+        String sqlStateClass = "none";
+        String errorCode = "none";
+        if (failure instanceof SQLException) {
+            SQLException sqlException = (SQLException) failure;
+            String sqlState = sqlException.getSQLState();
+            if (sqlState != null && sqlState.length() >= 2) {
+                sqlStateClass = sqlState.substring(0, 2);
+            }
+            errorCode = Integer.toString(sqlException.getErrorCode());
+        }
+        Timer failureTimer = Timer.builder(failureTimerId.name)
+                .tags(failureTimerId.tags)
+                .tags("outcome", getOutcome(failure), "sqlstate.class", sqlStateClass, "error.code", errorCode)
+                .register(meterRegistry);
+        addMeter(failureTimerId.limiterEntry, failureTimer);
+        failureTimer.record(duration, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Classify a failed execution
+     *
+     * @return timeout, rollback (deadlocks, serialization failures), connection, error for other SQL exceptions,
+     * or exception for non SQL exceptions
+     */
+    static String getOutcome(Throwable failure) {
+        if (!(failure instanceof SQLException)) {
+            return "exception";
+        }
+        String sqlState = ((SQLException) failure).getSQLState();
+        if (failure instanceof SQLTimeoutException || sqlState != null && (sqlState.startsWith("HYT") || sqlState.equals("57014"))) {
+            return "timeout";
+        }
+        if (failure instanceof SQLTransactionRollbackException || sqlState != null && sqlState.startsWith("40")) {
+            return "rollback";
+        }
+        if (failure instanceof SQLTransientConnectionException || failure instanceof SQLNonTransientConnectionException
+                || sqlState != null && sqlState.startsWith("08")) {
+            return "connection";
+        }
+        return "error";
     }
 
     private void ensureSqlId(Query query) {
         query.ensureSqlId(metricNamingStrategy);
     }
 
+    /**
+     * Get the name of a metric from the naming strategy
+     */
+    private String getMeterName(MetricFamily metricFamily, String sql, String sqlId) {
+        switch (metricFamily) {
+            case CONNECTION_GET:
+                return metricNamingStrategy.getConnectionGetTimer();
+            case CONNECTION_LIFE:
+                return metricNamingStrategy.getConnectionLifeTimer();
+            case STATEMENT_LIFE:
+                return metricNamingStrategy.getStatementLifeTimer();
+            case STATEMENT_EXECUTE:
+                return metricNamingStrategy.getStatementExecuteTimer(sql, sqlId);
+            case PREPARED_STATEMENT_LIFE:
+                return metricNamingStrategy.getPreparedStatementLifeTimer(sql, sqlId);
+            case PREPARED_STATEMENT_EXECUTE:
+                return metricNamingStrategy.getPreparedStatementExecuteTimer(sql, sqlId);
+            case CALLABLE_STATEMENT_LIFE:
+                return metricNamingStrategy.getCallableStatementLifeTimer(sql, sqlId);
+            case CALLABLE_STATEMENT_EXECUTE:
+                return metricNamingStrategy.getCallableStatementExecuteTimer(sql, sqlId);
+            case RESULT_SET_LIFE:
+                return metricNamingStrategy.getResultSetLifeTimer(sql, sqlId);
+            case RESULT_SET_ROWS:
+                return metricNamingStrategy.getResultSetRowMeter(sql, sqlId);
+            case STATEMENT_EXECUTE_FAILURE:
+                return metricNamingStrategy.getStatementExecuteFailureTimer(sql, sqlId);
+            case PREPARED_STATEMENT_EXECUTE_FAILURE:
+                return metricNamingStrategy.getPreparedStatementExecuteFailureTimer(sql, sqlId);
+            case CALLABLE_STATEMENT_EXECUTE_FAILURE:
+                return metricNamingStrategy.getCallableStatementExecuteFailureTimer(sql, sqlId);
+            default:
+                throw new IllegalArgumentException("Unknown metric " + metricFamily);
+        }
+    }
+
+    /**
+     * Get the meter of a metric, resolved once and then cached on the query,
+     * or on this helper for metrics not depending on the query
+     *
+     * @param query Query, null for metrics not depending on the query
+     * @return Timer, Counter, {@link FailureTimerId} or null when the metric is disabled
+     */
+    private Object getMeter(MetricFamily metricFamily, Query query) {
+        if (!enabledMetricFamilies.contains(metricFamily)) {
+            return null;
+        }
+        Object meter = query == null ? familyMeters.get(metricFamily.ordinal()) : query.getMeter(this, metricFamily);
+        if (meter != null && query != null && cardinalityLimiter != null) {
+            MeterCardinalityLimiter.Entry limiterEntry = query.getLimiterEntry(this);
+            if (limiterEntry != null) {
+                long now = System.nanoTime();
+                boolean valid = limiterEntry.touch(now);
+                // Known SQL Ids also evict idle ones, room left lets overflowing SQL Ids get their own meters
+                cardinalityLimiter.evictIdle(now);
+                if (!valid || cardinalityLimiter.isOverflowWithRoom(limiterEntry)) {
+                    query.resetMeters(this);
+                    meter = null;
+                }
+            }
+        }
+        if (meter == null) {
+            meter = createMeter(metricFamily, query);
+            if (query == null) {
+                familyMeters.set(metricFamily.ordinal(), meter);
+            } else {
+                query.setMeter(this, metricFamily, meter);
+            }
+        }
+        return meter == NO_METER ? null : meter;
+    }
+
+    private Object createMeter(MetricFamily metricFamily, Query query) {
+        String sql = null;
+        String sqlId = null;
+        MeterCardinalityLimiter.Entry limiterEntry = null;
+        if (query != null) {
+            ensureSqlId(query);
+            sql = query.getSql();
+            sqlId = query.getSqlId();
+            if (cardinalityLimiter != null) {
+                limiterEntry = query.getLimiterEntry(this);
+                if (limiterEntry == null) {
+                    limiterEntry = cardinalityLimiter.acquire(sqlId);
+                    query.setLimiterEntry(this, limiterEntry);
+                }
+                if (cardinalityLimiter.isOverflow(limiterEntry)) {
+                    sql = MeterCardinalityLimiter.OVERFLOW_SQL;
+                    sqlId = overflowSqlId;
+                }
+            }
+        }
+        String name = getMeterName(metricFamily, sql, sqlId);
+        if (name == null) {
+            return NO_METER;
+        }
+        Tags tags = metricNamingStrategy.getTags(metricFamily, sql, sqlId);
+        if (isExecuteFailure(metricFamily)) {
+            return new FailureTimerId(name, tags, limiterEntry);
+        }
+        if (weightedTimers != null && isExecute(metricFamily)) {
+            Tags weightedTags = tags == null ? Tags.empty() : tags;
+            // Histograms are large, only allocated for timers which are not registered yet
+            Meter.Id id = new Meter.Id(name, weightedTags, null, null, Meter.Type.TIMER);
+            WeightedTimer weightedTimer = weightedTimers.get(id);
+            if (weightedTimer == null) {
+                WeightedTimer newWeightedTimer = new WeightedTimer(percentiles != null);
+                weightedTimer = weightedTimers.putIfAbsent(id, newWeightedTimer);
+                weightedTimer = weightedTimer == null ? newWeightedTimer : weightedTimer;
+            }
+            FunctionTimer functionTimer = weightedTimer.register(name, weightedTags, meterRegistry);
+            addMeter(limiterEntry, functionTimer);
+            if (percentiles != null) {
+                for (Meter gauge : weightedTimer.registerPercentiles(name, weightedTags, percentiles, meterRegistry)) {
+                    addMeter(limiterEntry, gauge);
+                }
+            }
+            return weightedTimer;
+        }
+        Meter meter = metricFamily == MetricFamily.RESULT_SET_ROWS ? getCounter(name, tags) : getTimer(name, tags);
+        addMeter(limiterEntry, meter);
+        return meter;
+    }
+
+    private static boolean isExecute(MetricFamily metricFamily) {
+        return metricFamily == MetricFamily.STATEMENT_EXECUTE
+                || metricFamily == MetricFamily.PREPARED_STATEMENT_EXECUTE
+                || metricFamily == MetricFamily.CALLABLE_STATEMENT_EXECUTE;
+    }
+
+    private static boolean isExecuteFailure(MetricFamily metricFamily) {
+        return metricFamily == MetricFamily.STATEMENT_EXECUTE_FAILURE
+                || metricFamily == MetricFamily.PREPARED_STATEMENT_EXECUTE_FAILURE
+                || metricFamily == MetricFamily.CALLABLE_STATEMENT_EXECUTE_FAILURE;
+    }
+
+    private Timer getTimer(MetricFamily metricFamily, Query query) {
+        return (Timer) getMeter(metricFamily, query);
+    }
+
     /**
      * Start Timer when prepared statement is created
      *
      * @return Started timer context or null
      */
     public TimeObservation startPreparedStatementLifeTimer(Query query) {
-        ensureSqlId(query);
-        String name = metricNamingStrategy.getPreparedStatementLifeTimer(query.getSql(), query.getSqlId());
-        return startTimer(name);
+        return startTimer(getTimer(MetricFamily.PREPARED_STATEMENT_LIFE, query));
     }
 
     /**
@@ -111,16 +731,7 @@ class MetricHelper {
      * @return Started timer context or null
      */
     public TimeObservation startPreparedStatementExecuteTimer(Query query) {
-        ensureSqlId(query);
-        String name = metricNamingStrategy.getPreparedStatementExecuteTimer(query.getSql(), query.getSqlId());
-        return startTimer(name);
-    }
-
-    private String getSqlId(String sqlId, String sql) {
-        if (sqlId == null) {
-            sqlId = metricNamingStrategy.getSqlId(sql);
-        }
-        return sqlId;
+        return startExecuteTimer(MetricFamily.PREPARED_STATEMENT_EXECUTE, MetricFamily.PREPARED_STATEMENT_EXECUTE_FAILURE, query);
     }
 
     /**
@@ -129,9 +740,7 @@ class MetricHelper {
      * @return Started timer context or null
      */
     public TimeObservation startCallableStatementLifeTimer(Query query) {
-        ensureSqlId(query);
-        String name = metricNamingStrategy.getCallableStatementLifeTimer(query.getSql(), query.getSqlId());
-        return startTimer(name);
+        return startTimer(getTimer(MetricFamily.CALLABLE_STATEMENT_LIFE, query));
     }
 
     /**
@@ -140,9 +749,7 @@ class MetricHelper {
      * @return Started timer context or null
      */
     public TimeObservation startCallableStatementExecuteTimer(Query query) {
-        ensureSqlId(query);
-        String name = metricNamingStrategy.getCallableStatementExecuteTimer(query.getSql(), query.getSqlId());
-        return startTimer(name);
+        return startExecuteTimer(MetricFamily.CALLABLE_STATEMENT_EXECUTE, MetricFamily.CALLABLE_STATEMENT_EXECUTE_FAILURE, query);
     }
 
     /**
@@ -151,16 +758,47 @@ class MetricHelper {
      * @return Started timer context or null
      */
     public TimeObservation startResultSetLifeTimer(Query query) {
-        ensureSqlId(query);
-        String name = metricNamingStrategy.getResultSetLifeTimer(query.getSql(), query.getSqlId());
-        return startTimer(name);
+        return startTimer(getTimer(MetricFamily.RESULT_SET_LIFE, query));
     }
     /**
      * Increment when result set row is read
      */
     public void markResultSetRowMeter(Query query) {
-        ensureSqlId(query);
-        String name = metricNamingStrategy.getResultSetRowMeter(query.getSql(), query.getSqlId());
-        incCounter(name);
+        markResultSetRowMeter(query, 1L);
+    }
+
+    /**
+     * Increment when result set rows were read
+     *
+     * @param rows Number of rows read since previous call
+     */
+    public void markResultSetRowMeter(Query query, long rows) {
+        if (tableMetrics && query.getSql() != null) {
+            for (Meter tableCounter : getTableMeters(Query.TABLE_ROWS_SLOT, query)) {
+                incrementCounter((Counter) tableCounter, rows);
+            }
+        }
+        SamplingPolicy policy = samplingPolicy;
+        if (policy != null && enabledMetricFamilies.contains(MetricFamily.RESULT_SET_ROWS)) {
+            ensureSqlId(query);
+            int weight = policy.sample(MetricFamily.RESULT_SET_ROWS, query);
+            if (weight <= 0) {
+                return;
+            }
+            rows *= weight;
+        }
+        Counter counter = (Counter) getMeter(MetricFamily.RESULT_SET_ROWS, query);
+        if (counter == null) {
+            return;
+        }
+        incrementCounter(counter, rows);
+    }
+
+    private void incrementCounter(Counter counter, long count) {
+        if (asyncRecorder == null) {
+            counter.increment(count);
+        } else {
+            asyncRecorder.incrementCounter(counter, count);
+        }
     }
 }
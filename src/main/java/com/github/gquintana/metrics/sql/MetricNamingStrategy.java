@@ -20,11 +20,14 @@ package com.github.gquintana.metrics.sql;
  * #L%
  */
 
+import io.micrometer.core.instrument.Tags;
+
 import javax.sql.PooledConnection;
 import java.sql.*;
 
 /**
- * Strategy used to tell what should be timed and what should be the name of the timer
+ * Strategy used to tell what should be timed and what should be the name of the timer.
+ * Names are resolved once per query, and once for the metrics which don't depend on the query.
  */
 public interface MetricNamingStrategy {
     /**
@@ -107,4 +110,66 @@ public interface MetricNamingStrategy {
      * @return Timer name or null
      */
     String getResultSetRowMeter(String sql, String sqlId);
+
+    /**
+     * Get timer name for failed {@link Statement} executions,
+     * the timer is tagged with the outcome, the SQL state class and the vendor error code
+     * @param sql SQL Query
+     * @param sqlId SQL Id generated from query or null
+     * @return Timer name or null, by default the execution timer name suffixed by {@code .failure}
+     */
+    default String getStatementExecuteFailureTimer(String sql, String sqlId) {
+        String executeTimer = getStatementExecuteTimer(sql, sqlId);
+        return executeTimer == null ? null : executeTimer + ".failure";
+    }
+
+    /**
+     * Get timer name for failed {@link PreparedStatement} executions,
+     * the timer is tagged with the outcome, the SQL state class and the vendor error code
+     * @param sql SQL Query
+     * @param sqlId SQL Id generated from query or null
+     * @return Timer name or null, by default the execution timer name suffixed by {@code .failure}
+     */
+    default String getPreparedStatementExecuteFailureTimer(String sql, String sqlId) {
+        String executeTimer = getPreparedStatementExecuteTimer(sql, sqlId);
+        return executeTimer == null ? null : executeTimer + ".failure";
+    }
+
+    /**
+     * Get timer name for failed {@link CallableStatement} executions,
+     * the timer is tagged with the outcome, the SQL state class and the vendor error code
+     * @param sql SQL Query
+     * @param sqlId SQL Id generated from query or null
+     * @return Timer name or null, by default the execution timer name suffixed by {@code .failure}
+     */
+    default String getCallableStatementExecuteFailureTimer(String sql, String sqlId) {
+        String executeTimer = getCallableStatementExecuteTimer(sql, sqlId);
+        return executeTimer == null ? null : executeTimer + ".failure";
+    }
+
+    /**
+     * Get the tags of a metric, its name being given by the matching name getter.
+     * Dimensional strategies return a few constant names and describe the database, statement and query with tags,
+     * see {@link TaggedMetricNamingStrategy}.
+     * Called once per metric and query, results may be cached.
+     * @param metricFamily Metric family
+     * @param sql SQL Query, null for connection and statement life
+     * @param sqlId SQL Id generated from query, null for connection and statement life
+     * @return Tags, empty by default
+     */
+    default Tags getTags(MetricFamily metricFamily, String sql, String sqlId) {
+        return Tags.empty();
+    }
+
+    /**
+     * Tell whether a family of metrics may be produced.
+     * When a family is disabled, its metric name getter is not called, and the JDBC objects
+     * feeding only disabled families are not proxied at all.
+     * Should not change over time.
+     * @param metricFamily Metric family
+     * @return true by default
+     */
+    default boolean isEnabled(MetricFamily metricFamily) {
+        return true;
+    }
 }
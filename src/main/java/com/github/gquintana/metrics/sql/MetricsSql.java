@@ -26,6 +26,9 @@ import io.micrometer.core.instrument.MeterRegistry;
 
 import javax.sql.DataSource;
 import java.sql.*;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Metrics SQL initializing class
@@ -35,9 +38,27 @@ public class MetricsSql {
      * Builder of {@link JdbcProxyFactory}
      */
     public static class Builder {
+        /**
+         * Query cache size when table metrics are enabled without a query cache
+         */
+        static final int TABLE_METRICS_QUERY_CACHE_SIZE = 1024;
         private final MeterRegistry registry;
         private MetricNamingStrategy namingStrategy = new DefaultMetricNamingStrategy();
         private ProxyFactory proxyFactory = new ReflectProxyFactory();
+        private boolean warmUp;
+        private ClassLoader warmUpClassLoader;
+        private boolean vendorInterfaces;
+        private int queryCacheSize;
+        private int maxSqlIds;
+        private long meterIdleTimeoutMillis;
+        private SamplingPolicy samplingPolicy;
+        private int asyncBufferSize;
+        private boolean blockWhenFull;
+        private double[] percentiles;
+        private int namingCacheSize;
+        private boolean tableMetrics;
+        private String commentHintKey;
+        private final Map<String, String> registeredQueries = new LinkedHashMap<>();
         private JdbcProxyFactory jdbcProxyFactory;
 
         public Builder(MeterRegistry registry) {
@@ -75,6 +96,95 @@ public class MetricsSql {
             return withNamingStrategy(new StrictMetricNamingStrategy.Builder().withDatabaseName(databaseName).build());
         }
 
+        /**
+         * Select fingerprint naming strategy, SQL literals don't change metric names
+         *
+         * @param databaseName Database name for metric naming
+         * @return Current builder
+         */
+        public Builder withFingerprintNamingStrategy(String databaseName) {
+            return withNamingStrategy(new FingerprintMetricNamingStrategy(databaseName));
+        }
+
+        /**
+         * Select hashed naming strategy, SQL Ids are short hashes registered in given dictionary
+         *
+         * @param databaseName Database name for metric naming
+         * @param dictionary   Dictionary to translate SQL Ids back to SQL
+         * @return Current builder
+         */
+        public Builder withHashedNamingStrategy(String databaseName, SqlDictionary dictionary) {
+            return withNamingStrategy(new HashedMetricNamingStrategy(databaseName, dictionary));
+        }
+
+        /**
+         * Select tagged naming strategy
+         *
+         * @param databaseName Database name tag
+         * @return Current builder
+         */
+        public Builder withTaggedNamingStrategy(String databaseName) {
+            return withNamingStrategy(new TaggedMetricNamingStrategy(databaseName));
+        }
+
+        /**
+         * Also measure executions and read rows per operation (select, insert, update...) and table,
+         * in {@code jdbc.table.execute} timers and {@code jdbc.table.rows} counters.
+         * Queries are classified once per distinct SQL, which requires the query cache:
+         * it is enabled with {@value #TABLE_METRICS_QUERY_CACHE_SIZE} entries unless {@link #withQueryCache(int)} is used.
+         *
+         * @return Current builder
+         */
+        public Builder withTableMetrics() {
+            this.tableMetrics = true;
+            return this;
+        }
+
+        /**
+         * Take SQL Ids from the {@code q} hint in the leading comment of SQL queries,
+         * see {@link CommentHintMetricNamingStrategy}
+         *
+         * @return Current builder
+         */
+        public Builder withCommentHints() {
+            return withCommentHints("q");
+        }
+
+        /**
+         * Take SQL Ids from a hint in the leading comment of SQL queries,
+         * see {@link CommentHintMetricNamingStrategy}
+         *
+         * @param hintKey Hint key, {@code q} in <code>/* q=orders.byCustomer *&#47;</code>
+         * @return Current builder
+         */
+        public Builder withCommentHints(String hintKey) {
+            this.commentHintKey = hintKey;
+            return this;
+        }
+
+        /**
+         * Register a named prepared statement query, its meters are created when built
+         *
+         * @param sqlId SQL Id used in metric names
+         * @param sql SQL query, exactly as it will be passed to the JDBC driver
+         * @return Current builder
+         */
+        public Builder withQuery(String sqlId, String sql) {
+            this.registeredQueries.put(sql, sqlId);
+            return this;
+        }
+
+        /**
+         * Memoize the names given by the naming strategy, see {@link CachingMetricNamingStrategy}
+         *
+         * @param cacheSize Maximum number of SQL Ids whose metric names are cached
+         * @return Current builder
+         */
+        public Builder withNamingCache(int cacheSize) {
+            this.namingCacheSize = cacheSize;
+            return this;
+        }
+
         /**
          * Select factory of proxies
          *
@@ -86,6 +196,124 @@ public class MetricsSql {
             return this;
         }
 
+        /**
+         * Make proxies implement all the public interfaces of wrapped objects,
+         * so that vendor methods can be called on proxies without unwrapping
+         *
+         * @return Current builder
+         */
+        public Builder withVendorInterfaces() {
+            this.vendorInterfaces = true;
+            return this;
+        }
+
+        /**
+         * Cache queries by SQL, so that SQL Ids and meters are computed once per distinct SQL.
+         * Cache hits, misses and evictions are counted in the registry.
+         *
+         * @param cacheSize Maximum number of distinct SQL queries to cache
+         * @return Current builder
+         */
+        public Builder withQueryCache(int cacheSize) {
+            this.queryCacheSize = cacheSize;
+            return this;
+        }
+
+        /**
+         * Limit the number of distinct SQL Ids having their own meters,
+         * further SQL Ids share the meters of the {@code overflow} SQL
+         *
+         * @param maxSqlIds Maximum number of SQL Ids
+         * @return Current builder
+         */
+        public Builder withMaxSqlIds(int maxSqlIds) {
+            this.maxSqlIds = maxSqlIds;
+            return this;
+        }
+
+        /**
+         * Remove the meters of SQL Ids which were not used for some time
+         *
+         * @param idleTimeout Idle time
+         * @param timeUnit Unit of idle time
+         * @return Current builder
+         */
+        public Builder withMeterIdleTimeout(long idleTimeout, TimeUnit timeUnit) {
+            this.meterIdleTimeoutMillis = timeUnit.toMillis(idleTimeout);
+            return this;
+        }
+
+        /**
+         * Only measure some executions and read rows, see {@link SamplingPolicies}.
+         * The policy can be changed later with {@link JdbcProxyFactory#setSamplingPolicy(SamplingPolicy)}
+         *
+         * @param samplingPolicy Sampling policy
+         * @return Current builder
+         */
+        public Builder withSampling(SamplingPolicy samplingPolicy) {
+            this.samplingPolicy = samplingPolicy;
+            return this;
+        }
+
+        /**
+         * Record timers and counters on a background thread, application threads only publish events in a buffer
+         *
+         * @param bufferSize Number of events the buffer can hold
+         * @param blockWhenFull When the buffer is full, whether application threads wait, or events are dropped
+         * @return Current builder
+         */
+        public Builder withAsyncRecording(int bufferSize, boolean blockWhenFull) {
+            this.asyncBufferSize = bufferSize;
+            this.blockWhenFull = blockWhenFull;
+            return this;
+        }
+
+        /**
+         * Publish percentiles of execution timers, computed by a lock-free histogram instead of Micrometer's.
+         * Execution timers become {@code FunctionTimer}s, and percentiles are {@code name.percentile} gauges
+         *
+         * @param percentiles Percentiles between 0 and 1, for instance 0.5, 0.99
+         * @return Current builder
+         */
+        public Builder withPercentiles(double... percentiles) {
+            this.percentiles = percentiles;
+            return this;
+        }
+
+        /**
+         * Generate proxy classes on a background thread once built,
+         * see {@link JdbcProxyFactory#warmUp(ClassLoader)}
+         *
+         * @param classLoader Class loader of the JDBC driver
+         * @return Current builder
+         */
+        public Builder withWarmUp(ClassLoader classLoader) {
+            this.warmUp = true;
+            this.warmUpClassLoader = classLoader;
+            return this;
+        }
+
+        /**
+         * Generate proxy classes on a background thread, for the class loader of the first wrapped object.
+         * Proxy classes depend on the class loader of the JDBC driver,
+         * use {@link #withWarmUp(ClassLoader)} when {@link #build()} is called without wrapping.
+         *
+         * @return Current builder
+         */
+        public Builder withWarmUp() {
+            return withWarmUp(null);
+        }
+
+        /**
+         * Warm up for the class loader of the wrapped object, unless a class loader was given
+         */
+        private Builder warmUpFor(Object wrapped) {
+            if (warmUp && warmUpClassLoader == null && jdbcProxyFactory == null && wrapped != null) {
+                warmUpClassLoader = wrapped.getClass().getClassLoader();
+            }
+            return this;
+        }
+
         /**
          * Build {@link JdbcProxyFactory}
          *
@@ -94,7 +322,26 @@ public class MetricsSql {
 
         public JdbcProxyFactory build() {
             if (jdbcProxyFactory == null) {
-                jdbcProxyFactory = new JdbcProxyFactory(registry, namingStrategy, proxyFactory);
+                MetricNamingStrategy namingStrategy = this.namingStrategy;
+                if (commentHintKey != null) {
+                    namingStrategy = new CommentHintMetricNamingStrategy(namingStrategy, commentHintKey);
+                }
+                if (namingCacheSize > 0) {
+                    CachingMetricNamingStrategy cachingNamingStrategy = new CachingMetricNamingStrategy(namingStrategy, namingCacheSize);
+                    cachingNamingStrategy.bindTo(registry);
+                    namingStrategy = cachingNamingStrategy;
+                }
+                int queryCacheSize = tableMetrics && this.queryCacheSize <= 0 ? TABLE_METRICS_QUERY_CACHE_SIZE : this.queryCacheSize;
+                jdbcProxyFactory = new JdbcProxyFactory(new MetricHelper(registry, namingStrategy, queryCacheSize,
+                        maxSqlIds, meterIdleTimeoutMillis, samplingPolicy, asyncBufferSize, blockWhenFull, percentiles,
+                        tableMetrics),
+                        proxyFactory, vendorInterfaces);
+                for (Map.Entry<String, String> registeredQuery : registeredQueries.entrySet()) {
+                    jdbcProxyFactory.registerQuery(registeredQuery.getValue(), registeredQuery.getKey(), PreparedStatement.class);
+                }
+                if (warmUpClassLoader != null) {
+                    jdbcProxyFactory.warmUpInBackground(warmUpClassLoader);
+                }
             }
             return jdbcProxyFactory;
         }
@@ -106,7 +353,7 @@ public class MetricsSql {
          * @return Wrapped {@link DataSource}
          */
         public DataSource wrap(DataSource dataSource) {
-            return build().wrapDataSource(dataSource);
+            return warmUpFor(dataSource).build().wrapDataSource(dataSource);
         }
 
         /**
@@ -116,7 +363,7 @@ public class MetricsSql {
          * @return Wrapped {@link Connection}
          */
         public Connection wrap(Connection connection) {
-            return build().wrapConnection(connection);
+            return warmUpFor(connection).build().wrapConnection(connection);
         }
         /**
          * Wrap an existing {@link Statement} to add metrics
@@ -125,7 +372,7 @@ public class MetricsSql {
          * @return Wrapped {@link Statement}
          */
         public Statement wrap(Statement statement) {
-            return build().wrapStatement(statement);
+            return warmUpFor(statement).build().wrapStatement(statement);
         }
         /**
          * Wrap an existing {@link PreparedStatement}
@@ -135,7 +382,7 @@ public class MetricsSql {
          * @return Wrapped {@link PreparedStatement}
          */
         public PreparedStatement wrap(PreparedStatement statement, String sql) {
-            return build().wrapPreparedStatement(statement, sql);
+            return warmUpFor(statement).build().wrapPreparedStatement(statement, sql);
         }
         /**
          * Wrap an existing {@link CallableStatement} to add metrics
@@ -145,7 +392,7 @@ public class MetricsSql {
          * @return Wrapped {@link CallableStatement}
          */
         public CallableStatement wrap(CallableStatement statement, String sql) {
-            return build().wrapCallableStatement(statement, sql);
+            return warmUpFor(statement).build().wrapCallableStatement(statement, sql);
         }
         /**
          * Wrap an existing {@link java.sql.ResultSet} to add metrics
@@ -155,7 +402,7 @@ public class MetricsSql {
          * @return Wrapped {@link java.sql.ResultSet}
          */
         public ResultSet wrap(ResultSet statement, String sql) {
-            return build().wrapResultSet(statement, sql);
+            return warmUpFor(statement).build().wrapResultSet(statement, sql);
         }
     }
 
@@ -21,8 +21,6 @@ package com.github.gquintana.metrics.sql;
  */
 
 
-import com.github.gquintana.metrics.proxy.MethodInvocation;
-
 import java.sql.PreparedStatement;
 
 /**
@@ -30,24 +28,12 @@ import java.sql.PreparedStatement;
  */
 public class PreparedStatementProxyHandler extends AbstractStatementProxyHandler<PreparedStatement> {
 
-    private final Query query;
-
     public PreparedStatementProxyHandler(PreparedStatement delegate, JdbcProxyFactory proxyFactory, Query query, TimeObservation lifeTimerContext) {
-        super(delegate, PreparedStatement.class, proxyFactory, lifeTimerContext);
-        this.query = query;
+        super(delegate, PreparedStatement.class, proxyFactory, query, lifeTimerContext);
     }
 
-    protected final Object execute(MethodInvocation<PreparedStatement> methodInvocation) throws Throwable {
-        Query currentQuery;
-        if (methodInvocation.getArgCount() > 0) {
-            currentQuery = new Query(methodInvocation.getArgAt(0, String.class));
-        } else {
-            currentQuery = this.query;
-        }
-        TimeObservation timerContext = getTimerStarter().startPreparedStatementExecuteTimer(currentQuery);
-        Object result = methodInvocation.proceed();
-        stopTimer(timerContext);
-        return wrapResultSet(currentQuery, result);
+    @Override
+    protected TimeObservation startExecuteTimer(Query query) {
+        return getTimerStarter().startPreparedStatementExecuteTimer(query);
     }
-
 }
@@ -20,12 +20,37 @@ package com.github.gquintana.metrics.sql;
  * #L%
  */
 
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
 /**
  * SQL Query and SQL Id couple.
  */
 public class Query {
+    private static final int METRIC_FAMILY_COUNT = MetricFamily.values().length;
+    /**
+     * Meter slots after the metric families, for table meters
+     */
+    static final int TABLE_EXECUTE_SLOT = METRIC_FAMILY_COUNT;
+    static final int TABLE_ROWS_SLOT = METRIC_FAMILY_COUNT + 1;
+    private static final int METER_SLOT_COUNT = METRIC_FAMILY_COUNT + 2;
     private final String sql;
     private String sqlId;
+    /**
+     * Helper which resolved the meters
+     */
+    private MetricHelper meterOwner;
+    /**
+     * Resolved meters, by metric family
+     */
+    private volatile AtomicReferenceArray<Object> meters;
+    /**
+     * Cardinality limiter entry the meters belong to, null when cardinality is not limited
+     */
+    private volatile MeterCardinalityLimiter.Entry limiterEntry;
+    /**
+     * Operation and tables, extracted lazily
+     */
+    private volatile SqlClassification classification;
 
     public Query(String sql) {
         this.sql = sql;
@@ -49,4 +74,101 @@ public class Query {
             this.sqlId = metricNamingStrategy.getSqlId(sql);
         }
     }
+
+    /**
+     * @return Operation and tables of the SQL, extracted once
+     */
+    SqlClassification getClassification() {
+        SqlClassification sqlClassification = classification;
+        if (sqlClassification == null) {
+            sqlClassification = SqlClassification.classify(sql);
+            classification = sqlClassification;
+        }
+        return sqlClassification;
+    }
+
+    /**
+     * Get a meter resolved earlier by the same helper
+     *
+     * @param owner Helper resolving meters
+     * @param metricFamily Metric family
+     * @return Meter, or null when not resolved yet
+     */
+    Object getMeter(MetricHelper owner, MetricFamily metricFamily) {
+        return getMeter(owner, metricFamily.ordinal());
+    }
+
+    /**
+     * @param slot Metric family ordinal, {@link #TABLE_EXECUTE_SLOT} or {@link #TABLE_ROWS_SLOT}
+     */
+    Object getMeter(MetricHelper owner, int slot) {
+        final AtomicReferenceArray<Object> resolvedMeters = meters;
+        if (resolvedMeters == null || owner != meterOwner) {
+            return null;
+        }
+        return resolvedMeters.get(slot);
+    }
+
+    /**
+     * Store a resolved meter, meters of a query shared by several helpers are only kept for the first one.
+     * Queries may be shared by threads through the {@link QueryCache}.
+     *
+     * @param owner Helper resolving meters
+     * @param metricFamily Metric family
+     * @param meter Resolved meter
+     */
+    void setMeter(MetricHelper owner, MetricFamily metricFamily, Object meter) {
+        setMeter(owner, metricFamily.ordinal(), meter);
+    }
+
+    /**
+     * @param slot Metric family ordinal, {@link #TABLE_EXECUTE_SLOT} or {@link #TABLE_ROWS_SLOT}
+     */
+    void setMeter(MetricHelper owner, int slot, Object meter) {
+        AtomicReferenceArray<Object> resolvedMeters = getOwnedMeters(owner);
+        if (resolvedMeters != null) {
+            resolvedMeters.set(slot, meter);
+        }
+    }
+
+    /**
+     * Get meters of given helper, initializing them if needed
+     *
+     * @return Meters, or null when owned by another helper
+     */
+    private AtomicReferenceArray<Object> getOwnedMeters(MetricHelper owner) {
+        AtomicReferenceArray<Object> resolvedMeters = meters;
+        if (resolvedMeters == null) {
+            synchronized (this) {
+                if (meters == null) {
+                    meterOwner = owner;
+                    meters = new AtomicReferenceArray<>(METER_SLOT_COUNT);
+                }
+                resolvedMeters = meters;
+            }
+        }
+        return owner == meterOwner ? resolvedMeters : null;
+    }
+
+    MeterCardinalityLimiter.Entry getLimiterEntry(MetricHelper owner) {
+        return owner == meterOwner ? limiterEntry : null;
+    }
+
+    void setLimiterEntry(MetricHelper owner, MeterCardinalityLimiter.Entry limiterEntry) {
+        if (getOwnedMeters(owner) != null) {
+            this.limiterEntry = limiterEntry;
+        }
+    }
+
+    /**
+     * Forget the meters resolved by given helper, after they were evicted
+     */
+    void resetMeters(MetricHelper owner) {
+        synchronized (this) {
+            if (owner == meterOwner) {
+                meters = new AtomicReferenceArray<>(METER_SLOT_COUNT);
+                limiterEntry = null;
+            }
+        }
+    }
 }
@@ -0,0 +1,47 @@
+package com.github.gquintana.metrics.sql;
+
+/*
+ * #%L
+ * Metrics SQL
+ * %%
+ * Copyright (C) 2014 Open-Source
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+/**
+ * Bounded cache of {@link Query}s by SQL, so that SQL Ids and meters are resolved once per distinct SQL.
+ * See {@link ClockCache} for the eviction policy.
+ */
+final class QueryCache extends ClockCache<String, Query> {
+    /**
+     * @param capacity Maximum number of cached queries
+     */
+    QueryCache(int capacity) {
+        super(capacity);
+    }
+
+    /**
+     * Get the cached query for given SQL, create and cache it when missing
+     *
+     * @param sql SQL
+     * @return Query
+     */
+    Query get(String sql) {
+        if (sql == null) {
+            return new Query(null);
+        }
+        return get(sql, Query::new);
+    }
+}
@@ -20,9 +20,9 @@ package com.github.gquintana.metrics.sql;
  * #L%
  */
 
-import com.github.gquintana.metrics.proxy.MethodInvocation;
-
+import java.lang.reflect.Method;
 import java.sql.ResultSet;
+import java.sql.SQLException;
 
 /**
  * JDBC proxy handler for {@link ResultSet} and its subclasses.
@@ -30,7 +30,15 @@ import java.sql.ResultSet;
  * @param <T> Proxied ResultSet type
  */
 public class ResultSetProxyHandler<T extends ResultSet> extends JdbcProxyHandler<T> {
+    /**
+     * Number of rows after which the row count is published, for long-lived cursors
+     */
+    static final int ROWS_FLUSH_INTERVAL = 1024;
     private final Query query;
+    /**
+     * Rows read and not published yet
+     */
+    private int rows;
 
     public ResultSetProxyHandler(T delegate, Class<T> delegateType, JdbcProxyFactory proxyFactory, Query query, TimeObservation lifeTimerContext) {
         super(delegate, delegateType, proxyFactory, lifeTimerContext);
@@ -38,33 +46,62 @@ public class ResultSetProxyHandler<T extends ResultSet> extends JdbcProxyHandler
         this.query = query;
     }
 
-    private static final InvocationFilter THIS_INVOCATION_FILTER = new MethodNamesInvocationFilter("isWrapperFor", "unwrap", "close");
-
     @Override
-    protected Object invoke(MethodInvocation<T> delegatingMethodInvocation) throws Throwable {
-        final String methodName = delegatingMethodInvocation.getMethodName();
+    protected Object intercept(Object proxy, Method method, Object[] args) throws Throwable {
+        final JdbcMethod action = dispatchTable.getAction(method);
+        if (action == null) {
+            return proceed(method, args);
+        }
         Object result;
-        if (methodName.equals("isWrapperFor")) {
-            result = isWrapperFor(delegatingMethodInvocation);
-        } else if (methodName.equals("unwrap")) {
-            result = unwrap(delegatingMethodInvocation);
-        } else if (methodName.equals("close")) {
-            result = close(delegatingMethodInvocation);
-        } else if (methodName.equals("next")) {
-            result = next(delegatingMethodInvocation);
-        } else {
-            result = delegatingMethodInvocation.proceed();
+        switch (action) {
+            case IS_WRAPPER_FOR:
+                result = isWrapperFor(method, args);
+                break;
+            case UNWRAP:
+                result = unwrap(method, args);
+                break;
+            case CLOSE:
+                close();
+                result = null;
+                break;
+            case NEXT:
+                result = next();
+                break;
+            default:
+                result = proceed(method, args);
         }
         return result;
     }
 
-    private Object next(MethodInvocation<T> delegatingMethodInvocation) throws Throwable {
-        getTimerStarter().markResultSetRowMeter(query);
-        return delegatingMethodInvocation.proceed();
+    /**
+     * Typed hook for {@link ResultSet#next()}, rows are counted when there is one,
+     * and published on close or every {@link #ROWS_FLUSH_INTERVAL} rows
+     */
+    public boolean next() throws SQLException {
+        final boolean next = delegate.next();
+        if (next && ++rows >= ROWS_FLUSH_INTERVAL) {
+            flushRows();
+        }
+        return next;
+    }
+
+    /**
+     * Publish the rows read and not published yet,
+     * also called by the statement when it implicitly closes this result set
+     */
+    void flushRows() {
+        if (rows > 0) {
+            getTimerStarter().markResultSetRowMeter(query, rows);
+            rows = 0;
+        }
     }
 
-    @Override
-    public InvocationFilter getInvocationFilter() {
-        return THIS_INVOCATION_FILTER;
+    /**
+     * Typed hook for {@link ResultSet#close()}
+     */
+    public void close() throws SQLException {
+        flushRows();
+        stopLifeTimer();
+        delegate.close();
     }
 }
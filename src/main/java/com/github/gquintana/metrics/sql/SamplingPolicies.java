@@ -0,0 +1,203 @@
+package com.github.gquintana.metrics.sql;
+
+/*
+ * #%L
+ * Metrics SQL
+ * %%
+ * Copyright (C) 2014 Open-Source
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Factory of {@link SamplingPolicy}s
+ */
+public final class SamplingPolicies {
+    private static final int METRIC_FAMILY_COUNT = MetricFamily.values().length;
+    private static final SamplingPolicy ALWAYS = (metricFamily, query) -> 1;
+
+    private SamplingPolicies() {
+    }
+
+    /**
+     * Measure everything, useful to enable sampling later at runtime
+     */
+    public static SamplingPolicy always() {
+        return ALWAYS;
+    }
+
+    /**
+     * Measure exactly one in n executions, counted per thread and metric family
+     *
+     * @param n Sampling interval
+     */
+    public static SamplingPolicy everyNth(int n) {
+        return n <= 1 ? ALWAYS : new EveryNthSamplingPolicy(n);
+    }
+
+    /**
+     * Measure executions with a probability of 1/n
+     *
+     * @param n Sampling interval
+     */
+    public static SamplingPolicy random(int n) {
+        return n <= 1 ? ALWAYS : new RandomSamplingPolicy(n);
+    }
+
+    /**
+     * Measure one in n executions of each SQL Id,
+     * and all executions of SQL Ids whose last measured execution was slower than the threshold
+     *
+     * @param n Sampling interval
+     * @param slowThreshold Duration above which executions are slow
+     * @param timeUnit Unit of slow threshold
+     */
+    public static SamplingPolicy perSqlId(int n, long slowThreshold, TimeUnit timeUnit) {
+        return n <= 1 ? ALWAYS : new PerSqlIdSamplingPolicy(n, timeUnit.toNanos(slowThreshold));
+    }
+
+    /**
+     * Parse a policy from its text form: {@code always}, {@code every_nth:<n>}, {@code random:<n>}
+     * or {@code per_sql_id:<n>:<slow threshold in ms>}
+     *
+     * @throws IllegalArgumentException when the text is not understood
+     */
+    static SamplingPolicy parse(String text) {
+        String[] parts = text.split(":");
+        try {
+            switch (parts[0]) {
+                case "always":
+                    return always();
+                case "every_nth":
+                    return everyNth(Integer.parseInt(parts[1]));
+                case "random":
+                    return random(Integer.parseInt(parts[1]));
+                case "per_sql_id":
+                    return perSqlId(Integer.parseInt(parts[1]), Long.parseLong(parts[2]), TimeUnit.MILLISECONDS);
+                default:
+                    throw new IllegalArgumentException("Invalid sampling policy " + text);
+            }
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Invalid sampling policy " + text, e);
+        }
+    }
+
+    private static final class EveryNthSamplingPolicy implements SamplingPolicy {
+        private final int n;
+        /**
+         * Per thread counters avoid contention on the hottest statements
+         */
+        private final ThreadLocal<int[]> counters = ThreadLocal.withInitial(() -> new int[METRIC_FAMILY_COUNT]);
+
+        private EveryNthSamplingPolicy(int n) {
+            this.n = n;
+        }
+
+        @Override
+        public int sample(MetricFamily metricFamily, Query query) {
+            int[] threadCounters = counters.get();
+            int counter = threadCounters[metricFamily.ordinal()];
+            threadCounters[metricFamily.ordinal()] = counter + 1 == n ? 0 : counter + 1;
+            return counter == 0 ? n : 0;
+        }
+    }
+
+    private static final class RandomSamplingPolicy implements SamplingPolicy {
+        private final int n;
+
+        private RandomSamplingPolicy(int n) {
+            this.n = n;
+        }
+
+        @Override
+        public int sample(MetricFamily metricFamily, Query query) {
+            return ThreadLocalRandom.current().nextInt(n) == 0 ? n : 0;
+        }
+    }
+
+    private static final class PerSqlIdSamplingPolicy implements SamplingPolicy {
+        /**
+         * Number of SQL Id states, a SQL Id replaces the state of another one hashed to the same slot
+         */
+        private static final int STATE_COUNT = 1024;
+        private final int n;
+        private final long slowThresholdNanos;
+        private final AtomicReferenceArray<SqlIdState> states = new AtomicReferenceArray<>(STATE_COUNT);
+
+        /**
+         * Sampling state of a SQL Id, counters stay between 0 and n
+         */
+        private static final class SqlIdState {
+            private final String sqlId;
+            private final AtomicIntegerArray counters = new AtomicIntegerArray(METRIC_FAMILY_COUNT);
+            private volatile boolean slow;
+
+            private SqlIdState(String sqlId, int n, boolean replacing) {
+                this.sqlId = sqlId;
+                if (replacing) {
+                    // SQL Ids taking turns in a slot would be sampled on each turn otherwise
+                    for (int i = 0; i < METRIC_FAMILY_COUNT; i++) {
+                        counters.set(i, ThreadLocalRandom.current().nextInt(n));
+                    }
+                }
+            }
+        }
+
+        private PerSqlIdSamplingPolicy(int n, long slowThresholdNanos) {
+            this.n = n;
+            this.slowThresholdNanos = slowThresholdNanos;
+        }
+
+        private SqlIdState getState(Query query) {
+            String sqlId = query.getSqlId() == null ? "" : query.getSqlId();
+            int slot = (sqlId.hashCode() ^ (sqlId.hashCode() >>> 16)) & (STATE_COUNT - 1);
+            SqlIdState state = states.get(slot);
+            if (state == null || !state.sqlId.equals(sqlId)) {
+                state = new SqlIdState(sqlId, n, state != null);
+                states.set(slot, state);
+            }
+            return state;
+        }
+
+        @Override
+        public int sample(MetricFamily metricFamily, Query query) {
+            SqlIdState state = getState(query);
+            if (state.slow) {
+                return 1;
+            }
+            int index = metricFamily.ordinal();
+            int counter;
+            int nextCounter;
+            do {
+                counter = state.counters.get(index);
+                nextCounter = counter + 1 >= n ? 0 : counter + 1;
+            } while (!state.counters.compareAndSet(index, counter, nextCounter));
+            return counter == 0 ? n : 0;
+        }
+
+        @Override
+        public void onSampled(Query query, long durationNanos) {
+            boolean slow = durationNanos > slowThresholdNanos;
+            SqlIdState state = getState(query);
+            if (state.slow != slow) {
+                state.slow = slow;
+            }
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.github.gquintana.metrics.sql;
+
+/*
+ * #%L
+ * Metrics SQL
+ * %%
+ * Copyright (C) 2014 Open-Source
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+/**
+ * Tells which statement executions and result set row counts are measured.
+ * Unsampled executions are not timed, sampled ones are weighted so that published
+ * counts and total times estimate those of all executions.
+ * Failed executions are always recorded, whether they were sampled or not.
+ * See {@link SamplingPolicies} for implementations.
+ */
+public interface SamplingPolicy {
+    /**
+     * Decide whether an execution, or a batch of read rows, is measured
+     *
+     * @param metricFamily Statement execute metric family or {@link MetricFamily#RESULT_SET_ROWS}
+     * @param query Query, its SQL Id is set
+     * @return 0 when not sampled, otherwise the number of measures this one stands for
+     */
+    int sample(MetricFamily metricFamily, Query query);
+
+    /**
+     * Called with the duration of sampled executions, for policies adapting to it
+     *
+     * @param query Executed query
+     * @param durationNanos Execution duration in nanoseconds
+     */
+    default void onSampled(Query query, long durationNanos) {
+    }
+}
@@ -0,0 +1,210 @@
+package com.github.gquintana.metrics.sql;
+
+/*
+ * #%L
+ * Metrics SQL
+ * %%
+ * Copyright (C) 2014 Open-Source
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Operation (select, insert, update, delete, merge, call or other) and tables of a SQL query,
+ * extracted by a lightweight tokenizer, not a full SQL parser.
+ * Tables are looked for after {@code from}, {@code join}, {@code into}, {@code update} and {@code using},
+ * in the main query and sub-queries, comma separated table lists are supported,
+ * common table expressions are skipped.
+ * Internal helper class.
+ */
+final class SqlClassification {
+    static final String OTHER = "other";
+    private static final Set<String> OPERATIONS = new HashSet<>(Arrays.asList("select", "insert", "update", "delete", "merge", "call"));
+    /**
+     * Keywords ending a comma separated table list
+     */
+    private static final Set<String> CLAUSES = new HashSet<>(Arrays.asList("where", "group", "order", "having", "limit", "on",
+            "set", "values", "union", "intersect", "except", "window", "fetch", "offset", "for", "select", "returning",
+            "join", "inner", "left", "right", "full", "cross", "natural", "using", "when", "then"));
+    private final String operation;
+    private final List<String> tables;
+
+    private SqlClassification(String operation, List<String> tables) {
+        this.operation = operation;
+        this.tables = tables;
+    }
+
+    /**
+     * @return select, insert, update, delete, merge, call or other
+     */
+    String getOperation() {
+        return operation;
+    }
+
+    /**
+     * @return Lower cased table names, or procedure name for calls, in order of appearance, without duplicates
+     */
+    List<String> getTables() {
+        return tables;
+    }
+
+    /**
+     * Classify a SQL query
+     *
+     * @param sql SQL query, may be null
+     * @return Classification
+     */
+    static SqlClassification classify(String sql) {
+        if (sql == null) {
+            return new SqlClassification(OTHER, Collections.<String>emptyList());
+        }
+        List<String> tokens = tokenize(sql);
+        String operation = null;
+        List<String> tables = new ArrayList<>(2);
+        Set<String> commonTables = new HashSet<>();
+        // Whether each opened parenthesis contains a query
+        boolean[] queryDepths = new boolean[tokens.size() + 1];
+        queryDepths[0] = true;
+        int depth = 0;
+        boolean expectTable = false;
+        boolean tableList = false;
+        String previous = null;
+        for (int i = 0; i < tokens.size(); i++) {
+            String token = tokens.get(i);
+            String next = i + 1 < tokens.size() ? tokens.get(i + 1) : null;
+            if (token.equals("(")) {
+                depth++;
+                queryDepths[depth] = "select".equals(next) || "with".equals(next);
+                expectTable = false;
+                tableList = false;
+            } else if (token.equals(")")) {
+                depth = Math.max(0, depth - 1);
+                tableList = false;
+            } else if (token.equals(",")) {
+                expectTable = tableList;
+            } else if (!queryDepths[depth]) {
+                // Function arguments like extract(year from date)
+                expectTable = false;
+            } else if (expectTable && isIdentifier(token) && !CLAUSES.contains(token)) {
+                String table = token;
+                while (".".equals(next) && i + 2 < tokens.size()) {
+                    table = table + "." + tokens.get(i + 2);
+                    i += 2;
+                    next = i + 1 < tokens.size() ? tokens.get(i + 1) : null;
+                }
+                if (!commonTables.contains(table) && !tables.contains(table)) {
+                    tables.add(table);
+                }
+                expectTable = false;
+            } else if (operation == null && OPERATIONS.contains(token) && depth == 0) {
+                operation = token;
+                expectTable = token.equals("update") || token.equals("call");
+            } else if (("as".equals(next) && i + 2 < tokens.size() && tokens.get(i + 2).equals("("))
+                    && ("with".equals(previous) || "recursive".equals(previous) || ",".equals(previous))) {
+                // Common table expression
+                commonTables.add(token);
+            } else if (token.equals("from") || token.equals("into") || token.equals("using")) {
+                expectTable = true;
+                tableList = token.equals("from");
+            } else if (token.equals("join")) {
+                expectTable = true;
+                tableList = false;
+            } else if (token.equals("update") && !"for".equals(previous) && !"key".equals(previous) && !"then".equals(previous)) {
+                expectTable = true;
+                tableList = false;
+            } else if (CLAUSES.contains(token)) {
+                expectTable = false;
+                tableList = false;
+            }
+            previous = token;
+        }
+        return new SqlClassification(operation == null ? OTHER : operation, Collections.unmodifiableList(tables));
+    }
+
+    private static boolean isIdentifier(String token) {
+        return token.length() > 1 || Character.isLetter(token.charAt(0)) || token.charAt(0) == '_';
+    }
+
+    /**
+     * Split SQL into lower cased words, unquoted identifiers and punctuation,
+     * comments, literals and parameters are skipped
+     */
+    private static List<String> tokenize(String sql) {
+        List<String> tokens = new ArrayList<>();
+        final int length = sql.length();
+        int i = 0;
+        while (i < length) {
+            char c = sql.charAt(i);
+            if (Character.isWhitespace(c) || c == '{' || c == '}' || c == ';') {
+                i++;
+            } else if (c == '-' && i + 1 < length && sql.charAt(i + 1) == '-') {
+                int end = sql.indexOf('\n', i + 2);
+                i = end < 0 ? length : end + 1;
+            } else if (c == '/' && i + 1 < length && sql.charAt(i + 1) == '*') {
+                int end = sql.indexOf("*/", i + 2);
+                i = end < 0 ? length : end + 2;
+            } else if (c == '\'') {
+                i = skipQuoted(sql, i, '\'');
+                tokens.add("?");
+            } else if (c == '"' || c == '`' || c == '[') {
+                char quote = c == '[' ? ']' : c;
+                int end = skipQuoted(sql, i, quote);
+                tokens.add(sql.substring(i + 1, Math.max(i + 1, end - 1)));
+                i = end;
+            } else if (Character.isLetter(c) || c == '_') {
+                int start = i;
+                while (i < length && isIdentifierPart(sql.charAt(i))) {
+                    i++;
+                }
+                tokens.add(sql.substring(start, i).toLowerCase());
+            } else if (Character.isDigit(c)) {
+                while (i < length && (isIdentifierPart(sql.charAt(i)) || sql.charAt(i) == '.')) {
+                    i++;
+                }
+                tokens.add("?");
+            } else {
+                tokens.add(String.valueOf(c));
+                i++;
+            }
+        }
+        return tokens;
+    }
+
+    private static boolean isIdentifierPart(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '$' || c == '#';
+    }
+
+    private static int skipQuoted(String sql, int start, char quote) {
+        int i = start + 1;
+        while (i < sql.length()) {
+            if (sql.charAt(i) == quote) {
+                if (i + 1 < sql.length() && sql.charAt(i + 1) == quote) {
+                    i += 2;
+                } else {
+                    return i + 1;
+                }
+            } else {
+                i++;
+            }
+        }
+        return i;
+    }
+}
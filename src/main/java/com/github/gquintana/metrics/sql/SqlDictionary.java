@@ -0,0 +1,154 @@
+package com.github.gquintana.metrics.sql;
+
+/*
+ * #%L
+ * Metrics SQL
+ * %%
+ * Copyright (C) 2014 Open-Source
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Dictionary of hashed SQL Ids: maps each SQL Id to the normalized SQL it was computed from,
+ * so that compact metric names can be translated back to queries.
+ * The dictionary is bounded, the least used SQL Ids are evicted first.
+ */
+public class SqlDictionary {
+    /**
+     * Default maximum number of SQL Ids
+     */
+    public static final int DEFAULT_CAPACITY = 10000;
+    private final ClockCache<String, Entry> entries;
+
+    public SqlDictionary() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity Maximum number of SQL Ids
+     */
+    public SqlDictionary(int capacity) {
+        this.entries = new ClockCache<>(capacity);
+    }
+
+    /**
+     * Dictionary entry
+     */
+    public static final class Entry {
+        private final String sqlId;
+        private final String sql;
+        private final long firstSeen;
+
+        private Entry(String sqlId, String sql, long firstSeen) {
+            this.sqlId = sqlId;
+            this.sql = sql;
+            this.firstSeen = firstSeen;
+        }
+
+        public String getSqlId() {
+            return sqlId;
+        }
+
+        /**
+         * @return Normalized SQL
+         */
+        public String getSql() {
+            return sql;
+        }
+
+        /**
+         * @return Time in milliseconds since epoch when SQL was first seen
+         */
+        public long getFirstSeen() {
+            return firstSeen;
+        }
+    }
+
+    /**
+     * Register a SQL Id, only the first registration is kept until the SQL Id is evicted
+     *
+     * @param sqlId SQL Id
+     * @param sql   Normalized SQL
+     */
+    void register(String sqlId, String sql) {
+        entries.get(sqlId, id -> new Entry(id, sql, System.currentTimeMillis()));
+    }
+
+    /**
+     * @param sqlId SQL Id
+     * @return Normalized SQL, or null when unknown
+     */
+    public String getSql(String sqlId) {
+        Entry entry = entries.getIfPresent(sqlId);
+        return entry == null ? null : entry.getSql();
+    }
+
+    /**
+     * @return Entries sorted by first seen time
+     */
+    public List<Entry> getEntries() {
+        List<Entry> list = entries.values();
+        Collections.sort(list, new Comparator<Entry>() {
+            @Override
+            public int compare(Entry entry1, Entry entry2) {
+                return Long.compare(entry1.firstSeen, entry2.firstSeen);
+            }
+        });
+        return list;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Write entries, one per line: SQL Id, first seen time and normalized SQL separated by tabs
+     *
+     * @param writer Output
+     */
+    public void dump(Writer writer) throws IOException {
+        for (Entry entry : getEntries()) {
+            writer.write(entry.sqlId);
+            writer.write('\t');
+            writer.write(Long.toString(entry.firstSeen));
+            writer.write('\t');
+            writer.write(entry.sql);
+            writer.write('\n');
+        }
+        writer.flush();
+    }
+
+    /**
+     * Write entries to a file, replacing its content
+     *
+     * @param path Output file
+     * @see #dump(Writer)
+     */
+    public void dump(Path path) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            dump(writer);
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package com.github.gquintana.metrics.sql;
+
+/*
+ * #%L
+ * Metrics SQL
+ * %%
+ * Copyright (C) 2014 Open-Source
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+/**
+ * Normalizes SQL in a single pass, so that queries differing only by literals share a fingerprint:
+ * <ul>
+ *     <li>string and number literals, and bind parameters, are replaced by {@code ?}</li>
+ *     <li>lists of parameters are collapsed: {@code in (?, ?, ?)} becomes {@code in (?)},
+ *     and {@code values (?), (?)} becomes {@code values (?)}</li>
+ *     <li>comments are removed, whitespaces are squashed and unquoted text is lower cased</li>
+ *     <li>quoted identifiers ({@code "Name"}, {@code `name`}, {@code [name]}) are kept intact</li>
+ * </ul>
+ * Internal helper class.
+ */
+final class SqlFingerprinter {
+    private SqlFingerprinter() {
+    }
+
+    /**
+     * Compute the fingerprint of a SQL query
+     *
+     * @param sql SQL query
+     * @return Normalized SQL
+     */
+    static String fingerprint(String sql) {
+        final int length = sql.length();
+        final StringBuilder out = new StringBuilder(length);
+        boolean space = false;
+        int i = 0;
+        while (i < length) {
+            char c = sql.charAt(i);
+            if (c == ' ' || Character.isWhitespace(c)) {
+                space = true;
+                i++;
+            } else if (c == '-' && i + 1 < length && sql.charAt(i + 1) == '-') {
+                // Line comment
+                i = skipUntil(sql, i + 2, '\n');
+                space = true;
+            } else if (c == '/' && i + 1 < length && sql.charAt(i + 1) == '*') {
+                // Block comment
+                int end = sql.indexOf("*/", i + 2);
+                i = end < 0 ? length : end + 2;
+                space = true;
+            } else if (c == '\'') {
+                // String literal, with its N, E, X or B prefix
+                removeLiteralPrefix(out);
+                i = skipQuoted(sql, i, '\'');
+                space = appendPlaceholder(out, space);
+            } else if (c == '"' || c == '`') {
+                int end = skipQuoted(sql, i, c);
+                space = appendSpace(out, space);
+                out.append(sql, i, end);
+                i = end;
+            } else if (c == '[') {
+                int end = skipUntil(sql, i + 1, ']');
+                end = end < length ? end + 1 : end;
+                space = appendSpace(out, space);
+                out.append(sql, i, end);
+                i = end;
+            } else if (isDigit(c) || c == '.' && i + 1 < length && isDigit(sql.charAt(i + 1)) && !endsWithIdentifier(out, space)) {
+                // Number literal, including decimals, exponents and hexadecimals
+                i++;
+                while (i < length && (isIdentifierPart(sql.charAt(i)) || sql.charAt(i) == '.'
+                        || (sql.charAt(i) == '+' || sql.charAt(i) == '-') && isExponent(sql.charAt(i - 1)))) {
+                    i++;
+                }
+                space = appendPlaceholder(out, space);
+            } else if (c == '?' || c == '$' && i + 1 < length && isDigit(sql.charAt(i + 1))) {
+                // Bind parameter
+                i++;
+                while (i < length && isDigit(sql.charAt(i))) {
+                    i++;
+                }
+                space = appendPlaceholder(out, space);
+            } else if (isIdentifierPart(c)) {
+                space = appendSpace(out, space);
+                while (i < length && isIdentifierPart(sql.charAt(i))) {
+                    out.append(toLowerCase(sql.charAt(i)));
+                    i++;
+                }
+            } else {
+                space = appendSpace(out, space);
+                out.append(c);
+                i++;
+                if (c == ')') {
+                    collapseRows(out);
+                }
+            }
+        }
+        return out.toString();
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isExponent(char c) {
+        return c == 'e' || c == 'E';
+    }
+
+    private static boolean isIdentifierPart(char c) {
+        if (c < 0x80) {
+            return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || isDigit(c)
+                    || c == '_' || c == '$' || c == '@' || c == '#';
+        }
+        return Character.isLetterOrDigit(c);
+    }
+
+    private static char toLowerCase(char c) {
+        if (c < 0x80) {
+            return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+        }
+        return Character.toLowerCase(c);
+    }
+
+    private static boolean endsWithIdentifier(StringBuilder out, boolean space) {
+        return !space && out.length() > 0 && isIdentifierPart(out.charAt(out.length() - 1));
+    }
+
+    /**
+     * @return Index of given char, or length when not found
+     */
+    private static int skipUntil(String sql, int start, char c) {
+        int end = sql.indexOf(c, start);
+        return end < 0 ? sql.length() : end;
+    }
+
+    /**
+     * Skip a quoted section, doubled quotes are escaped quotes
+     *
+     * @return Index after closing quote
+     */
+    private static int skipQuoted(String sql, int start, char quote) {
+        int i = start + 1;
+        while (i < sql.length()) {
+            if (sql.charAt(i) == quote) {
+                if (i + 1 < sql.length() && sql.charAt(i + 1) == quote) {
+                    i += 2;
+                } else {
+                    return i + 1;
+                }
+            } else {
+                i++;
+            }
+        }
+        return i;
+    }
+
+    /**
+     * @return false, the pending space was consumed
+     */
+    private static boolean appendSpace(StringBuilder out, boolean space) {
+        if (space && out.length() > 0) {
+            out.append(' ');
+        }
+        return false;
+    }
+
+    /**
+     * Append a {@code ?}, unless it continues a list of parameters: {@code (?, ?} becomes {@code (?}
+     */
+    private static boolean appendPlaceholder(StringBuilder out, boolean space) {
+        int length = out.length();
+        if (length >= 3 && out.charAt(length - 1) == ',' && out.charAt(length - 2) == '?') {
+            char beforeList = out.charAt(length - 3);
+            if (beforeList == '(' || beforeList == ' ' && length >= 4 && out.charAt(length - 4) == '(') {
+                out.setLength(length - 1);
+                return false;
+            }
+        }
+        appendSpace(out, space);
+        out.append('?');
+        return false;
+    }
+
+    /**
+     * Collapse rows of parameters: {@code (?), (?)} becomes {@code (?)}
+     */
+    private static void collapseRows(StringBuilder out) {
+        int length = out.length();
+        if (endsWith(out, "(?), (?)")) {
+            out.setLength(length - 5);
+        } else if (endsWith(out, "(?),(?)")) {
+            out.setLength(length - 4);
+        }
+    }
+
+    private static boolean endsWith(StringBuilder out, String suffix) {
+        int start = out.length() - suffix.length();
+        if (start < 0) {
+            return false;
+        }
+        for (int i = 0; i < suffix.length(); i++) {
+            if (out.charAt(start + i) != suffix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Remove the N, E, X or B prefix of a string literal, when it was appended as an identifier
+     */
+    private static void removeLiteralPrefix(StringBuilder out) {
+        int length = out.length();
+        if (length == 0) {
+            return;
+        }
+        char prefix = out.charAt(length - 1);
+        if ((prefix == 'n' || prefix == 'e' || prefix == 'x' || prefix == 'b')
+                && (length == 1 || !isIdentifierPart(out.charAt(length - 2)))) {
+            out.setLength(length - 1);
+        }
+    }
+}
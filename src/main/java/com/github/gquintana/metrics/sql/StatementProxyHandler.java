@@ -21,8 +21,6 @@ package com.github.gquintana.metrics.sql;
  */
 
 
-import com.github.gquintana.metrics.proxy.MethodInvocation;
-
 import java.sql.Statement;
 
 /**
@@ -31,22 +29,11 @@ import java.sql.Statement;
 public class StatementProxyHandler extends AbstractStatementProxyHandler<Statement> {
 
     public StatementProxyHandler(Statement delegate, JdbcProxyFactory proxyFactory, TimeObservation lifeTimerContext) {
-        super(delegate, Statement.class, proxyFactory, lifeTimerContext);
+        super(delegate, Statement.class, proxyFactory, null, lifeTimerContext);
     }
 
     @Override
-    protected Object execute(MethodInvocation<Statement> methodInvocation) throws Throwable {
-        Object result;
-        if (methodInvocation.getArgCount() > 0) {
-            Query query = new Query(methodInvocation.getArgAt(0, String.class));
-            TimeObservation timerContext = getTimerStarter().startStatementExecuteTimer(query);
-            result = methodInvocation.proceed();
-            stopTimer(timerContext);
-            result = wrapResultSet(query, result);
-        } else {
-            result = methodInvocation.proceed();
-        }
-        return result;
+    protected TimeObservation startExecuteTimer(Query query) {
+        return getTimerStarter().startStatementExecuteTimer(query);
     }
-
 }
@@ -0,0 +1,181 @@
+package com.github.gquintana.metrics.sql;
+
+/*
+ * #%L
+ * Metrics SQL
+ * %%
+ * Copyright (C) 2014 Open-Source
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import io.micrometer.core.instrument.Tags;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Dimensional implementation of {@link MetricNamingStrategy}:
+ * metric names are constant, the database, the statement kind and the SQL are tags.
+ * For instance, prepared statement executions are timed by {@code jdbc.statement.execute}
+ * tagged with {@code database}, {@code kind=prepared} and {@code sql}.
+ * The SQL tag is a 64-bit hash of the SQL fingerprint, like {@link HashedMetricNamingStrategy},
+ * so that tag values stay short and statements differing only by their literals share their meters.
+ * Tags are cached per SQL Id, the cache is bounded.
+ */
+public class TaggedMetricNamingStrategy extends DefaultMetricNamingStrategy {
+    private static final String NO_SQL = "none";
+    /**
+     * Maximum number of SQL Ids whose tags are cached
+     */
+    static final int TAGS_CACHE_SIZE = 1024;
+    private final String databaseName;
+    /**
+     * Tags by SQL Id, then metric family
+     */
+    private final ClockCache<String, AtomicReferenceArray<Tags>> tagsCache = new ClockCache<>(TAGS_CACHE_SIZE);
+
+    public TaggedMetricNamingStrategy() {
+        this(null);
+    }
+
+    /**
+     * @param databaseName Database name, tagged as {@code database}
+     */
+    public TaggedMetricNamingStrategy(String databaseName) {
+        super(databaseName);
+        this.databaseName = databaseName == null || databaseName.isEmpty() ? "default" : databaseName;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @return Hash of the SQL fingerprint
+     */
+    @Override
+    public String getSqlId(String sql) {
+        return HashedMetricNamingStrategy.hash(SqlFingerprinter.fingerprint(sql));
+    }
+
+    @Override
+    public String getConnectionGetTimer() {
+        return "jdbc.connection.get";
+    }
+
+    @Override
+    public String getConnectionLifeTimer() {
+        return "jdbc.connection.life";
+    }
+
+    @Override
+    public String getStatementLifeTimer() {
+        return "jdbc.statement.life";
+    }
+
+    @Override
+    public String getStatementExecuteTimer(String sql, String sqlId) {
+        return "jdbc.statement.execute";
+    }
+
+    @Override
+    public String getPreparedStatementLifeTimer(String sql, String sqlId) {
+        return "jdbc.statement.life";
+    }
+
+    @Override
+    public String getPreparedStatementExecuteTimer(String sql, String sqlId) {
+        return "jdbc.statement.execute";
+    }
+
+    @Override
+    public String getCallableStatementLifeTimer(String sql, String sqlId) {
+        return "jdbc.statement.life";
+    }
+
+    @Override
+    public String getCallableStatementExecuteTimer(String sql, String sqlId) {
+        return "jdbc.statement.execute";
+    }
+
+    @Override
+    public String getResultSetLifeTimer(String sql, String sqlId) {
+        return "jdbc.resultset.life";
+    }
+
+    @Override
+    public String getResultSetRowMeter(String sql, String sqlId) {
+        return "jdbc.resultset.rows";
+    }
+
+    /**
+     * {@inheritDoc}
+     * Tags are {@code database}, and for statements {@code kind} (statement, prepared or callable) and {@code sql},
+     * and for result sets {@code sql}.
+     */
+    @Override
+    public Tags getTags(MetricFamily metricFamily, String sql, String sqlId) {
+        final String sqlTag = sqlId == null ? NO_SQL : sqlId;
+        AtomicReferenceArray<Tags> familyTags = tagsCache.get(sqlTag, id -> new AtomicReferenceArray<>(MetricFamily.values().length));
+        Tags tags = familyTags.get(metricFamily.ordinal());
+        if (tags == null) {
+            tags = createTags(metricFamily, sqlTag);
+            familyTags.set(metricFamily.ordinal(), tags);
+        }
+        return tags;
+    }
+
+    int getTagsCacheSize() {
+        return tagsCache.size();
+    }
+
+    private Tags createTags(MetricFamily metricFamily, String sqlTag) {
+        switch (metricFamily) {
+            case CONNECTION_GET:
+            case CONNECTION_LIFE:
+                return Tags.of("database", databaseName);
+            case STATEMENT_LIFE:
+            case STATEMENT_EXECUTE:
+            case STATEMENT_EXECUTE_FAILURE:
+                return Tags.of("database", databaseName, "kind", "statement", "sql", sqlTag);
+            case PREPARED_STATEMENT_LIFE:
+            case PREPARED_STATEMENT_EXECUTE:
+            case PREPARED_STATEMENT_EXECUTE_FAILURE:
+                return Tags.of("database", databaseName, "kind", "prepared", "sql", sqlTag);
+            case CALLABLE_STATEMENT_LIFE:
+            case CALLABLE_STATEMENT_EXECUTE:
+            case CALLABLE_STATEMENT_EXECUTE_FAILURE:
+                return Tags.of("database", databaseName, "kind", "callable", "sql", sqlTag);
+            default:
+                return Tags.of("database", databaseName, "sql", sqlTag);
+        }
+    }
+
+    /**
+     * Start a builder
+     *
+     * @return Builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Builder of {@link TaggedMetricNamingStrategy}
+     */
+    public static class Builder extends DefaultMetricNamingStrategy.Builder<TaggedMetricNamingStrategy.Builder> {
+        @Override
+        public TaggedMetricNamingStrategy build() {
+            return new TaggedMetricNamingStrategy(databaseName);
+        }
+    }
+}
@@ -9,14 +9,41 @@ public class TimeObservation implements Closeable {
 
     private final Timer timer;
     private final long startTime;
+    /**
+     * Background recorder, null to record synchronously
+     */
+    private final AsyncMeterRecorder recorder;
 
     public TimeObservation(Timer timer, long startTime) {
+        this(timer, startTime, null);
+    }
+
+    TimeObservation(Timer timer, long startTime, AsyncMeterRecorder recorder) {
         this.timer = timer;
         this.startTime = startTime;
+        this.recorder = recorder;
+    }
+
+    /**
+     * @return Start time in nanoseconds
+     */
+    public long getStartTime() {
+        return startTime;
     }
 
+    /**
+     * Record the time elapsed since start, does nothing when there is no timer
+     */
     @Override
     public void close() {
-        timer.record(System.nanoTime() - startTime, TimeUnit.NANOSECONDS);
+        if (timer == null) {
+            return;
+        }
+        long duration = System.nanoTime() - startTime;
+        if (recorder == null) {
+            timer.record(duration, TimeUnit.NANOSECONDS);
+        } else {
+            recorder.recordTimer(timer, duration);
+        }
     }
 }
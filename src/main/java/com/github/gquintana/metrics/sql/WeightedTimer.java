@@ -0,0 +1,110 @@
+package com.github.gquintana.metrics.sql;
+
+/*
+ * #%L
+ * Metrics SQL
+ * %%
+ * Copyright (C) 2014 Open-Source
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Timer of executions where each measure is weighted by the number of executions it stands for,
+ * when sampling, and published as a {@link FunctionTimer}.
+ * Durations may be kept in a {@link LogLinearHistogram} to publish percentiles.
+ * Internal helper class.
+ */
+final class WeightedTimer {
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalTime = new LongAdder();
+    /**
+     * Histogram of recent durations, null when percentiles are not published
+     */
+    private final LogLinearHistogram histogram;
+
+    /**
+     * @param histogram Whether durations are kept in a histogram
+     */
+    WeightedTimer(boolean histogram) {
+        this.histogram = histogram ? new LogLinearHistogram() : null;
+    }
+
+    /**
+     * @param duration Duration in nanoseconds
+     * @param weight Number of executions this one stands for
+     */
+    void record(long duration, int weight) {
+        count.add(weight);
+        totalTime.add(duration * weight);
+        if (histogram != null) {
+            histogram.record(duration, weight);
+        }
+    }
+
+    long count() {
+        return count.sum();
+    }
+
+    double totalTime() {
+        return totalTime.sum();
+    }
+
+    /**
+     * @param percentile Ratio between 0 and 1
+     * @return Duration in seconds
+     */
+    double percentile(double percentile) {
+        return histogram == null ? Double.NaN : histogram.getValueAtPercentile(percentile) / 1e9;
+    }
+
+    /**
+     * Publish this timer in the registry
+     *
+     * @return Registered timer, it may read another {@link WeightedTimer} already registered with the same name and tags
+     */
+    FunctionTimer register(String name, Tags tags, MeterRegistry meterRegistry) {
+        return FunctionTimer.builder(name, this, WeightedTimer::count, WeightedTimer::totalTime, TimeUnit.NANOSECONDS)
+                .tags(tags)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Publish percentiles in the registry, as gauges named like Micrometer's: {@code name.percentile} tagged with {@code phi}
+     *
+     * @return Registered gauges
+     */
+    List<Meter> registerPercentiles(String name, Tags tags, double[] percentiles, MeterRegistry meterRegistry) {
+        List<Meter> gauges = new ArrayList<>(percentiles.length);
+        for (double percentile : percentiles) {
+            gauges.add(Gauge.builder(name + ".percentile", this, weightedTimer -> weightedTimer.percentile(percentile))
+                    .tags(tags)
+                    .tag("phi", Double.toString(percentile))
+                    .baseUnit("seconds")
+                    .register(meterRegistry));
+        }
+        return gauges;
+    }
+}
@@ -0,0 +1,86 @@
+package com.github.gquintana.metrics.proxy;
+
+/*
+ * #%L
+ * Metrics SQL
+ * %%
+ * Copyright (C) 2014 Open-Source
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.junit.Test;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class FilteringReflectProxyFactoryTest {
+    private static class WorkProxyHandler extends ProxyHandler<Dummy> {
+        private static final InvocationFilter WORK_INVOCATION_FILTER = new MethodNamesInvocationFilter("work");
+        private final List<String> methodNames = new ArrayList<>();
+
+        public WorkProxyHandler(Dummy delegate) {
+            super(delegate);
+        }
+
+        @Override
+        protected Object intercept(Object proxy, Method method, Object[] args) throws Throwable {
+            methodNames.add(method.getName());
+            return proceed(method, args);
+        }
+
+        @Override
+        public InvocationFilter getInvocationFilter() {
+            return WORK_INVOCATION_FILTER;
+        }
+    }
+
+    private final FilteringReflectProxyFactory proxyFactory = new FilteringReflectProxyFactory();
+    private final WorkProxyHandler proxyHandler = new WorkProxyHandler(new DummyImpl());
+    private final Dummy dummy = proxyFactory.newProxy(proxyHandler, new ProxyClass(Dummy.class.getClassLoader(), Dummy.class));
+
+    @Test
+    public void testIntercepted() {
+        // Act
+        String result = dummy.work("input");
+        // Assert
+        assertEquals("[input]", result);
+        assertEquals(1, proxyHandler.methodNames.size());
+    }
+
+    @Test
+    public void testDirect() {
+        try {
+            // Act
+            dummy.fail("error");
+            fail("RuntimeException expected");
+        } catch (RuntimeException e) {
+            // Assert
+            assertEquals("error", e.getMessage());
+            assertTrue(proxyHandler.methodNames.isEmpty());
+        }
+        dummy.toString();
+        assertTrue(proxyHandler.methodNames.isEmpty());
+    }
+
+    @Test
+    public void testSingleHandler() {
+        // Assert
+        assertSame(proxyHandler, Proxy.getInvocationHandler(dummy));
+    }
+}
@@ -0,0 +1,77 @@
+package com.github.gquintana.metrics.proxy;
+
+/*
+ * #%L
+ * Metrics SQL
+ * %%
+ * Copyright (C) 2014 Open-Source
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.junit.Test;
+
+import java.lang.reflect.Method;
+import java.sql.Statement;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class MethodDispatchTableTest {
+    private enum Action {
+        EXECUTE_SQL,
+        CLOSE
+    }
+
+    private final AtomicInteger classifyCount = new AtomicInteger();
+
+    private final MethodDispatchTable<Action> dispatchTable = new MethodDispatchTable<Action>() {
+        @Override
+        protected Action classify(Method method) {
+            classifyCount.incrementAndGet();
+            if (method.getName().equals("execute") && method.getParameterTypes()[0].equals(String.class)) {
+                return Action.EXECUTE_SQL;
+            } else if (method.getName().equals("close") && hasParameterTypes(method)) {
+                return Action.CLOSE;
+            }
+            return null;
+        }
+    };
+
+    @Test
+    public void testGetAction() throws Exception {
+        assertEquals(Action.EXECUTE_SQL, dispatchTable.getAction(Statement.class.getMethod("execute", String.class)));
+        assertEquals(Action.EXECUTE_SQL, dispatchTable.getAction(Statement.class.getMethod("execute", String.class, int.class)));
+        assertEquals(Action.EXECUTE_SQL, dispatchTable.getAction(Statement.class.getMethod("execute", String.class, String[].class)));
+        assertEquals(Action.CLOSE, dispatchTable.getAction(Statement.class.getMethod("close")));
+        assertNull(dispatchTable.getAction(Statement.class.getMethod("getFetchSize")));
+    }
+
+    @Test
+    public void testClassifyOnce() throws Exception {
+        Method close = Statement.class.getMethod("close");
+        Method getFetchSize = Statement.class.getMethod("getFetchSize");
+        for (int i = 0; i < 3; i++) {
+            assertEquals(Action.CLOSE, dispatchTable.getAction(close));
+            assertNull(dispatchTable.getAction(getFetchSize));
+        }
+        assertEquals(2, classifyCount.get());
+    }
+
+    @Test
+    public void testIsIntercepted() throws Exception {
+        assertTrue(dispatchTable.isIntercepted(Statement.class.getMethod("close")));
+        assertFalse(dispatchTable.isIntercepted(Statement.class.getMethod("getFetchSize")));
+    }
+}
@@ -0,0 +1,119 @@
+package com.github.gquintana.metrics.proxy;
+
+/*
+ * #%L
+ * Metrics SQL
+ * %%
+ * Copyright (C) 2014 Open-Source
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares method handle based dispatch, used by {@link MethodInvocation#proceed()},
+ * with the former {@link Method#invoke(Object, Object...)} based dispatch.
+ * Run with {@code mvn test-compile} then the main method using the test classpath.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MethodInvocationBenchmark {
+    /**
+     * Invocation handler using {@link Method#invoke(Object, Object...)}
+     */
+    private static class MethodInvokeHandler implements InvocationHandler {
+        private final Object delegate;
+
+        private MethodInvokeHandler(Object delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            try {
+                return method.invoke(delegate, args);
+            } catch (InvocationTargetException e) {
+                throw e.getTargetException();
+            }
+        }
+    }
+
+    /**
+     * Invocation handler using {@link MethodHandleCache}
+     */
+    private static class MethodHandleHandler implements InvocationHandler {
+        private final Object delegate;
+
+        private MethodHandleHandler(Object delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            return MethodHandleCache.getInvoker(method).invokeExact(delegate, args);
+        }
+    }
+
+    private Dummy direct;
+    private Dummy methodInvoke;
+    private Dummy methodHandle;
+    private Dummy proxyHandler;
+    private String input = "input";
+
+    @Setup
+    public void setUp() {
+        direct = new DummyImpl();
+        methodInvoke = (Dummy) Proxy.newProxyInstance(Dummy.class.getClassLoader(), new Class<?>[]{Dummy.class}, new MethodInvokeHandler(direct));
+        methodHandle = (Dummy) Proxy.newProxyInstance(Dummy.class.getClassLoader(), new Class<?>[]{Dummy.class}, new MethodHandleHandler(direct));
+        proxyHandler = new ReflectProxyFactory().newProxy(new ProxyHandler<Dummy>(direct), new ProxyClass(Dummy.class.getClassLoader(), Dummy.class));
+    }
+
+    @Benchmark
+    public String direct() {
+        return direct.work(input);
+    }
+
+    @Benchmark
+    public String methodInvoke() {
+        return methodInvoke.work(input);
+    }
+
+    @Benchmark
+    public String methodHandle() {
+        return methodHandle.work(input);
+    }
+
+    @Benchmark
+    public String reflectProxyFactory() {
+        return proxyHandler.work(input);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(MethodInvocationBenchmark.class.getSimpleName()).build()).run();
+    }
+}
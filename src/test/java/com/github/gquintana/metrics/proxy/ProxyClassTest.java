@@ -0,0 +1,114 @@
+package com.github.gquintana.metrics.proxy;
+
+/*
+ * #%L
+ * Metrics SQL
+ * %%
+ * Copyright (C) 2014 Open-Source
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test {@link ProxyClass#ofAllInterfaces(Class, Class)}
+ */
+public class ProxyClassTest {
+    public interface Named {
+        CharSequence getName();
+    }
+
+    public interface Comparing {
+        Comparable<String> getName();
+    }
+
+    public interface Vendor {
+        String getName();
+
+        void vendorMethod();
+    }
+
+    private static class Impl implements Dummy, Vendor, Named, Comparing {
+        @Override
+        public String work(String input) {
+            return input;
+        }
+
+        @Override
+        public void fail(String message) {
+        }
+
+        @Override
+        public String getName() {
+            return "impl";
+        }
+
+        @Override
+        public void vendorMethod() {
+        }
+    }
+
+    private static class NamedImpl extends DummyImpl implements Named, Comparing {
+        @Override
+        public String getName() {
+            return "named";
+        }
+    }
+
+    private static class SubImpl extends Impl implements Runnable {
+        @Override
+        public void run() {
+        }
+    }
+
+    @Test
+    public void testOfAllInterfaces() {
+        // Act
+        ProxyClass proxyClass = ProxyClass.ofAllInterfaces(SubImpl.class, Dummy.class);
+        // Assert
+        List<Class<?>> interfaces = Arrays.asList(proxyClass.getInterfaces());
+        assertEquals(Dummy.class, interfaces.get(0));
+        assertTrue(interfaces.contains(Vendor.class));
+        assertTrue(interfaces.contains(Runnable.class));
+        assertSame(SubImpl.class.getClassLoader(), proxyClass.getClassLoader());
+    }
+
+    @Test
+    public void testOfAllInterfacesCovariant() {
+        // Act
+        ProxyClass proxyClass = ProxyClass.ofAllInterfaces(Impl.class, Dummy.class);
+        // Assert: String getName() is more specific than the other ones
+        List<Class<?>> interfaces = Arrays.asList(proxyClass.getInterfaces());
+        assertTrue(interfaces.containsAll(Arrays.asList(Vendor.class, Named.class, Comparing.class)));
+        Object proxy = new ReflectProxyFactory().newProxy(new ProxyHandler<>(new Impl()), proxyClass);
+        assertEquals("impl", ((Named) proxy).getName());
+    }
+
+    @Test
+    public void testOfAllInterfacesSkipsIncompatible() {
+        // Act
+        ProxyClass proxyClass = ProxyClass.ofAllInterfaces(NamedImpl.class, Dummy.class);
+        // Assert: neither CharSequence getName() nor Comparable getName() is more specific
+        List<Class<?>> interfaces = Arrays.asList(proxyClass.getInterfaces());
+        assertEquals(Arrays.asList(Dummy.class, Named.class), interfaces);
+        Object proxy = new ReflectProxyFactory().newProxy(new ProxyHandler<>(new NamedImpl()), proxyClass);
+        assertEquals("named", ((Named) proxy).getName());
+    }
+}
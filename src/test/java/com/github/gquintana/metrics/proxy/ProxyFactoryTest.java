@@ -25,11 +25,13 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.Parameterized;
 
+import java.lang.reflect.UndeclaredThrowableException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.fail;
 
 @RunWith(Parameterized.class)
@@ -52,6 +54,9 @@ public class ProxyFactoryTest {
 		@Override
 		protected Object invoke(MethodInvocation<Dummy> delegatingMethodInvocation) throws Throwable {
 			methodInvocations.add(delegatingMethodInvocation);
+			if ("checked".equals(delegatingMethodInvocation.getArgAt(0))) {
+				throw new Exception("checked");
+			}
 			return super.invoke(delegatingMethodInvocation);
 		}
 	}
@@ -68,6 +73,8 @@ public class ProxyFactoryTest {
 				.add(new ReflectProxyFactory())
 				.add(new CGLibProxyFactory())
 				.add(new CachingProxyFactory())
+				.add(new GeneratedProxyFactory())
+				.add(new FilteringReflectProxyFactory())
 				.build();
 	}
 
@@ -77,6 +84,7 @@ public class ProxyFactoryTest {
 		String result = dummy.work("input");
 		// Assert
 		assertEquals(1, dummyProxyHandler.getMethodInvocations().size());
+		assertSame(dummy, dummyProxyHandler.getMethodInvocations().get(0).getProxy());
 		assertEquals("[input]", result);
 	}
 
@@ -93,4 +101,16 @@ public class ProxyFactoryTest {
 		}
 	}
 
+	@Test
+	public void testUndeclaredException() {
+		try {
+			// Act
+			dummy.work("checked");
+			fail("UndeclaredThrowableException expected");
+		} catch (UndeclaredThrowableException e) {
+			// Assert
+			assertEquals("checked", e.getUndeclaredThrowable().getMessage());
+		}
+	}
+
 }
\ No newline at end of file
@@ -0,0 +1,130 @@
+package com.github.gquintana.metrics.sql;
+
+/*
+ * #%L
+ * Metrics SQL
+ * %%
+ * Copyright (C) 2014 Open-Source
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.github.gquintana.metrics.proxy.CachingProxyFactory;
+import com.github.gquintana.metrics.proxy.GeneratedProxyFactory;
+import com.github.gquintana.metrics.proxy.ProxyFactory;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.sql.DataSource;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Check the interception path does not allocate on methods which are only delegated,
+ * and wrapping does not allocate much more than the handler and the proxy
+ */
+public class AllocationTest {
+    private static final int CALLS = 100000;
+    private com.sun.management.ThreadMXBean threadMXBean;
+    private DataSource rawDataSource;
+    private Connection connection;
+    private Statement statement;
+    private ResultSet rawResultSet;
+    private ResultSet resultSet;
+
+    @Before
+    public void setUp() throws SQLException {
+        java.lang.management.ThreadMXBean mxBean = ManagementFactory.getThreadMXBean();
+        assumeTrue(mxBean instanceof com.sun.management.ThreadMXBean);
+        threadMXBean = (com.sun.management.ThreadMXBean) mxBean;
+        assumeTrue(threadMXBean.isThreadAllocatedMemorySupported());
+        threadMXBean.setThreadAllocatedMemoryEnabled(true);
+        rawDataSource = H2DbUtil.createDataSource();
+        connection = rawDataSource.getConnection();
+        H2DbUtil.initTable(connection);
+        statement = connection.createStatement();
+        rawResultSet = statement.executeQuery("select * from METRICS_TEST");
+        resultSet = new JdbcProxyFactory(new SimpleMeterRegistry()).wrapResultSet(rawResultSet, "select * from METRICS_TEST");
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        H2DbUtil.close(resultSet, statement);
+        H2DbUtil.dropTable(connection);
+        H2DbUtil.close(connection, rawDataSource);
+    }
+
+    private long allocatedBytes(ResultSet resultSet) throws SQLException {
+        long threadId = Thread.currentThread().getId();
+        long start = threadMXBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < CALLS; i++) {
+            resultSet.isClosed();
+            resultSet.getRow();
+        }
+        return threadMXBean.getThreadAllocatedBytes(threadId) - start;
+    }
+
+    @Test
+    public void testDelegatedMethods() throws SQLException {
+        assertTrue(Proxy.isProxyClass(resultSet.getClass()));
+        // Warm up
+        for (int i = 0; i < 5; i++) {
+            allocatedBytes(rawResultSet);
+            allocatedBytes(resultSet);
+        }
+        // Act
+        long rawBytes = Long.MAX_VALUE;
+        long proxyBytes = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            rawBytes = Math.min(rawBytes, allocatedBytes(rawResultSet));
+            proxyBytes = Math.min(proxyBytes, allocatedBytes(resultSet));
+        }
+        // Assert: a MethodInvocation per call would be over 16 bytes per call
+        long extraBytesPerCall = (proxyBytes - rawBytes) / (2L * CALLS);
+        assertTrue("Extra bytes per call " + extraBytesPerCall, extraBytesPerCall < 4L);
+    }
+
+    private long wrapAllocatedBytes(ProxyFactory proxyFactory) {
+        JdbcProxyFactory jdbcProxyFactory = new JdbcProxyFactory(new SimpleMeterRegistry(), new DefaultMetricNamingStrategy(), proxyFactory);
+        Query query = new Query("select * from METRICS_TEST");
+        long threadId = Thread.currentThread().getId();
+        long minBytes = Long.MAX_VALUE;
+        for (int i = 0; i < 10; i++) {
+            long start = threadMXBean.getThreadAllocatedBytes(threadId);
+            for (int j = 0; j < CALLS; j++) {
+                jdbcProxyFactory.wrapResultSet(rawResultSet, query, null);
+            }
+            minBytes = Math.min(minBytes, threadMXBean.getThreadAllocatedBytes(threadId) - start);
+        }
+        return minBytes / CALLS;
+    }
+
+    @Test
+    public void testWrap() {
+        // Handler (about 40 bytes) and proxy (about 24 bytes)
+        long cachingBytes = wrapAllocatedBytes(new CachingProxyFactory());
+        assertTrue("Caching proxy bytes per wrap " + cachingBytes, cachingBytes <= 80L);
+        long generatedBytes = wrapAllocatedBytes(new GeneratedProxyFactory());
+        assertTrue("Generated proxy bytes per wrap " + generatedBytes, generatedBytes <= 80L);
+    }
+}
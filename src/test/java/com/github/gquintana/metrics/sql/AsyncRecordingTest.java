@@ -0,0 +1,149 @@
+package com.github.gquintana.metrics.sql;
+
+/*
+ * #%L
+ * Metrics SQL
+ * %%
+ * Copyright (C) 2014 Open-Source
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test {@link AsyncMeterRecorder} through {@link MetricsSql.Builder#withAsyncRecording(int, boolean)}
+ */
+public class AsyncRecordingTest {
+    private MeterRegistry meterRegistry;
+    private DataSource rawDataSource;
+
+    @Before
+    public void setUp() throws SQLException {
+        meterRegistry = new SimpleMeterRegistry();
+        rawDataSource = H2DbUtil.createDataSource();
+        try (Connection connection = rawDataSource.getConnection()) {
+            H2DbUtil.initTable(connection);
+        }
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        try (Connection connection = rawDataSource.getConnection()) {
+            H2DbUtil.dropTable(connection);
+        }
+        H2DbUtil.close(rawDataSource);
+    }
+
+    @Test
+    public void testRecording() throws SQLException {
+        // Given
+        JdbcProxyFactory proxyFactory = MetricsSql.forRegistry(meterRegistry)
+                .withAsyncRecording(1024, false)
+                .build();
+        // When
+        try (Connection connection = proxyFactory.wrapConnection(rawDataSource.getConnection());
+             Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("select * from METRICS_TEST")) {
+            while (resultSet.next()) {
+                resultSet.getString("TEXT");
+            }
+        }
+        proxyFactory.getMetricHelper().getAsyncRecorder().drain();
+        // Then
+        assertEquals(1L, meterRegistry.get("java.sql.Connection").timer().count());
+        assertEquals(1L, meterRegistry.get("java.sql.Statement.[select * from metrics_test].exec").timer().count());
+        assertEquals(1L, meterRegistry.get("java.sql.ResultSet.[select * from metrics_test]").timer().count());
+        assertEquals(10.0, meterRegistry.get("java.sql.ResultSet.[select * from metrics_test].rows").counter().count(), 0.1);
+        assertEquals(0.0, meterRegistry.get("metrics.sql.recorder.dropped").functionCounter().count(), 0.1);
+    }
+
+    @Test
+    public void testClose() {
+        // Given
+        AsyncMeterRecorder recorder = new AsyncMeterRecorder(meterRegistry, 16, false);
+        Counter counter = meterRegistry.counter("test.counter");
+        // When
+        recorder.close();
+        recorder.incrementCounter(counter, 1L);
+        // Then: recorded synchronously, state meters removed
+        assertEquals(1.0, counter.count(), 0.1);
+        assertNull(meterRegistry.find("metrics.sql.recorder.pending").gauge());
+        AsyncMeterRecorder newRecorder = new AsyncMeterRecorder(meterRegistry, 16, false);
+        synchronized (newRecorder) {
+            newRecorder.incrementCounter(counter, 1L);
+            assertEquals(1.0, meterRegistry.get("metrics.sql.recorder.pending").gauge().value(), 0.1);
+        }
+        newRecorder.close();
+    }
+
+    @Test
+    public void testDropWhenFull() {
+        // Given
+        AsyncMeterRecorder recorder = new AsyncMeterRecorder(meterRegistry, 2, false);
+        Counter counter = meterRegistry.counter("test.counter");
+        // When: consumer is kept from draining
+        synchronized (recorder) {
+            for (int i = 0; i < 3; i++) {
+                recorder.incrementCounter(counter, 1L);
+            }
+            assertEquals(2, recorder.size());
+        }
+        recorder.drain();
+        // Then
+        assertEquals(2.0, counter.count(), 0.1);
+        assertEquals(1L, recorder.getDroppedCount());
+        assertEquals(0, recorder.size());
+    }
+
+    @Test
+    public void testBlockWhenFull() throws Exception {
+        // Given
+        AsyncMeterRecorder recorder = new AsyncMeterRecorder(meterRegistry, 2, true);
+        Counter counter = meterRegistry.counter("test.counter");
+        Thread producer = new Thread(() -> {
+            for (int i = 0; i < 3; i++) {
+                recorder.incrementCounter(counter, 1L);
+            }
+        });
+        // When: consumer is kept from draining
+        synchronized (recorder) {
+            producer.start();
+            while (recorder.getBlockedCount() == 0L) {
+                Thread.sleep(1L);
+            }
+            assertTrue(producer.isAlive());
+        }
+        producer.join(5000L);
+        recorder.drain();
+        // Then
+        assertFalse(producer.isAlive());
+        assertEquals(3.0, counter.count(), 0.1);
+        assertEquals(1L, recorder.getBlockedCount());
+        assertEquals(0L, recorder.getDroppedCount());
+    }
+}
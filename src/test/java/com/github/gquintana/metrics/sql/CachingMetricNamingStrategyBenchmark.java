@@ -0,0 +1,113 @@
+package com.github.gquintana.metrics.sql;
+
+/*
+ * #%L
+ * Metrics SQL
+ * %%
+ * Copyright (C) 2014 Open-Source
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Compares a naming strategy filtering queries with a regular expression,
+ * with and without the {@link CachingMetricNamingStrategy} decorator.
+ * Run with {@code mvn test-compile} then the main method using the test classpath.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CachingMetricNamingStrategyBenchmark {
+    /**
+     * Only meters queries on some tables
+     */
+    private static class RegexFilteringMetricNamingStrategy extends FilteringMetricNamingStrategy {
+        private final Pattern pattern = Pattern.compile(".*\\b(from|into|update)\\s+(orders|order_lines|customers)\\b.*");
+
+        private boolean isMetered(String sql) {
+            return pattern.matcher(sql).matches();
+        }
+
+        @Override
+        public String getPreparedStatementExecuteTimer(String sql, String sqlId) {
+            return isMetered(sql) ? super.getPreparedStatementExecuteTimer(sql, sqlId) : null;
+        }
+
+        @Override
+        public String getResultSetLifeTimer(String sql, String sqlId) {
+            return isMetered(sql) ? super.getResultSetLifeTimer(sql, sqlId) : null;
+        }
+
+        @Override
+        public String getResultSetRowMeter(String sql, String sqlId) {
+            return isMetered(sql) ? super.getResultSetRowMeter(sql, sqlId) : null;
+        }
+    }
+
+    private static final String[] SQLS = {
+            "select o.id, o.amount, o.status from orders o where o.customer_id = ?",
+            "select l.id, l.product_id, l.quantity from order_lines l where l.order_id = ?",
+            "select u.id, u.email, u.first_name, u.last_name from users u where u.email = ? and u.status = ?",
+            "update customers set last_order_at = ? where id = ?",
+            "insert into audit_log (id, entity, entity_id, action, payload, created_at) values (?, ?, ?, ?, ?, ?)"
+    };
+    private MetricNamingStrategy regexStrategy;
+    private MetricNamingStrategy cachingStrategy;
+    private String[] sqlIds;
+
+    @Setup
+    public void setUp() {
+        regexStrategy = new RegexFilteringMetricNamingStrategy();
+        cachingStrategy = new CachingMetricNamingStrategy(new RegexFilteringMetricNamingStrategy(), 100);
+        sqlIds = new String[SQLS.length];
+        for (int i = 0; i < SQLS.length; i++) {
+            sqlIds[i] = regexStrategy.getSqlId(SQLS[i]);
+        }
+    }
+
+    private void getNames(MetricNamingStrategy strategy, Blackhole blackhole) {
+        for (int i = 0; i < SQLS.length; i++) {
+            blackhole.consume(strategy.getSqlId(SQLS[i]));
+            blackhole.consume(strategy.getPreparedStatementExecuteTimer(SQLS[i], sqlIds[i]));
+            blackhole.consume(strategy.getResultSetLifeTimer(SQLS[i], sqlIds[i]));
+            blackhole.consume(strategy.getResultSetRowMeter(SQLS[i], sqlIds[i]));
+        }
+    }
+
+    @Benchmark
+    public void regexStrategy(Blackhole blackhole) {
+        getNames(regexStrategy, blackhole);
+    }
+
+    @Benchmark
+    public void cachingRegexStrategy(Blackhole blackhole) {
+        getNames(cachingStrategy, blackhole);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(CachingMetricNamingStrategyBenchmark.class.getSimpleName()).build()).run();
+    }
+}
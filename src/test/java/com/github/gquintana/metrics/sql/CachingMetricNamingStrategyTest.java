@@ -0,0 +1,140 @@
+package com.github.gquintana.metrics.sql;
+
+/*
+ * #%L
+ * Metrics SQL
+ * %%
+ * Copyright (C) 2014 Open-Source
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class CachingMetricNamingStrategyTest {
+    /**
+     * Filtering strategy counting calls
+     */
+    private static class CountingMetricNamingStrategy extends FilteringMetricNamingStrategy {
+        private final AtomicInteger calls = new AtomicInteger();
+
+        @Override
+        public String getSqlId(String sql) {
+            calls.incrementAndGet();
+            return super.getSqlId(sql);
+        }
+
+        @Override
+        public String getPreparedStatementLifeTimer(String sql, String sqlId) {
+            calls.incrementAndGet();
+            return super.getPreparedStatementLifeTimer(sql, sqlId);
+        }
+
+        @Override
+        public String getPreparedStatementExecuteTimer(String sql, String sqlId) {
+            calls.incrementAndGet();
+            return super.getPreparedStatementExecuteTimer(sql, sqlId);
+        }
+
+        @Override
+        public String getConnectionGetTimer() {
+            calls.incrementAndGet();
+            return super.getConnectionGetTimer();
+        }
+
+        @Override
+        public Tags getTags(MetricFamily metricFamily, String sql, String sqlId) {
+            calls.incrementAndGet();
+            return Tags.of("family", metricFamily.name());
+        }
+    }
+
+    @Test
+    public void testMemoize() {
+        // Given
+        CountingMetricNamingStrategy delegate = new CountingMetricNamingStrategy();
+        CachingMetricNamingStrategy namingStrategy = new CachingMetricNamingStrategy(delegate, 10);
+        // When
+        for (int i = 0; i < 3; i++) {
+            String sqlId = namingStrategy.getSqlId("select * from METRICS_TEST");
+            assertEquals("[select * from metrics_test]", sqlId);
+            assertNull(namingStrategy.getPreparedStatementLifeTimer("select * from METRICS_TEST", sqlId));
+            assertEquals("java.sql.PreparedStatement.[select * from metrics_test].exec",
+                    namingStrategy.getPreparedStatementExecuteTimer("select * from METRICS_TEST", sqlId));
+            assertEquals("java.sql.Connection.get", namingStrategy.getConnectionGetTimer());
+            assertEquals(Tags.of("family", "PREPARED_STATEMENT_EXECUTE"),
+                    namingStrategy.getTags(MetricFamily.PREPARED_STATEMENT_EXECUTE, "select * from METRICS_TEST", sqlId));
+        }
+        // Then
+        assertEquals(5, delegate.calls.get());
+        assertFalse(namingStrategy.isEnabled(MetricFamily.PREPARED_STATEMENT_LIFE));
+        assertTrue(namingStrategy.isEnabled(MetricFamily.PREPARED_STATEMENT_EXECUTE));
+    }
+
+    @Test
+    public void testEviction() {
+        // Given
+        CountingMetricNamingStrategy delegate = new CountingMetricNamingStrategy();
+        CachingMetricNamingStrategy namingStrategy = new CachingMetricNamingStrategy(delegate, 2);
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        namingStrategy.bindTo(meterRegistry);
+        // When
+        for (int i = 0; i < 5; i++) {
+            String sql = "select * from METRICS_TEST where ID=" + i;
+            namingStrategy.getStatementExecuteTimer(sql, namingStrategy.getSqlId(sql));
+        }
+        // Then
+        assertEquals(6L, namingStrategy.getEvictionCount());
+        assertEquals(3.0, meterRegistry.get("metrics.sql.naming.cache.evictions").tag("cache", "names").functionCounter().count(), 0.1);
+        assertEquals(2.0, meterRegistry.get("metrics.sql.naming.cache.size").tag("cache", "sql_ids").gauge().value(), 0.1);
+        assertEquals(5.0, meterRegistry.get("metrics.sql.naming.cache").tags("cache", "sql_ids", "result", "miss").functionCounter().count(), 0.1);
+    }
+
+    @Test
+    public void testDataSource() throws SQLException {
+        // Given
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        CountingMetricNamingStrategy delegate = new CountingMetricNamingStrategy();
+        DataSource rawDataSource = H2DbUtil.createDataSource();
+        DataSource dataSource = MetricsSql.forRegistry(meterRegistry)
+                .withNamingStrategy(delegate)
+                .withNamingCache(100)
+                .wrap(rawDataSource);
+        try (Connection connection = dataSource.getConnection()) {
+            H2DbUtil.initTable(connection);
+            // When
+            for (int i = 0; i < 3; i++) {
+                try (PreparedStatement statement = connection.prepareStatement("select * from METRICS_TEST where ID=?")) {
+                    statement.setInt(1, i);
+                    statement.executeQuery().close();
+                }
+            }
+            H2DbUtil.dropTable(connection);
+        }
+        // Then
+        assertEquals(3L, meterRegistry.get("java.sql.PreparedStatement.[select * from metrics_test where id=?].exec").timer().count());
+        assertTrue(meterRegistry.get("metrics.sql.naming.cache").tags("cache", "names", "result", "hit").functionCounter().count() > 0.0);
+    }
+}
@@ -0,0 +1,123 @@
+package com.github.gquintana.metrics.sql;
+
+/*
+ * #%L
+ * Metrics SQL
+ * %%
+ * Copyright (C) 2014 Open-Source
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.*;
+
+public class CommentHintMetricNamingStrategyTest {
+    private final CommentHintMetricNamingStrategy namingStrategy = new CommentHintMetricNamingStrategy(new DefaultMetricNamingStrategy());
+
+    @Test
+    public void testHint() {
+        assertThat(namingStrategy.getHint("/* q=orders.byCustomer */ select * from orders where customer_id = ?"), equalTo("orders.byCustomer"));
+        assertThat(namingStrategy.getHint("  /*q=orders.byCustomer*/select 1"), equalTo("orders.byCustomer"));
+        assertThat(namingStrategy.getHint("/* app=shop, q=orders_by-customer, user=42 */ select 1"), equalTo("orders_by-customer"));
+        assertThat(namingStrategy.getHint("/* seq=1 */ select 1"), nullValue());
+        assertThat(namingStrategy.getHint("/* no hint */ select 1 /* q=late */"), nullValue());
+        assertThat(namingStrategy.getHint("select 1 /* q=trailing */"), nullValue());
+        assertThat(namingStrategy.getHint("/* q= */ select 1"), nullValue());
+        assertThat(namingStrategy.getHint("/* unterminated q=orders"), nullValue());
+        assertThat(namingStrategy.getHint(null), nullValue());
+    }
+
+    @Test
+    public void testHintPrefixIsBounded() {
+        StringBuilder sql = new StringBuilder("/*");
+        for (int i = 0; i < CommentHintMetricNamingStrategy.MAX_HINT_PREFIX; i++) {
+            sql.append(' ');
+        }
+        sql.append("q=orders.byCustomer */ select 1");
+        assertThat(namingStrategy.getHint(sql.toString()), nullValue());
+    }
+
+    @Test
+    public void testSqlId() {
+        assertThat(namingStrategy.getSqlId("/* q=orders.byCustomer */ select * from ORDERS"), equalTo("orders.byCustomer"));
+        assertThat(namingStrategy.getSqlId("select * from ORDERS"), equalTo("[select * from orders]"));
+        assertThat(namingStrategy.getPreparedStatementExecuteTimer("/* q=orders.byCustomer */ select * from ORDERS", "orders.byCustomer"),
+                equalTo("java.sql.PreparedStatement.orders.byCustomer.exec"));
+        assertThat(new CommentHintMetricNamingStrategy(new DefaultMetricNamingStrategy(), "name").getSqlId("/* name=x */ select 1"),
+                equalTo("x"));
+    }
+
+    @Test
+    public void testDataSource() throws SQLException {
+        // Given
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        DataSource rawDataSource = H2DbUtil.createDataSource();
+        DataSource dataSource = MetricsSql.forRegistry(meterRegistry)
+                .withCommentHints()
+                .wrap(rawDataSource);
+        try (Connection connection = dataSource.getConnection()) {
+            H2DbUtil.initTable(connection);
+            // When
+            try (PreparedStatement statement = connection.prepareStatement("/* q=metrics.byId */ select * from METRICS_TEST where ID=?")) {
+                statement.setInt(1, 1);
+                statement.executeQuery().close();
+            }
+            H2DbUtil.dropTable(connection);
+        }
+        // Then
+        assertEquals(1L, meterRegistry.get("java.sql.PreparedStatement.metrics.byId.exec").timer().count());
+    }
+
+    @Test
+    public void testRegisteredQuery() throws SQLException {
+        // Given
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        DataSource rawDataSource = H2DbUtil.createDataSource();
+        MetricsSql.Builder builder = MetricsSql.forRegistry(meterRegistry)
+                .withQuery("metrics.byId", "select * from METRICS_TEST where ID=?");
+        DataSource dataSource = builder.wrap(rawDataSource);
+        builder.build().registerQuery("metrics.count", "select count(*) from METRICS_TEST", Statement.class);
+        // Then meters exist before execution
+        assertEquals(0L, meterRegistry.get("java.sql.PreparedStatement.metrics.byId.exec").timer().count());
+        assertEquals(0L, meterRegistry.get("java.sql.PreparedStatement.metrics.byId").timer().count());
+        assertEquals(0L, meterRegistry.get("java.sql.Statement.metrics.count.exec").timer().count());
+        // When
+        try (Connection connection = dataSource.getConnection()) {
+            H2DbUtil.initTable(connection);
+            try (PreparedStatement statement = connection.prepareStatement("select * from METRICS_TEST where ID=?")) {
+                statement.setInt(1, 1);
+                statement.executeQuery().close();
+            }
+            try (Statement statement = connection.createStatement()) {
+                statement.executeQuery("select count(*) from METRICS_TEST").close();
+            }
+            H2DbUtil.dropTable(connection);
+        }
+        // Then
+        assertEquals(1L, meterRegistry.get("java.sql.PreparedStatement.metrics.byId.exec").timer().count());
+        assertEquals(1L, meterRegistry.get("java.sql.Statement.metrics.count.exec").timer().count());
+    }
+}
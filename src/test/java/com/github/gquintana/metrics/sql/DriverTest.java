@@ -21,7 +21,9 @@ package com.github.gquintana.metrics.sql;
  */
 
 import com.codahale.metrics.Timer;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
 import io.micrometer.core.instrument.dropwizard.DropwizardMeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -95,4 +97,82 @@ public class DriverTest {
         assertTrue(getClass().getName().startsWith(prefix));
         assertTrue(driver.jdbcCompliant());
     }
+
+    @Test
+    public void testSharedProxyFactory() throws SQLException {
+        // Given
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        Driver.setMeterRegistry("shared", meterRegistry);
+        String url = URL + ";metrics_registry=shared;metrics_query_cache=10";
+        // When
+        for (int i = 0; i < 3; i++) {
+            Connection connection = DriverManager.getConnection(url, H2DbUtil.USERNAME, H2DbUtil.PASSWORD);
+            Statement statement = connection.createStatement();
+            statement.executeQuery("select CURRENT_DATE").close();
+            H2DbUtil.close(statement, connection);
+        }
+        // Then
+        Driver driver = (Driver) DriverManager.getDriver(url);
+        JdbcProxyFactory proxyFactory = driver.getJdbcProxyFactory(url);
+        assertSame(proxyFactory, driver.getJdbcProxyFactory(url));
+        assertNotSame(proxyFactory, driver.getJdbcProxyFactory(URL + ";metrics_registry=shared"));
+        assertEquals(2L, proxyFactory.getMetricHelper().getQueryCache().getHitCount());
+        assertEquals(3L, meterRegistry.get("java.sql.Statement.[select current_date].exec").timer().count());
+        assertEquals(3L, meterRegistry.get("java.sql.Connection.get").timer().count());
+    }
+
+    @Test
+    public void testNamedRegistry() throws SQLException {
+        // When
+        Connection connection = DriverManager.getConnection(URL + ";metrics_registry=composite", H2DbUtil.USERNAME, H2DbUtil.PASSWORD);
+        H2DbUtil.close(connection);
+        // Then
+        assertTrue(Driver.getMeterRegistry("composite") instanceof CompositeMeterRegistry);
+        assertSame(Driver.getMeterRegistry("composite"), Driver.getMeterRegistry("composite"));
+        assertNotSame(Driver.getMeterRegistry(), Driver.getMeterRegistry("composite"));
+        assertNotNull(Driver.getMeterRegistry("composite").find("java.sql.Connection.get").timer());
+    }
+
+    @Test
+    public void testDeregister() throws SQLException {
+        // Given
+        String url = URL + ";metrics_registry=deregister";
+        H2DbUtil.close(DriverManager.getConnection(url, H2DbUtil.USERNAME, H2DbUtil.PASSWORD));
+        Driver driver = (Driver) DriverManager.getDriver(url);
+        JdbcProxyFactory proxyFactory = driver.getJdbcProxyFactory(url);
+        try {
+            // When
+            Driver.deregister();
+            // Then
+            try {
+                DriverManager.getDriver(url);
+                fail("Driver still registered");
+            } catch (SQLException e) {
+                // Expected
+            }
+            assertNotSame(proxyFactory, driver.getJdbcProxyFactory(url));
+        } finally {
+            Driver.register();
+        }
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEviction() throws Exception {
+        // Given
+        Driver.setMeterRegistry("lru", new SimpleMeterRegistry());
+        Driver driver = (Driver) DriverManager.getDriver(URL);
+        String urlPrefix = URL + ";metrics_registry=lru;metrics_query_cache=";
+        JdbcProxyFactory firstProxyFactory = driver.getJdbcProxyFactory(urlPrefix + 0);
+        JdbcProxyFactory secondProxyFactory = driver.getJdbcProxyFactory(urlPrefix + 1);
+        for (int i = 2; i < 64; i++) {
+            driver.getJdbcProxyFactory(urlPrefix + i);
+        }
+        Thread.sleep(20L);
+        driver.getJdbcProxyFactory(urlPrefix + 0);
+        // When
+        driver.getJdbcProxyFactory(urlPrefix + 64);
+        // Then: only the least recently used URL is evicted
+        assertSame(firstProxyFactory, driver.getJdbcProxyFactory(urlPrefix + 0));
+        assertNotSame(secondProxyFactory, driver.getJdbcProxyFactory(urlPrefix + 1));
+    }
 }
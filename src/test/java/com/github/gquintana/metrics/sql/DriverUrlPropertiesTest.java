@@ -21,11 +21,16 @@ package com.github.gquintana.metrics.sql;
  */
 
 import com.github.gquintana.metrics.proxy.CGLibProxyFactory;
+import com.github.gquintana.metrics.proxy.FilteringReflectProxyFactory;
+import com.github.gquintana.metrics.proxy.GeneratedProxyFactory;
 import com.github.gquintana.metrics.proxy.ReflectProxyFactory;
 import org.junit.Test;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 /**
  *
@@ -52,4 +57,51 @@ public class DriverUrlPropertiesTest {
         assertNull(driverUrl.getDatabaseName());
         assertNull(null, driverUrl.getDriverClass());
     }
+
+    @Test
+    public void testGeneratedProxyFactory() {
+        DriverUrl driverUrl = DriverUrl.parse("jdbc:metrics:h2:~/test;metrics_proxy_factory=generated");
+        assertEquals(GeneratedProxyFactory.class, driverUrl.getProxyFactoryClass());
+    }
+
+    @Test
+    public void testFilteringReflectProxyFactory() {
+        DriverUrl driverUrl = DriverUrl.parse("jdbc:metrics:h2:~/test;metrics_proxy_factory=reflect_filtering");
+        assertEquals(FilteringReflectProxyFactory.class, driverUrl.getProxyFactoryClass());
+    }
+
+    @Test
+    public void testWarmUp() {
+        assertTrue(DriverUrl.parse("jdbc:metrics:h2:~/test;metrics_warm_up=true").isWarmUp());
+        assertFalse(DriverUrl.parse("jdbc:metrics:h2:~/test").isWarmUp());
+    }
+
+    @Test
+    public void testVendorInterfaces() {
+        assertTrue(DriverUrl.parse("jdbc:metrics:h2:~/test;metrics_vendor_interfaces=true").isVendorInterfaces());
+        assertFalse(DriverUrl.parse("jdbc:metrics:h2:~/test").isVendorInterfaces());
+    }
+
+    @Test
+    public void testQueryCache() {
+        assertEquals(100, DriverUrl.parse("jdbc:metrics:h2:~/test;metrics_query_cache=100").getQueryCacheSize());
+        assertEquals(0, DriverUrl.parse("jdbc:metrics:h2:~/test").getQueryCacheSize());
+    }
+
+    @Test
+    public void testRecordingProperties() {
+        DriverUrl driverUrl = DriverUrl.parse("jdbc:metrics:h2:~/test;metrics_registry=app;metrics_async_buffer=1024;metrics_async_block=true"
+                + ";metrics_percentiles=0.5, 0.99;metrics_naming_cache=500;metrics_table_metrics=true");
+        assertEquals("app", driverUrl.getRegistryName());
+        assertEquals(1024, driverUrl.getAsyncBufferSize());
+        assertTrue(driverUrl.isAsyncBlockWhenFull());
+        assertArrayEquals(new double[]{0.5, 0.99}, driverUrl.getPercentiles(), 0.001);
+        assertEquals(500, driverUrl.getNamingCacheSize());
+        assertTrue(driverUrl.isTableMetrics());
+        DriverUrl defaultUrl = DriverUrl.parse("jdbc:metrics:h2:~/test");
+        assertNull(defaultUrl.getRegistryName());
+        assertEquals(0, defaultUrl.getAsyncBufferSize());
+        assertNull(defaultUrl.getPercentiles());
+        assertFalse(defaultUrl.isTableMetrics());
+    }
 }
@@ -0,0 +1,179 @@
+package com.github.gquintana.metrics.sql;
+
+/*
+ * #%L
+ * Metrics SQL
+ * %%
+ * Copyright (C) 2014 Open-Source
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.github.gquintana.metrics.proxy.GeneratedProxyFactory;
+import com.github.gquintana.metrics.proxy.ProxyFactory;
+import com.github.gquintana.metrics.proxy.ReflectProxyFactory;
+import com.github.gquintana.metrics.util.ParametersBuilder;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.sql.*;
+import java.util.Collection;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test failed executions are timed, see {@link MetricHelper#recordExecuteFailure(MetricFamily, Query, TimeObservation, Throwable)}
+ */
+@RunWith(Parameterized.class)
+public class ExecuteFailureTest {
+    private static final String SQL = "select * from METRICS_MISSING";
+    private final ProxyFactory proxyFactory;
+    private MeterRegistry meterRegistry;
+    private Connection rawConnection;
+
+    public ExecuteFailureTest(ProxyFactory proxyFactory) {
+        this.proxyFactory = proxyFactory;
+    }
+
+    @Parameterized.Parameters
+    public static Collection<Object[]> getParameters() {
+        return new ParametersBuilder()
+                .add(new ReflectProxyFactory())
+                .add(new GeneratedProxyFactory())
+                .build();
+    }
+
+    @Before
+    public void setUp() throws SQLException {
+        meterRegistry = new SimpleMeterRegistry();
+        rawConnection = H2DbUtil.openConnection();
+    }
+
+    @After
+    public void tearDown() {
+        H2DbUtil.close(rawConnection);
+    }
+
+    private Connection wrap(MetricNamingStrategy namingStrategy) {
+        return new JdbcProxyFactory(meterRegistry, namingStrategy, proxyFactory).wrapConnection(rawConnection);
+    }
+
+    private void assertFailureTimer(String name, SQLException exception) {
+        Timer timer = meterRegistry.get(name)
+                .tag("outcome", "error")
+                .tag("sqlstate.class", exception.getSQLState().substring(0, 2))
+                .tag("error.code", Integer.toString(exception.getErrorCode()))
+                .timer();
+        assertEquals(1L, timer.count());
+    }
+
+    @Test
+    public void testStatement() throws SQLException {
+        // Act
+        Connection connection = wrap(new DefaultMetricNamingStrategy());
+        Statement statement = connection.createStatement();
+        SQLException exception = null;
+        try {
+            statement.executeQuery(SQL);
+            fail("SQLException expected");
+        } catch (SQLException e) {
+            exception = e;
+        }
+        H2DbUtil.close(statement);
+        // Assert
+        assertFailureTimer("java.sql.Statement.[select * from metrics_missing].exec.failure", exception);
+        assertEquals(0L, meterRegistry.get("java.sql.Statement.[select * from metrics_missing].exec").timer().count());
+    }
+
+    @Test
+    public void testPreparedStatement() throws SQLException {
+        // Arrange
+        Connection connection = wrap(new DefaultMetricNamingStrategy());
+        PreparedStatement statement = connection.prepareStatement("select ? from DUAL");
+        // Act
+        SQLException exception = null;
+        try {
+            statement.executeQuery();
+            fail("SQLException expected");
+        } catch (SQLException e) {
+            exception = e;
+        }
+        H2DbUtil.close(statement);
+        // Assert
+        assertFailureTimer("java.sql.PreparedStatement.[select ? from dual].exec.failure", exception);
+    }
+
+    @Test
+    public void testExecuteTimerDisabled() throws SQLException {
+        // Act
+        Connection connection = wrap(new DefaultMetricNamingStrategy() {
+            @Override
+            public boolean isEnabled(MetricFamily metricFamily) {
+                return metricFamily != MetricFamily.STATEMENT_EXECUTE;
+            }
+        });
+        Statement statement = connection.createStatement();
+        SQLException exception = null;
+        try {
+            statement.execute(SQL);
+            fail("SQLException expected");
+        } catch (SQLException e) {
+            exception = e;
+        }
+        statement.execute("select 1 from DUAL");
+        H2DbUtil.close(statement);
+        // Assert
+        assertFailureTimer("java.sql.Statement.[select * from metrics_missing].exec.failure", exception);
+        assertNull(meterRegistry.find("java.sql.Statement.[select 1 from dual].exec").timer());
+    }
+
+    @Test
+    public void testFailureDisabled() throws SQLException {
+        // Act
+        Connection connection = wrap(new DefaultMetricNamingStrategy() {
+            @Override
+            public boolean isEnabled(MetricFamily metricFamily) {
+                return metricFamily != MetricFamily.STATEMENT_EXECUTE_FAILURE;
+            }
+        });
+        Statement statement = connection.createStatement();
+        try {
+            statement.execute(SQL);
+            fail("SQLException expected");
+        } catch (SQLException e) {
+            // Expected
+        }
+        H2DbUtil.close(statement);
+        // Assert
+        assertNull(meterRegistry.find("java.sql.Statement.[select * from metrics_missing].exec.failure").timer());
+    }
+
+    @Test
+    public void testOutcome() {
+        assertEquals("timeout", MetricHelper.getOutcome(new SQLTimeoutException("Timeout")));
+        assertEquals("timeout", MetricHelper.getOutcome(new SQLException("Canceled", "57014")));
+        assertEquals("rollback", MetricHelper.getOutcome(new SQLTransactionRollbackException("Deadlock")));
+        assertEquals("rollback", MetricHelper.getOutcome(new SQLException("Deadlock", "40001")));
+        assertEquals("connection", MetricHelper.getOutcome(new SQLException("Broken", "08006")));
+        assertEquals("error", MetricHelper.getOutcome(new SQLException("Syntax", "42000")));
+        assertEquals("error", MetricHelper.getOutcome(new SQLException("No state")));
+        assertEquals("exception", MetricHelper.getOutcome(new IllegalStateException()));
+    }
+}
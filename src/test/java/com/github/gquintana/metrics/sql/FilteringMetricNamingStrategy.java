@@ -38,4 +38,11 @@ public class FilteringMetricNamingStrategy extends DefaultMetricNamingStrategy {
     public String getConnectionLifeTimer() {
         return null;
     }
+
+    @Override
+    public boolean isEnabled(MetricFamily metricFamily) {
+        return metricFamily != MetricFamily.PREPARED_STATEMENT_LIFE
+                && metricFamily != MetricFamily.CALLABLE_STATEMENT_LIFE
+                && metricFamily != MetricFamily.CONNECTION_LIFE;
+    }
 }
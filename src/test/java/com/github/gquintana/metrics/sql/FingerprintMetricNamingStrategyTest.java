@@ -0,0 +1,76 @@
+package com.github.gquintana.metrics.sql;
+
+/*
+ * #%L
+ * Metrics SQL
+ * %%
+ * Copyright (C) 2014 Open-Source
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class FingerprintMetricNamingStrategyTest {
+    private static void assertFingerprint(String expected, String sql) {
+        assertThat(SqlFingerprinter.fingerprint(sql), equalTo(expected));
+    }
+
+    @Test
+    public void testLiterals() {
+        assertFingerprint("select * from metrics_test where id=? and text=?", "SELECT * FROM METRICS_TEST WHERE ID=12 AND TEXT='It''s'");
+        assertFingerprint("select ? from t where a=? and b=? and c=?", "select 1.5e-3 from t where a=0x1F and b=.5 and c=N'x'");
+        assertFingerprint("select t1.col from t1", "select t1.col from t1");
+        assertFingerprint("select * from t where a=? and b=?", "select * from t where a=$1 and b=?");
+    }
+
+    @Test
+    public void testLists() {
+        assertFingerprint("select * from t where id in (?)", "select * from t where id in (1, 2, 3,4)");
+        assertFingerprint("select * from t where id in (?) and name in (?)", "select * from t where id in (?,?) and name in ('a', 'b')");
+        assertFingerprint("insert into t(a, b) values (?)", "insert into t(a, b) values (1, 'x'), (2, 'y'), (3, 'z')");
+        assertFingerprint("select coalesce(a, ?) from t", "select coalesce(a, 0) from t");
+    }
+
+    @Test
+    public void testWhitespacesAndComments() {
+        assertFingerprint("select a, b from t where c = ?", "  select a,\n\tb -- columns\nfrom /* table */ t\r\nwhere c = 1  ");
+        assertFingerprint("select a from t", "/* leading */ select a from t -- trailing");
+    }
+
+    @Test
+    public void testQuotedIdentifiers() {
+        assertFingerprint("select \"My Column\", `Other`, [Third Col] from \"T\"", "SELECT \"My Column\", `Other`, [Third Col] FROM \"T\"");
+        assertFingerprint("select \"a \"\"b\"\"\" from t", "select \"a \"\"b\"\"\" from t");
+    }
+
+    @Test
+    public void testStrategy() {
+        // Given
+        FingerprintMetricNamingStrategy namingStrategy = FingerprintMetricNamingStrategy.builder()
+                .withDatabaseName("test")
+                .build();
+        // When
+        String sqlId = namingStrategy.getSqlId("select * from METRICS_TEST where ID in (1, 2)");
+        // Then
+        assertThat(sqlId, equalTo("[select * from metrics_test where id in (?)]"));
+        assertThat(namingStrategy.getStatementExecuteTimer("select * from METRICS_TEST where ID in (1, 2)", sqlId),
+                equalTo("java.sql.Statement.test.[select * from metrics_test where id in (?)].exec"));
+        assertThat(DriverUrl.parse("jdbc:metrics:h2:mem:test;metrics_naming_strategy=fingerprint").getNamingStrategyClass(),
+                equalTo((Object) FingerprintMetricNamingStrategy.class));
+    }
+}
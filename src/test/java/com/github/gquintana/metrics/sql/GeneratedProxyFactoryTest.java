@@ -0,0 +1,124 @@
+package com.github.gquintana.metrics.sql;
+
+/*
+ * #%L
+ * Metrics SQL
+ * %%
+ * Copyright (C) 2014 Open-Source
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.github.gquintana.metrics.proxy.GeneratedProxyFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.sql.DataSource;
+import java.lang.reflect.Proxy;
+import java.sql.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Integration test between {@link GeneratedProxyFactory} and {@link JdbcProxyFactory}
+ */
+public class GeneratedProxyFactoryTest {
+    private MeterRegistry meterRegistry;
+    private DataSource rawDataSource;
+    private DataSource dataSource;
+
+    @Before
+    public void setUp() throws SQLException {
+        meterRegistry = new SimpleMeterRegistry();
+        rawDataSource = H2DbUtil.createDataSource();
+        try (Connection connection = rawDataSource.getConnection()) {
+            H2DbUtil.initTable(connection);
+        }
+        dataSource = MetricsSql.forRegistry(meterRegistry)
+                .withProxyFactory(new GeneratedProxyFactory())
+                .wrap(rawDataSource);
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        try (Connection connection = rawDataSource.getConnection()) {
+            H2DbUtil.dropTable(connection);
+        }
+        H2DbUtil.close(dataSource);
+    }
+
+    @Test
+    public void testStatementAndResultSet() throws SQLException {
+        // Act
+        Connection connection = dataSource.getConnection();
+        Statement statement = connection.createStatement();
+        ResultSet resultSet = statement.executeQuery("select * from METRICS_TEST");
+        int rows = 0;
+        while (resultSet.next()) {
+            assertNotNull(resultSet.getString("TEXT"));
+            rows++;
+        }
+        H2DbUtil.close(resultSet, statement, connection);
+        // Assert
+        assertEquals(10, rows);
+        assertFalse(Proxy.isProxyClass(connection.getClass()));
+        assertFalse(Proxy.isProxyClass(resultSet.getClass()));
+        assertEquals(1L, meterRegistry.get("java.sql.Connection").timer().count());
+        assertEquals(1L, meterRegistry.get("java.sql.Connection.get").timer().count());
+        assertEquals(1L, meterRegistry.get("java.sql.Statement").timer().count());
+        assertEquals(1L, meterRegistry.get("java.sql.Statement.[select * from metrics_test].exec").timer().count());
+        assertEquals(1L, meterRegistry.get("java.sql.ResultSet.[select * from metrics_test]").timer().count());
+        assertEquals(10.0, meterRegistry.get("java.sql.ResultSet.[select * from metrics_test].rows").counter().count(), 0.1);
+    }
+
+    @Test
+    public void testPreparedStatement() throws SQLException {
+        // Act
+        Connection connection = dataSource.getConnection();
+        PreparedStatement statement = connection.prepareStatement("select * from METRICS_TEST where ID=?");
+        statement.setInt(1, 3);
+        ResultSet resultSet = statement.executeQuery();
+        assertTrue(resultSet.next());
+        assertEquals(3, resultSet.getInt("ID"));
+        H2DbUtil.close(resultSet, statement, connection);
+        // Assert
+        assertEquals(1L, meterRegistry.get("java.sql.PreparedStatement.[select * from metrics_test where id=?]").timer().count());
+        assertEquals(1L, meterRegistry.get("java.sql.PreparedStatement.[select * from metrics_test where id=?].exec").timer().count());
+    }
+
+    @Test
+    public void testHandlerInvoke() throws SQLException {
+        // Act: no typed hook for this overload
+        Connection connection = dataSource.getConnection();
+        Statement statement = connection.createStatement();
+        statement.execute("select * from METRICS_TEST", Statement.NO_GENERATED_KEYS);
+        H2DbUtil.close(statement, connection);
+        // Assert
+        assertEquals(1L, meterRegistry.get("java.sql.Statement.[select * from metrics_test].exec").timer().count());
+    }
+
+    @Test
+    public void testUnwrap() throws SQLException {
+        // Act
+        Connection connection = dataSource.getConnection();
+        // Assert
+        assertTrue(connection.isWrapperFor(Connection.class));
+        assertTrue(connection.isWrapperFor(org.h2.jdbc.JdbcConnection.class));
+        assertTrue(connection.unwrap(org.h2.jdbc.JdbcConnection.class) instanceof org.h2.jdbc.JdbcConnection);
+        H2DbUtil.close(connection);
+    }
+}
@@ -0,0 +1,120 @@
+package com.github.gquintana.metrics.sql;
+
+/*
+ * #%L
+ * Metrics SQL
+ * %%
+ * Copyright (C) 2014 Open-Source
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Test;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.not;
+import static org.junit.Assert.*;
+
+public class HashedMetricNamingStrategyTest {
+    @Test
+    public void testSqlId() {
+        // Given
+        SqlDictionary dictionary = new SqlDictionary();
+        HashedMetricNamingStrategy namingStrategy = HashedMetricNamingStrategy.builder()
+                .withDatabaseName("test")
+                .withDictionary(dictionary)
+                .build();
+        // When
+        String sqlId = namingStrategy.getSqlId("select * from METRICS_TEST where ID in (1, 2)");
+        // Then
+        assertTrue(sqlId.matches("q_[0-9a-f]{16}"));
+        assertThat(namingStrategy.getSqlId("SELECT * FROM metrics_test WHERE id IN (3)"), equalTo(sqlId));
+        assertThat(namingStrategy.getSqlId("select * from METRICS_TEST"), not(equalTo(sqlId)));
+        assertThat(namingStrategy.getStatementExecuteTimer("select * from METRICS_TEST where ID in (1, 2)", sqlId),
+                equalTo("java.sql.Statement.test." + sqlId + ".exec"));
+        assertThat(dictionary.getSql(sqlId), equalTo("select * from metrics_test where id in (?)"));
+        assertEquals(2, dictionary.size());
+        assertThat(DriverUrl.parse("jdbc:metrics:h2:mem:test;metrics_naming_strategy=hashed").getNamingStrategyClass(),
+                equalTo((Object) HashedMetricNamingStrategy.class));
+    }
+
+    @Test
+    public void testHashIsStable() {
+        assertThat(HashedMetricNamingStrategy.hash(""), equalTo("q_cbf29ce484222325"));
+        assertThat(HashedMetricNamingStrategy.hash("select 1"), equalTo(HashedMetricNamingStrategy.hash("select 1")));
+        assertThat(HashedMetricNamingStrategy.hash("select 1"), not(equalTo(HashedMetricNamingStrategy.hash("select 2"))));
+    }
+
+    @Test
+    public void testDictionaryBounded() {
+        // Given
+        SqlDictionary dictionary = new SqlDictionary(2);
+        HashedMetricNamingStrategy namingStrategy = new HashedMetricNamingStrategy("test", dictionary);
+        // When
+        String sqlId1 = namingStrategy.getSqlId("select * from table_1");
+        namingStrategy.getSqlId("select * from table_2");
+        namingStrategy.getSqlId("select * from table_3");
+        // Then
+        assertEquals(2, dictionary.size());
+        assertNull(dictionary.getSql(sqlId1));
+        assertNotSame(new HashedMetricNamingStrategy().getDictionary(), new HashedMetricNamingStrategy().getDictionary());
+    }
+
+    @Test
+    public void testDump() throws IOException {
+        // Given
+        SqlDictionary dictionary = new SqlDictionary();
+        HashedMetricNamingStrategy namingStrategy = new HashedMetricNamingStrategy("test", dictionary);
+        String sqlId = namingStrategy.getSqlId("select * from METRICS_TEST where ID = 1");
+        long firstSeen = dictionary.getEntries().get(0).getFirstSeen();
+        // When
+        StringWriter writer = new StringWriter();
+        dictionary.dump(writer);
+        // Then
+        assertThat(writer.toString(), equalTo(sqlId + "\t" + firstSeen + "\tselect * from metrics_test where id = ?\n"));
+    }
+
+    @Test
+    public void testDataSource() throws SQLException {
+        // Given
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        SqlDictionary dictionary = new SqlDictionary();
+        DataSource rawDataSource = H2DbUtil.createDataSource();
+        DataSource dataSource = MetricsSql.forRegistry(meterRegistry)
+                .withHashedNamingStrategy(null, dictionary)
+                .wrap(rawDataSource);
+        try (Connection connection = dataSource.getConnection()) {
+            H2DbUtil.initTable(connection);
+            // When
+            try (PreparedStatement statement = connection.prepareStatement("select * from METRICS_TEST where ID=?")) {
+                statement.setInt(1, 1);
+                statement.executeQuery().close();
+            }
+            H2DbUtil.dropTable(connection);
+        }
+        // Then
+        String sqlId = HashedMetricNamingStrategy.hash("select * from metrics_test where id=?");
+        assertEquals(1L, meterRegistry.get("java.sql.PreparedStatement." + sqlId + ".exec").timer().count());
+        assertThat(dictionary.getSql(sqlId), equalTo("select * from metrics_test where id=?"));
+    }
+}
@@ -0,0 +1,80 @@
+package com.github.gquintana.metrics.sql;
+
+/*
+ * #%L
+ * Metrics SQL
+ * %%
+ * Copyright (C) 2014 Open-Source
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of recording a duration from several threads:
+ * in a {@link LogLinearHistogram}, in a Micrometer timer publishing percentiles, and in a HdrHistogram concurrent histogram.
+ * Run with {@code mvn test-compile} then the main method using the test classpath.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class HistogramBenchmark {
+    private LogLinearHistogram logLinearHistogram;
+    private Timer percentileTimer;
+    private ConcurrentHistogram hdrHistogram;
+
+    @Setup
+    public void setUp() {
+        logLinearHistogram = new LogLinearHistogram();
+        percentileTimer = Timer.builder("benchmark").publishPercentiles(0.5, 0.99).register(new SimpleMeterRegistry());
+        hdrHistogram = new ConcurrentHistogram(3);
+    }
+
+    private static long duration() {
+        return 50_000L + ThreadLocalRandom.current().nextInt(100_000);
+    }
+
+    @Benchmark
+    public void logLinearHistogram() {
+        logLinearHistogram.record(duration(), 1);
+    }
+
+    @Benchmark
+    public void micrometerPercentileTimer() {
+        percentileTimer.record(duration(), TimeUnit.NANOSECONDS);
+    }
+
+    @Benchmark
+    public void hdrConcurrentHistogram() {
+        hdrHistogram.recordValue(duration());
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(HistogramBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,173 @@
+package com.github.gquintana.metrics.sql;
+
+/*
+ * #%L
+ * Metrics SQL
+ * %%
+ * Copyright (C) 2014 Open-Source
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.HdrHistogram.Histogram;
+import org.junit.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test {@link LogLinearHistogram}, accuracy is compared to HdrHistogram
+ */
+public class LogLinearHistogramTest {
+    /**
+     * Bucket width relative to its values, plus HdrHistogram own error
+     */
+    private static final double MAX_RELATIVE_ERROR = 1.0 / LogLinearHistogram.HALF_SUB_BUCKET_COUNT + 0.001;
+
+    @Test
+    public void testBuckets() {
+        assertEquals(0, LogLinearHistogram.getIndex(-1L));
+        assertEquals(63, LogLinearHistogram.getIndex(63L));
+        assertEquals(LogLinearHistogram.BUCKET_COUNT - 1, LogLinearHistogram.getIndex(Long.MAX_VALUE));
+        long previousHighest = -1L;
+        for (int index = 0; index < LogLinearHistogram.BUCKET_COUNT; index++) {
+            long lowest = LogLinearHistogram.getLowestValue(index);
+            long highest = LogLinearHistogram.getHighestValue(index);
+            // Buckets are contiguous
+            assertEquals(previousHighest + 1L, lowest);
+            assertEquals(index, LogLinearHistogram.getIndex(lowest));
+            assertEquals(index, LogLinearHistogram.getIndex(highest));
+            assertTrue((double) (highest - lowest) / Math.max(1L, lowest) < MAX_RELATIVE_ERROR);
+            previousHighest = highest;
+        }
+    }
+
+    @Test
+    public void testAccuracy() {
+        // Given
+        LogLinearHistogram histogram = new LogLinearHistogram();
+        Histogram hdrHistogram = new Histogram(3);
+        Random random = new Random(42L);
+        // When: log-normal durations around 100 µs
+        for (int i = 0; i < 100_000; i++) {
+            long duration = (long) Math.exp(Math.log(100_000.0) + random.nextGaussian());
+            histogram.record(duration, 1);
+            hdrHistogram.recordValue(duration);
+        }
+        // Then
+        assertEquals(100_000L, histogram.count());
+        for (double percentile : new double[]{0.5, 0.75, 0.9, 0.99, 0.999}) {
+            double expected = hdrHistogram.getValueAtPercentile(percentile * 100.0);
+            double actual = histogram.getValueAtPercentile(percentile);
+            assertEquals("Percentile " + percentile, expected, actual, expected * MAX_RELATIVE_ERROR);
+        }
+    }
+
+    @Test
+    public void testWeight() {
+        LogLinearHistogram histogram = new LogLinearHistogram();
+        assertEquals(0L, histogram.getValueAtPercentile(0.5));
+        histogram.record(10L, 9);
+        histogram.record(1000L, 1);
+        assertEquals(10L, histogram.count());
+        assertEquals(10L, histogram.getValueAtPercentile(0.9));
+        long max = histogram.getValueAtPercentile(1.0);
+        assertTrue(max >= 1000L && max < 1000L * (1.0 + MAX_RELATIVE_ERROR));
+    }
+
+    @Test
+    public void testConcurrentRecords() throws InterruptedException {
+        // Given
+        LogLinearHistogram histogram = new LogLinearHistogram();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 100_000; i++) {
+                    histogram.record(i, 1);
+                }
+            });
+        }
+        // When
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        // Then: no lost update although threads share stripes
+        assertEquals(400_000L, histogram.count());
+        assertTrue(histogram.getStripeCount() >= 1);
+    }
+
+    @Test
+    public void testRotation() throws InterruptedException {
+        // Given
+        LogLinearHistogram histogram = new LogLinearHistogram(100L, TimeUnit.MILLISECONDS);
+        histogram.record(1000L, 1);
+        assertEquals(1L, histogram.count());
+        // When: after one interval, still in the previous buffer
+        Thread.sleep(120L);
+        histogram.record(10L, 1);
+        assertEquals(2L, histogram.count());
+        assertEquals(10L, histogram.getValueAtPercentile(0.5));
+        // When: after another interval, the oldest buffer is cleared
+        Thread.sleep(120L);
+        assertEquals(1L, histogram.count());
+        assertEquals(10L, histogram.getValueAtPercentile(1.0));
+        // When: after two intervals, both are cleared
+        Thread.sleep(250L);
+        assertEquals(0L, histogram.count());
+    }
+
+    @Test
+    public void testStripesOnContention() {
+        LogLinearHistogram histogram = new LogLinearHistogram();
+        histogram.record(10L, 1);
+        assertEquals(1, histogram.getStripeCount());
+    }
+
+    @Test
+    public void testPercentileGauges() throws SQLException {
+        // Given
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        DataSource rawDataSource = H2DbUtil.createDataSource();
+        DataSource dataSource = MetricsSql.forRegistry(meterRegistry)
+                .withPercentiles(0.5, 0.99)
+                .wrap(rawDataSource);
+        // When
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement("select 1")) {
+            for (int i = 0; i < 10; i++) {
+                statement.execute();
+            }
+        } finally {
+            H2DbUtil.close(rawDataSource);
+        }
+        // Then
+        String name = "java.sql.PreparedStatement.[select 1].exec";
+        assertEquals(10.0, meterRegistry.get(name).functionTimer().count(), 0.1);
+        double median = meterRegistry.get(name + ".percentile").tag("phi", "0.5").gauge().value();
+        double p99 = meterRegistry.get(name + ".percentile").tag("phi", "0.99").gauge().value();
+        assertTrue(median > 0.0);
+        assertTrue(p99 >= median);
+    }
+}
@@ -0,0 +1,220 @@
+package com.github.gquintana.metrics.sql;
+
+/*
+ * #%L
+ * Metrics SQL
+ * %%
+ * Copyright (C) 2014 Open-Source
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test {@link MeterCardinalityLimiter} through {@link MetricsSql.Builder#withMaxSqlIds(int)}
+ * and {@link MetricsSql.Builder#withMeterIdleTimeout(long, TimeUnit)}
+ */
+public class MeterCardinalityTest {
+    private MeterRegistry meterRegistry;
+    private DataSource rawDataSource;
+
+    @Before
+    public void setUp() throws SQLException {
+        meterRegistry = new SimpleMeterRegistry();
+        rawDataSource = H2DbUtil.createDataSource();
+        try (Connection connection = rawDataSource.getConnection()) {
+            H2DbUtil.initTable(connection);
+        }
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        try (Connection connection = rawDataSource.getConnection()) {
+            H2DbUtil.dropTable(connection);
+        }
+        H2DbUtil.close(rawDataSource);
+    }
+
+    private void execute(JdbcProxyFactory proxyFactory, int id) throws SQLException {
+        try (Connection connection = proxyFactory.wrapConnection(rawDataSource.getConnection());
+             Statement statement = connection.createStatement()) {
+            statement.execute("select * from METRICS_TEST where ID=" + id);
+        }
+    }
+
+    private long getExecuteCount(String sqlId) {
+        return meterRegistry.get("java.sql.Statement.[" + sqlId + "].exec").timer().count();
+    }
+
+    @Test
+    public void testOverflow() throws SQLException {
+        // Given
+        JdbcProxyFactory proxyFactory = MetricsSql.forRegistry(meterRegistry)
+                .withMaxSqlIds(2)
+                .build();
+        // When
+        for (int id = 1; id <= 4; id++) {
+            execute(proxyFactory, id);
+        }
+        execute(proxyFactory, 1);
+        // Then
+        assertEquals(2L, getExecuteCount("select * from metrics_test where id=1"));
+        assertEquals(1L, getExecuteCount("select * from metrics_test where id=2"));
+        assertEquals(2L, getExecuteCount("overflow"));
+        assertNull(meterRegistry.find("java.sql.Statement.[select * from metrics_test where id=3].exec").timer());
+        assertEquals(2.0, meterRegistry.get("metrics.sql.cardinality").gauge().value(), 0.1);
+        assertEquals(2.0, meterRegistry.get("metrics.sql.cardinality.overflow").functionCounter().count(), 0.1);
+    }
+
+    @Test
+    public void testIdleEviction() throws Exception {
+        // Given
+        JdbcProxyFactory proxyFactory = MetricsSql.forRegistry(meterRegistry)
+                .withQueryCache(10)
+                .withMaxSqlIds(1)
+                .withMeterIdleTimeout(500L, TimeUnit.MILLISECONDS)
+                .build();
+        // When
+        execute(proxyFactory, 1);
+        Thread.sleep(600L);
+        execute(proxyFactory, 2);
+        // Then: id=1 was evicted to make room for id=2, its meters are removed from the registry
+        assertEquals(1.0, meterRegistry.get("metrics.sql.cardinality.evictions").functionCounter().count(), 0.1);
+        assertEquals(1L, getExecuteCount("select * from metrics_test where id=2"));
+        assertEquals(1.0, meterRegistry.get("metrics.sql.cardinality").gauge().value(), 0.1);
+        assertNull(meterRegistry.find("java.sql.Statement.[select * from metrics_test where id=1].exec").timer());
+        // When: cached query id=1 comes back while id=2 is still fresh
+        execute(proxyFactory, 1);
+        // Then: its evicted meters are not used anymore
+        assertNull(meterRegistry.find("java.sql.Statement.[select * from metrics_test where id=1].exec").timer());
+        assertEquals(1L, getExecuteCount("overflow"));
+    }
+
+    @Test
+    public void testIdleEvictionWithoutNewSqlId() throws Exception {
+        // Given
+        JdbcProxyFactory proxyFactory = MetricsSql.forRegistry(meterRegistry)
+                .withQueryCache(10)
+                .withMeterIdleTimeout(500L, TimeUnit.MILLISECONDS)
+                .build();
+        execute(proxyFactory, 1);
+        execute(proxyFactory, 2);
+        // When: only the known id=2 is used
+        Thread.sleep(600L);
+        execute(proxyFactory, 2);
+        // Then
+        assertEquals(1.0, meterRegistry.get("metrics.sql.cardinality.evictions").functionCounter().count(), 0.1);
+        assertNull(meterRegistry.find("java.sql.Statement.[select * from metrics_test where id=1].exec").timer());
+        assertEquals(2L, getExecuteCount("select * from metrics_test where id=2"));
+    }
+
+    @Test
+    public void testLeaveOverflow() throws Exception {
+        // Given
+        JdbcProxyFactory proxyFactory = MetricsSql.forRegistry(meterRegistry)
+                .withQueryCache(10)
+                .withMaxSqlIds(1)
+                .withMeterIdleTimeout(500L, TimeUnit.MILLISECONDS)
+                .build();
+        execute(proxyFactory, 1);
+        execute(proxyFactory, 2);
+        assertEquals(1L, getExecuteCount("overflow"));
+        // When: id=1 is evicted
+        Thread.sleep(600L);
+        execute(proxyFactory, 2);
+        // Then: id=2 gets its own meters
+        assertEquals(1L, getExecuteCount("overflow"));
+        assertEquals(1L, getExecuteCount("select * from metrics_test where id=2"));
+        assertNull(meterRegistry.find("java.sql.Statement.[select * from metrics_test where id=1].exec").timer());
+    }
+
+    @Test
+    public void testRegisteredQuery() throws Exception {
+        // Given
+        JdbcProxyFactory proxyFactory = MetricsSql.forRegistry(meterRegistry)
+                .withMaxSqlIds(1)
+                .withMeterIdleTimeout(500L, TimeUnit.MILLISECONDS)
+                .build();
+        proxyFactory.registerQuery("first", "select * from METRICS_TEST where ID=1", Statement.class);
+        // When
+        execute(proxyFactory, 1);
+        execute(proxyFactory, 2);
+        execute(proxyFactory, 3);
+        // Then: the registered query doesn't count against the limit
+        assertEquals(1L, meterRegistry.get("java.sql.Statement.first.exec").timer().count());
+        assertEquals(1L, getExecuteCount("select * from metrics_test where id=2"));
+        assertEquals(1L, getExecuteCount("overflow"));
+        assertEquals(1.0, meterRegistry.get("metrics.sql.cardinality").gauge().value(), 0.1);
+        // When: the registered query is idle
+        Thread.sleep(600L);
+        execute(proxyFactory, 2);
+        execute(proxyFactory, 1);
+        // Then: its meters are kept
+        assertEquals(2L, meterRegistry.get("java.sql.Statement.first.exec").timer().count());
+    }
+
+    @Test
+    public void testLimiter() throws Exception {
+        MeterCardinalityLimiter limiter = new MeterCardinalityLimiter(0, 1L, meters -> { });
+        MeterCardinalityLimiter.Entry entry = limiter.acquire("a");
+        assertSame(entry, limiter.acquire("a"));
+        assertFalse(limiter.isOverflow(entry));
+        Thread.sleep(50L);
+        limiter.evictIdle();
+        assertEquals(0, limiter.size());
+        assertFalse(entry.touch(System.nanoTime()));
+        assertNotSame(entry, limiter.acquire("a"));
+    }
+
+    @Test
+    public void testSharedMeter() throws Exception {
+        // Given: a meter whose name doesn't depend on the SQL Id
+        List<Meter> removedMeters = new ArrayList<>();
+        MeterCardinalityLimiter limiter = new MeterCardinalityLimiter(0, 100L, removedMeters::addAll);
+        Timer timer = meterRegistry.timer("shared");
+        assertTrue(limiter.acquire("a").addMeter(timer));
+        Thread.sleep(60L);
+        assertTrue(limiter.acquire("b").addMeter(timer));
+        // When: only a is idle
+        Thread.sleep(60L);
+        limiter.evictIdle();
+        // Then: b still holds the meter
+        assertEquals(1, limiter.size());
+        assertTrue(removedMeters.isEmpty());
+        // When: b is idle too
+        Thread.sleep(60L);
+        limiter.evictIdle();
+        // Then
+        assertEquals(0, limiter.size());
+        assertEquals(1, removedMeters.size());
+        assertSame(timer, removedMeters.get(0));
+    }
+}
@@ -0,0 +1,155 @@
+package com.github.gquintana.metrics.sql;
+
+/*
+ * #%L
+ * Metrics SQL
+ * %%
+ * Copyright (C) 2014 Open-Source
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.github.gquintana.metrics.proxy.GeneratedProxyFactory;
+import com.github.gquintana.metrics.proxy.ProxyFactory;
+import com.github.gquintana.metrics.proxy.ReflectProxyFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.sql.DataSource;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.EnumSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test JDBC objects are not proxied when their metrics are disabled
+ */
+public class MetricFamilyTest {
+    private MeterRegistry meterRegistry;
+    private DataSource rawDataSource;
+
+    /**
+     * Naming strategy enabling only some metric families
+     */
+    private static class EnabledMetricNamingStrategy extends DefaultMetricNamingStrategy {
+        private final Set<MetricFamily> enabledMetricFamilies;
+
+        private EnabledMetricNamingStrategy(Set<MetricFamily> enabledMetricFamilies) {
+            this.enabledMetricFamilies = enabledMetricFamilies;
+        }
+
+        @Override
+        public boolean isEnabled(MetricFamily metricFamily) {
+            return enabledMetricFamilies.contains(metricFamily);
+        }
+    }
+
+    @Before
+    public void setUp() throws SQLException {
+        meterRegistry = new SimpleMeterRegistry();
+        rawDataSource = H2DbUtil.createDataSource();
+        try (Connection connection = rawDataSource.getConnection()) {
+            H2DbUtil.initTable(connection);
+        }
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        try (Connection connection = rawDataSource.getConnection()) {
+            H2DbUtil.dropTable(connection);
+        }
+        H2DbUtil.close(rawDataSource);
+    }
+
+    private JdbcProxyFactory createProxyFactory(ProxyFactory proxyFactory, Set<MetricFamily> enabledMetricFamilies) {
+        return new JdbcProxyFactory(meterRegistry, new EnabledMetricNamingStrategy(enabledMetricFamilies), proxyFactory);
+    }
+
+    private int readRows(DataSource dataSource) throws SQLException {
+        Connection connection = dataSource.getConnection();
+        Statement statement = connection.createStatement();
+        ResultSet resultSet = statement.executeQuery("select * from METRICS_TEST");
+        int rows = 0;
+        while (resultSet.next()) {
+            rows++;
+        }
+        H2DbUtil.close(resultSet, statement, connection);
+        return rows;
+    }
+
+    @Test
+    public void testAllDisabled() throws SQLException {
+        // Act
+        DataSource dataSource = createProxyFactory(new ReflectProxyFactory(), EnumSet.noneOf(MetricFamily.class)).wrapDataSource(rawDataSource);
+        // Assert
+        assertSame(rawDataSource, dataSource);
+    }
+
+    @Test
+    public void testResultSetDisabled() throws SQLException {
+        // Act
+        EnumSet<MetricFamily> enabledMetricFamilies = EnumSet.allOf(MetricFamily.class);
+        enabledMetricFamilies.remove(MetricFamily.RESULT_SET_LIFE);
+        enabledMetricFamilies.remove(MetricFamily.RESULT_SET_ROWS);
+        DataSource dataSource = createProxyFactory(new ReflectProxyFactory(), enabledMetricFamilies).wrapDataSource(rawDataSource);
+        Connection connection = dataSource.getConnection();
+        Statement statement = connection.createStatement();
+        ResultSet resultSet = statement.executeQuery("select * from METRICS_TEST");
+        H2DbUtil.close(resultSet, statement, connection);
+        // Assert
+        assertTrue(Proxy.isProxyClass(statement.getClass()));
+        assertFalse(Proxy.isProxyClass(resultSet.getClass()));
+        assertEquals(1L, meterRegistry.get("java.sql.Statement.[select * from metrics_test].exec").timer().count());
+        assertNull(meterRegistry.find("java.sql.ResultSet.[select * from metrics_test]").timer());
+    }
+
+    @Test
+    public void testConnectionGetOnly() throws SQLException {
+        // Act
+        DataSource dataSource = createProxyFactory(new ReflectProxyFactory(), EnumSet.of(MetricFamily.CONNECTION_GET)).wrapDataSource(rawDataSource);
+        Connection connection = dataSource.getConnection();
+        H2DbUtil.close(connection);
+        // Assert
+        assertTrue(Proxy.isProxyClass(dataSource.getClass()));
+        assertFalse(Proxy.isProxyClass(connection.getClass()));
+        assertEquals(1L, meterRegistry.get("java.sql.Connection.get").timer().count());
+        assertNull(meterRegistry.find("java.sql.Connection").timer());
+    }
+
+    @Test
+    public void testRowsDisabled() throws SQLException {
+        // Act
+        EnumSet<MetricFamily> enabledMetricFamilies = EnumSet.allOf(MetricFamily.class);
+        enabledMetricFamilies.remove(MetricFamily.RESULT_SET_ROWS);
+        GeneratedProxyFactory proxyFactory = new GeneratedProxyFactory();
+        DataSource dataSource = createProxyFactory(proxyFactory, enabledMetricFamilies).wrapDataSource(rawDataSource);
+        DataSource allDataSource = createProxyFactory(proxyFactory, EnumSet.allOf(MetricFamily.class)).wrapDataSource(rawDataSource);
+        int rows = readRows(dataSource);
+        // Assert
+        assertEquals(10, rows);
+        assertEquals(1L, meterRegistry.get("java.sql.ResultSet.[select * from metrics_test]").timer().count());
+        assertNull(meterRegistry.find("java.sql.ResultSet.[select * from metrics_test].rows").counter());
+        // Same proxy factory, other intercepted methods
+        readRows(allDataSource);
+        assertNotNull(meterRegistry.find("java.sql.ResultSet.[select * from metrics_test].rows").counter());
+    }
+}
@@ -22,6 +22,8 @@ package com.github.gquintana.metrics.sql;
 
 import com.github.gquintana.metrics.proxy.CGLibProxyFactory;
 import com.github.gquintana.metrics.proxy.CachingProxyFactory;
+import com.github.gquintana.metrics.proxy.FilteringReflectProxyFactory;
+import com.github.gquintana.metrics.proxy.GeneratedProxyFactory;
 import com.github.gquintana.metrics.proxy.ProxyFactory;
 import com.github.gquintana.metrics.proxy.ReflectProxyFactory;
 import com.github.gquintana.metrics.util.ParametersBuilder;
@@ -62,6 +64,8 @@ public class PerformanceTest {
                 .add("reflect", new ReflectProxyFactory())
                 .add("cglib", new CGLibProxyFactory())
                 .add("caching",new CachingProxyFactory())
+                .add("generated", new GeneratedProxyFactory())
+                .add("reflect_filtering", new FilteringReflectProxyFactory())
                 .add("raw", null)
                 .build();
     }
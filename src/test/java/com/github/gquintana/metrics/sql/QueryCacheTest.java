@@ -0,0 +1,107 @@
+package com.github.gquintana.metrics.sql;
+
+/*
+ * #%L
+ * Metrics SQL
+ * %%
+ * Copyright (C) 2014 Open-Source
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test {@link QueryCache}
+ */
+public class QueryCacheTest {
+    @Test
+    public void testHit() {
+        // Arrange
+        QueryCache queryCache = new QueryCache(10);
+        // Act
+        Query query1 = queryCache.get("select 1");
+        Query query2 = queryCache.get("select 1");
+        Query query3 = queryCache.get("select 2");
+        // Assert
+        assertSame(query1, query2);
+        assertNotSame(query1, query3);
+        assertEquals("select 1", query1.getSql());
+        assertEquals(1L, queryCache.getHitCount());
+        assertEquals(2L, queryCache.getMissCount());
+        assertEquals(0L, queryCache.getEvictionCount());
+        assertEquals(2, queryCache.size());
+    }
+
+    @Test
+    public void testClockEviction() {
+        // Arrange
+        QueryCache queryCache = new QueryCache(3);
+        Query query1 = queryCache.get("select 1");
+        Query query2 = queryCache.get("select 2");
+        queryCache.get("select 3");
+        // Act: 1 and 2 are referenced, 3 is the first one the hand finds not referenced
+        queryCache.get("select 1");
+        queryCache.get("select 2");
+        queryCache.get("select 4");
+        // Assert
+        assertEquals(1L, queryCache.getEvictionCount());
+        assertEquals(3, queryCache.size());
+        assertSame(query1, queryCache.get("select 1"));
+        assertSame(query2, queryCache.get("select 2"));
+        long missCount = queryCache.getMissCount();
+        queryCache.get("select 3");
+        assertEquals(missCount + 1, queryCache.getMissCount());
+    }
+
+    @Test
+    public void testNullSql() {
+        QueryCache queryCache = new QueryCache(3);
+        assertNull(queryCache.get(null).getSql());
+        assertEquals(0, queryCache.size());
+    }
+
+    @Test
+    public void testStatements() throws SQLException {
+        // Arrange
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        Connection rawConnection = H2DbUtil.openConnection();
+        H2DbUtil.initTable(rawConnection);
+        Connection connection = MetricsSql.forRegistry(meterRegistry)
+                .withQueryCache(16)
+                .wrap(rawConnection);
+        // Act
+        for (int i = 0; i < 5; i++) {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("select * from METRICS_TEST");
+            }
+        }
+        H2DbUtil.dropTable(rawConnection);
+        H2DbUtil.close(rawConnection);
+        // Assert
+        assertEquals(5L, meterRegistry.get("java.sql.Statement.[select * from metrics_test].exec").timer().count());
+        assertEquals(4.0, meterRegistry.get("metrics.sql.query.cache").tag("result", "hit").functionCounter().count(), 0.1);
+        assertEquals(1.0, meterRegistry.get("metrics.sql.query.cache").tag("result", "miss").functionCounter().count(), 0.1);
+        assertEquals(0.0, meterRegistry.get("metrics.sql.query.cache.evictions").functionCounter().count(), 0.1);
+        assertEquals(1.0, meterRegistry.get("metrics.sql.query.cache.size").gauge().value(), 0.1);
+    }
+}
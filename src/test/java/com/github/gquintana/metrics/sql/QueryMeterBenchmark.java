@@ -0,0 +1,77 @@
+package com.github.gquintana.metrics.sql;
+
+/*
+ * #%L
+ * Metrics SQL
+ * %%
+ * Copyright (C) 2014 Open-Source
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures metric overhead per prepared statement execution and per row:
+ * a new {@link Query} each time names and looks up meters, as it was done on every execution,
+ * while a reused {@link Query} goes straight to cached meters.
+ * Run with {@code mvn test-compile} then the main method using the test classpath.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class QueryMeterBenchmark {
+    private static final String SQL = "select * from METRICS_TEST where ID=?";
+    private MetricHelper metricHelper;
+    private Query query;
+
+    @Setup
+    public void setUp() {
+        metricHelper = new JdbcProxyFactory(new SimpleMeterRegistry()).getMetricHelper();
+        query = new Query(SQL);
+    }
+
+    @Benchmark
+    public void executeUncached() {
+        metricHelper.startPreparedStatementExecuteTimer(new Query(SQL, SQL)).close();
+    }
+
+    @Benchmark
+    public void executeCached() {
+        metricHelper.startPreparedStatementExecuteTimer(query).close();
+    }
+
+    @Benchmark
+    public void nextUncached() {
+        metricHelper.markResultSetRowMeter(new Query(SQL, SQL));
+    }
+
+    @Benchmark
+    public void nextCached() {
+        metricHelper.markResultSetRowMeter(query);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(QueryMeterBenchmark.class.getSimpleName()).build()).run();
+    }
+}
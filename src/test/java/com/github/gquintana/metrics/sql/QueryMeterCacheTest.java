@@ -0,0 +1,126 @@
+package com.github.gquintana.metrics.sql;
+
+/*
+ * #%L
+ * Metrics SQL
+ * %%
+ * Copyright (C) 2014 Open-Source
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test meters are resolved once per {@link Query}
+ */
+public class QueryMeterCacheTest {
+    private MeterRegistry meterRegistry;
+    private CountingMetricNamingStrategy namingStrategy;
+    private Connection rawConnection;
+
+    /**
+     * Naming strategy counting how many times names are built
+     */
+    private static class CountingMetricNamingStrategy extends DefaultMetricNamingStrategy {
+        private final AtomicInteger executeTimerCount = new AtomicInteger();
+        private final AtomicInteger rowMeterCount = new AtomicInteger();
+
+        @Override
+        public String getPreparedStatementExecuteTimer(String sql, String sqlId) {
+            executeTimerCount.incrementAndGet();
+            return super.getPreparedStatementExecuteTimer(sql, sqlId);
+        }
+
+        @Override
+        public String getResultSetRowMeter(String sql, String sqlId) {
+            rowMeterCount.incrementAndGet();
+            return super.getResultSetRowMeter(sql, sqlId);
+        }
+    }
+
+    @Before
+    public void setUp() throws SQLException {
+        meterRegistry = new SimpleMeterRegistry();
+        namingStrategy = new CountingMetricNamingStrategy();
+        rawConnection = H2DbUtil.openConnection();
+        H2DbUtil.initTable(rawConnection);
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        H2DbUtil.dropTable(rawConnection);
+        H2DbUtil.close(rawConnection);
+    }
+
+    @Test
+    public void testPreparedStatementExecutions() throws SQLException {
+        // Act
+        Connection connection = new JdbcProxyFactory(meterRegistry, namingStrategy).wrapConnection(rawConnection);
+        PreparedStatement statement = connection.prepareStatement("select * from METRICS_TEST where ID<?");
+        for (int i = 0; i < 5; i++) {
+            statement.setInt(1, i);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    assertNotNull(resultSet.getString("TEXT"));
+                }
+            }
+        }
+        H2DbUtil.close(statement);
+        // Assert
+        assertEquals(1, namingStrategy.executeTimerCount.get());
+        assertEquals(1, namingStrategy.rowMeterCount.get());
+        assertEquals(5L, meterRegistry.get("java.sql.PreparedStatement.[select * from metrics_test where id<?].exec").timer().count());
+    }
+
+    @Test
+    public void testQuerySharedByFactories() {
+        // Arrange
+        MeterRegistry otherMeterRegistry = new SimpleMeterRegistry();
+        MetricHelper metricHelper = new JdbcProxyFactory(meterRegistry).getMetricHelper();
+        MetricHelper otherMetricHelper = new JdbcProxyFactory(otherMeterRegistry).getMetricHelper();
+        Query query = new Query("select * from METRICS_TEST");
+        // Act
+        metricHelper.markResultSetRowMeter(query);
+        otherMetricHelper.markResultSetRowMeter(query);
+        otherMetricHelper.markResultSetRowMeter(query);
+        // Assert
+        assertEquals(1.0, meterRegistry.get("java.sql.ResultSet.[select * from metrics_test].rows").counter().count(), 0.1);
+        assertEquals(2.0, otherMeterRegistry.get("java.sql.ResultSet.[select * from metrics_test].rows").counter().count(), 0.1);
+    }
+
+    @Test
+    public void testNotMetered() {
+        // Arrange
+        MetricHelper metricHelper = new JdbcProxyFactory(meterRegistry, new FilteringMetricNamingStrategy()).getMetricHelper();
+        Query query = new Query("select * from METRICS_TEST");
+        // Act
+        TimeObservation observation = metricHelper.startPreparedStatementLifeTimer(query);
+        // Assert
+        assertNull(observation);
+        assertNotNull(metricHelper.startPreparedStatementExecuteTimer(query));
+    }
+}
@@ -0,0 +1,176 @@
+package com.github.gquintana.metrics.sql;
+
+/*
+ * #%L
+ * Metrics SQL
+ * %%
+ * Copyright (C) 2014 Open-Source
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.github.gquintana.metrics.proxy.GeneratedProxyFactory;
+import com.github.gquintana.metrics.proxy.ProxyFactory;
+import com.github.gquintana.metrics.proxy.ReflectProxyFactory;
+import com.github.gquintana.metrics.util.ParametersBuilder;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collection;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test rows are counted in batches by result set handlers
+ */
+@RunWith(Parameterized.class)
+public class ResultSetRowCountTest {
+    private static final String SQL = "select X from SYSTEM_RANGE(1, 2500)";
+    private static final String ROWS = "java.sql.ResultSet.[select x from system_range(1, 2500)].rows";
+    private final ProxyFactory proxyFactory;
+    private MeterRegistry meterRegistry;
+    private Connection rawConnection;
+
+    public ResultSetRowCountTest(ProxyFactory proxyFactory) {
+        this.proxyFactory = proxyFactory;
+    }
+
+    @Parameterized.Parameters
+    public static Collection<Object[]> getParameters() {
+        return new ParametersBuilder()
+                .add(new ReflectProxyFactory())
+                .add(new GeneratedProxyFactory())
+                .build();
+    }
+
+    @Before
+    public void setUp() throws SQLException {
+        meterRegistry = new SimpleMeterRegistry();
+        rawConnection = H2DbUtil.openConnection();
+    }
+
+    @After
+    public void tearDown() {
+        H2DbUtil.close(rawConnection);
+    }
+
+    @Test
+    public void testRows() throws SQLException {
+        // Arrange
+        Connection connection = MetricsSql.forRegistry(meterRegistry)
+                .withProxyFactory(proxyFactory)
+                .wrap(rawConnection);
+        Statement statement = connection.createStatement();
+        ResultSet resultSet = statement.executeQuery(SQL);
+        // Act
+        int rows = 0;
+        while (resultSet.next()) {
+            rows++;
+        }
+        // Assert: flushed every 1024 rows, the last false next() is not counted
+        assertEquals(2500, rows);
+        assertEquals(2048.0, meterRegistry.get(ROWS).counter().count(), 0.1);
+        resultSet.close();
+        assertEquals(2500.0, meterRegistry.get(ROWS).counter().count(), 0.1);
+        resultSet.close();
+        assertEquals(2500.0, meterRegistry.get(ROWS).counter().count(), 0.1);
+        H2DbUtil.close(statement);
+    }
+
+    private static int readRows(ResultSet resultSet, int maxRows) throws SQLException {
+        int rows = 0;
+        while (rows < maxRows && resultSet.next()) {
+            rows++;
+        }
+        return rows;
+    }
+
+    @Test
+    public void testRowsWithoutLifeTimer() throws SQLException {
+        // Arrange
+        Connection connection = MetricsSql.forRegistry(meterRegistry)
+                .withNamingStrategy(new DefaultMetricNamingStrategy() {
+                    @Override
+                    public boolean isEnabled(MetricFamily metricFamily) {
+                        return metricFamily == MetricFamily.RESULT_SET_ROWS;
+                    }
+                })
+                .withProxyFactory(proxyFactory)
+                .wrap(rawConnection);
+        Statement statement = connection.createStatement();
+        ResultSet resultSet = statement.executeQuery(SQL);
+        // Act
+        assertEquals(10, readRows(resultSet, 10));
+        resultSet.close();
+        // Assert
+        assertEquals(10.0, meterRegistry.get(ROWS).counter().count(), 0.1);
+        assertNull(meterRegistry.find("java.sql.ResultSet.[select x from system_range(1, 2500)]").timer());
+        H2DbUtil.close(statement);
+    }
+
+    @Test
+    public void testRowsOnStatementClose() throws SQLException {
+        // Arrange
+        Connection connection = MetricsSql.forRegistry(meterRegistry)
+                .withProxyFactory(proxyFactory)
+                .wrap(rawConnection);
+        Statement statement = connection.createStatement();
+        ResultSet resultSet = statement.executeQuery(SQL);
+        // Act: the result set is closed by the statement
+        assertEquals(10, readRows(resultSet, 10));
+        statement.close();
+        // Assert
+        assertEquals(10.0, meterRegistry.get(ROWS).counter().count(), 0.1);
+    }
+
+    @Test
+    public void testRowsOnExecuteAgain() throws SQLException {
+        // Arrange
+        Connection connection = MetricsSql.forRegistry(meterRegistry)
+                .withProxyFactory(proxyFactory)
+                .wrap(rawConnection);
+        PreparedStatement statement = connection.prepareStatement(SQL);
+        // Act: the first result set is closed by the second execution
+        assertEquals(10, readRows(statement.executeQuery(), 10));
+        assertEquals(20, readRows(statement.executeQuery(), 20));
+        // Assert
+        assertEquals(10.0, meterRegistry.get(ROWS).counter().count(), 0.1);
+        statement.close();
+        assertEquals(30.0, meterRegistry.get(ROWS).counter().count(), 0.1);
+    }
+
+    @Test
+    public void testRowsOnConnectionClose() throws SQLException {
+        // Arrange
+        Connection connection = MetricsSql.forRegistry(meterRegistry)
+                .withProxyFactory(proxyFactory)
+                .wrap(rawConnection);
+        ResultSet resultSet = connection.createStatement().executeQuery(SQL);
+        // Act: the statement and the result set are closed by the connection
+        assertEquals(10, readRows(resultSet, 10));
+        connection.close();
+        // Assert
+        assertEquals(10.0, meterRegistry.get(ROWS).counter().count(), 0.1);
+    }
+}
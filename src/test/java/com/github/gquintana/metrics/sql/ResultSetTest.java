@@ -78,7 +78,7 @@ public class ResultSetTest {
         assertEquals(1L, timer.getCount());
         Meter meter = meterRegistry.getDropwizardRegistry().meter("java.sql.ResultSet.[select * from metrics_test].rows");
         assertNotNull(meter);
-        assertEquals(11L, meter.getCount());
+        assertEquals(10L, meter.getCount());
     }
     @Test
     public void testResultSetUnwrap() throws SQLException {
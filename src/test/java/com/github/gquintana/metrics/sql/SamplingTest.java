@@ -0,0 +1,187 @@
+package com.github.gquintana.metrics.sql;
+
+/*
+ * #%L
+ * Metrics SQL
+ * %%
+ * Copyright (C) 2014 Open-Source
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test {@link SamplingPolicy} through {@link MetricsSql.Builder#withSampling(SamplingPolicy)}
+ */
+public class SamplingTest {
+    private static final String SQL = "select * from METRICS_TEST";
+    private MeterRegistry meterRegistry;
+    private DataSource rawDataSource;
+
+    @Before
+    public void setUp() throws SQLException {
+        meterRegistry = new SimpleMeterRegistry();
+        rawDataSource = H2DbUtil.createDataSource();
+        try (Connection connection = rawDataSource.getConnection()) {
+            H2DbUtil.initTable(connection);
+        }
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        try (Connection connection = rawDataSource.getConnection()) {
+            H2DbUtil.dropTable(connection);
+        }
+        H2DbUtil.close(rawDataSource);
+    }
+
+    private void executeQuery(JdbcProxyFactory proxyFactory, int times) throws SQLException {
+        try (Connection connection = proxyFactory.wrapConnection(rawDataSource.getConnection());
+             PreparedStatement statement = connection.prepareStatement(SQL)) {
+            for (int i = 0; i < times; i++) {
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        resultSet.getString("TEXT");
+                    }
+                }
+            }
+        }
+    }
+
+    private FunctionTimer getExecuteTimer() {
+        return meterRegistry.get("java.sql.PreparedStatement.[select * from metrics_test].exec").functionTimer();
+    }
+
+    @Test
+    public void testEveryNth() throws SQLException {
+        // Given
+        JdbcProxyFactory proxyFactory = MetricsSql.forRegistry(meterRegistry)
+                .withSampling(SamplingPolicies.everyNth(4))
+                .build();
+        // When
+        executeQuery(proxyFactory, 8);
+        // Then
+        assertEquals(8.0, getExecuteTimer().count(), 0.1);
+        assertTrue(getExecuteTimer().totalTime(TimeUnit.NANOSECONDS) > 0.0);
+        assertEquals(80.0, meterRegistry.get("java.sql.ResultSet.[select * from metrics_test].rows").counter().count(), 0.1);
+    }
+
+    @Test
+    public void testFailuresNotSampled() throws SQLException {
+        // Given
+        JdbcProxyFactory proxyFactory = MetricsSql.forRegistry(meterRegistry)
+                .withSampling(SamplingPolicies.everyNth(4))
+                .build();
+        // When
+        try (Connection connection = proxyFactory.wrapConnection(rawDataSource.getConnection());
+             Statement statement = connection.createStatement()) {
+            for (int i = 0; i < 6; i++) {
+                try {
+                    statement.executeQuery("select * from METRICS_MISSING");
+                    fail("SQLException expected");
+                } catch (SQLException e) {
+                    // Expected
+                }
+            }
+        }
+        // Then
+        assertEquals(6L, meterRegistry.get("java.sql.Statement.[select * from metrics_missing].exec.failure").timer().count());
+    }
+
+    @Test
+    public void testRuntimeChange() throws SQLException {
+        // Given
+        JdbcProxyFactory proxyFactory = MetricsSql.forRegistry(meterRegistry)
+                .withSampling(SamplingPolicies.always())
+                .build();
+        executeQuery(proxyFactory, 3);
+        // When
+        proxyFactory.setSamplingPolicy(SamplingPolicies.everyNth(2));
+        executeQuery(proxyFactory, 4);
+        // Then
+        assertEquals(7.0, getExecuteTimer().count(), 0.1);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testRuntimeChangeWithoutSampling() {
+        MetricsSql.forRegistry(meterRegistry).build()
+                .setSamplingPolicy(SamplingPolicies.everyNth(2));
+    }
+
+    @Test
+    public void testPerSqlId() {
+        SamplingPolicy policy = SamplingPolicies.perSqlId(3, 1L, TimeUnit.MILLISECONDS);
+        Query query = new Query(SQL, "sql");
+        assertEquals(3, policy.sample(MetricFamily.PREPARED_STATEMENT_EXECUTE, query));
+        assertEquals(0, policy.sample(MetricFamily.PREPARED_STATEMENT_EXECUTE, query));
+        // Slow queries are always sampled
+        policy.onSampled(query, TimeUnit.MILLISECONDS.toNanos(5L));
+        assertEquals(1, policy.sample(MetricFamily.PREPARED_STATEMENT_EXECUTE, query));
+        assertEquals(1, policy.sample(MetricFamily.PREPARED_STATEMENT_EXECUTE, query));
+        // Other queries are not
+        Query otherQuery = new Query(SQL, "other");
+        assertEquals(3, policy.sample(MetricFamily.PREPARED_STATEMENT_EXECUTE, otherQuery));
+        assertEquals(0, policy.sample(MetricFamily.PREPARED_STATEMENT_EXECUTE, otherQuery));
+        // Back to normal once fast
+        policy.onSampled(query, TimeUnit.MICROSECONDS.toNanos(5L));
+        assertEquals(0, policy.sample(MetricFamily.PREPARED_STATEMENT_EXECUTE, query));
+        assertEquals(3, policy.sample(MetricFamily.PREPARED_STATEMENT_EXECUTE, query));
+    }
+
+    @Test
+    public void testPerSqlIdBounded() {
+        SamplingPolicy policy = SamplingPolicies.perSqlId(10, 1L, TimeUnit.SECONDS);
+        // When: far more SQL Ids than kept states
+        long weights = 0L;
+        for (int i = 0; i < 100000; i++) {
+            Query query = new Query(SQL, "sql" + (i % 5000));
+            weights += policy.sample(MetricFamily.PREPARED_STATEMENT_EXECUTE, query);
+        }
+        // Then: estimated count stays close to the real one
+        assertEquals(100000.0, weights, 20000.0);
+    }
+
+    @Test
+    public void testDriverUrl() {
+        assertNull(DriverUrl.parse("jdbc:metrics:h2:mem:test").getSamplingPolicy());
+        assertSame(SamplingPolicies.always(), DriverUrl.parse("jdbc:metrics:h2:mem:test;metrics_sampling=always").getSamplingPolicy());
+        SamplingPolicy policy = DriverUrl.parse("jdbc:metrics:h2:mem:test;metrics_sampling=every_nth:2").getSamplingPolicy();
+        Query query = new Query(SQL, "sql");
+        assertEquals(2, policy.sample(MetricFamily.STATEMENT_EXECUTE, query));
+        assertEquals(0, policy.sample(MetricFamily.STATEMENT_EXECUTE, query));
+        assertNotNull(DriverUrl.parse("jdbc:metrics:h2:mem:test;metrics_sampling=random:10").getSamplingPolicy());
+        assertNotNull(DriverUrl.parse("jdbc:metrics:h2:mem:test;metrics_sampling=per_sql_id:10:100").getSamplingPolicy());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDriverUrlInvalid() {
+        DriverUrl.parse("jdbc:metrics:h2:mem:test;metrics_sampling=every_nth").getSamplingPolicy();
+    }
+}
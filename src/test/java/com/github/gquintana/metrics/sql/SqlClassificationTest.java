@@ -0,0 +1,115 @@
+package com.github.gquintana.metrics.sql;
+
+/*
+ * #%L
+ * Metrics SQL
+ * %%
+ * Copyright (C) 2014 Open-Source
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.*;
+
+public class SqlClassificationTest {
+    private static void assertClassification(String operation, String[] tables, String sql) {
+        SqlClassification classification = SqlClassification.classify(sql);
+        assertThat(classification.getOperation(), equalTo(operation));
+        assertThat(classification.getTables(), equalTo(Arrays.asList(tables)));
+    }
+
+    private static String[] tables(String... tables) {
+        return tables;
+    }
+
+    @Test
+    public void testOperations() {
+        assertClassification("select", tables("metrics_test"), "SELECT * FROM METRICS_TEST WHERE ID = 1");
+        assertClassification("insert", tables("orders"), "insert into orders(id, amount) values (?, ?), (?, ?)");
+        assertClassification("update", tables("accounts"), "update ACCOUNTS set balance = balance - 10 where id = ?");
+        assertClassification("delete", tables("sessions"), "delete from sessions where last_access < ?");
+        assertClassification("merge", tables("target", "source"), "merge into target t using source s on t.id = s.id when matched then update set t.v = s.v");
+        assertClassification("call", tables("compute_stats"), "{call compute_stats(?, ?)}");
+        assertClassification("call", tables("compute_stats"), "{? = call compute_stats(?)}");
+        assertClassification("other", tables(), "commit");
+        assertClassification("other", tables(), null);
+    }
+
+    @Test
+    public void testTables() {
+        assertClassification("select", tables("orders", "customers"),
+                "select o.id from orders o join customers c on c.id = o.customer_id where c.country in ('FR', 'DE')");
+        assertClassification("select", tables("public.users", "roles"), "select * from public.users u, roles r where u.role_id = r.id");
+        assertClassification("delete", tables("sessions", "users"),
+                "delete from sessions where user_id not in (select id from users where status = 'ACTIVE')");
+        assertClassification("select", tables("events"), "select extract(year from e.created_at), count(*) from events e group by 1");
+        assertClassification("select", tables("My Table"), "select \"Name\" from \"My Table\" -- from comment");
+        assertClassification("select", tables("accounts"), "select * from accounts where id = ? for update");
+        assertClassification("insert", tables("counters"), "insert into counters(id, n) values (?, 1) on duplicate key update n = n + 1");
+    }
+
+    @Test
+    public void testCommonTableExpressions() {
+        assertClassification("select", tables("orders", "customers"),
+                "with recent as (select * from orders where created_at > ?), big as (select * from recent where amount > ?) " +
+                        "select * from big join customers c on c.id = big.customer_id");
+    }
+
+    @Test
+    public void testTableMetrics() throws SQLException {
+        // Given
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        DataSource rawDataSource = H2DbUtil.createDataSource();
+        DataSource dataSource = MetricsSql.forRegistry(meterRegistry)
+                .withTableMetrics()
+                .wrap(rawDataSource);
+        try (Connection connection = dataSource.getConnection()) {
+            H2DbUtil.initTable(connection);
+            // When
+            for (int i = 0; i < 2; i++) {
+                try (PreparedStatement statement = connection.prepareStatement("select * from METRICS_TEST where ID < ?")) {
+                    statement.setInt(1, 5);
+                    try (ResultSet resultSet = statement.executeQuery()) {
+                        while (resultSet.next()) {
+                            assertNotNull(resultSet.getString("TEXT"));
+                        }
+                    }
+                }
+            }
+            try (Statement statement = connection.createStatement()) {
+                statement.executeUpdate("update METRICS_TEST set TEXT = 'Updated' where ID = 1");
+            }
+            H2DbUtil.dropTable(connection);
+        }
+        // Then
+        assertEquals(2L, meterRegistry.get("jdbc.table.execute").tags("operation", "select", "table", "metrics_test").timer().count());
+        assertEquals(1L, meterRegistry.get("jdbc.table.execute").tags("operation", "update", "table", "metrics_test").timer().count());
+        assertEquals(10.0, meterRegistry.get("jdbc.table.rows").tags("operation", "select", "table", "metrics_test").counter().count(), 0.1);
+        // Classified once per distinct SQL: the query cache is enabled
+        assertTrue(meterRegistry.get("metrics.sql.query.cache").tag("result", "hit").functionCounter().count() >= 1.0);
+    }
+}
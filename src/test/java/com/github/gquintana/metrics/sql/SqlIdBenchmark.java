@@ -0,0 +1,94 @@
+package com.github.gquintana.metrics.sql;
+
+/*
+ * #%L
+ * Metrics SQL
+ * %%
+ * Copyright (C) 2014 Open-Source
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares SQL Id computation of naming strategies on a corpus of ORM generated and hand written queries,
+ * {@code sql-corpus.sql} where queries are separated by blank lines.
+ * Run with {@code mvn test-compile} then the main method using the test classpath.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SqlIdBenchmark {
+    private String[] corpus;
+    private MetricNamingStrategy defaultStrategy;
+    private MetricNamingStrategy strictStrategy;
+    private MetricNamingStrategy fingerprintStrategy;
+
+    @Setup
+    public void setUp() throws IOException {
+        try (InputStream inputStream = SqlIdBenchmark.class.getResourceAsStream("/sql-corpus.sql");
+             Scanner scanner = new Scanner(inputStream, StandardCharsets.UTF_8.name())) {
+            List<String> queries = new ArrayList<>();
+            scanner.useDelimiter("\\R\\s*\\R");
+            while (scanner.hasNext()) {
+                queries.add(scanner.next().trim());
+            }
+            corpus = queries.toArray(new String[0]);
+        }
+        defaultStrategy = new DefaultMetricNamingStrategy();
+        strictStrategy = new StrictMetricNamingStrategy();
+        fingerprintStrategy = new FingerprintMetricNamingStrategy();
+    }
+
+    private void getSqlIds(MetricNamingStrategy strategy, Blackhole blackhole) {
+        for (String sql : corpus) {
+            blackhole.consume(strategy.getSqlId(sql));
+        }
+    }
+
+    @Benchmark
+    public void defaultStrategy(Blackhole blackhole) {
+        getSqlIds(defaultStrategy, blackhole);
+    }
+
+    @Benchmark
+    public void strictStrategy(Blackhole blackhole) {
+        getSqlIds(strictStrategy, blackhole);
+    }
+
+    @Benchmark
+    public void fingerprintStrategy(Blackhole blackhole) {
+        getSqlIds(fingerprintStrategy, blackhole);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(SqlIdBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,111 @@
+package com.github.gquintana.metrics.sql;
+
+/*
+ * #%L
+ * Metrics SQL
+ * %%
+ * Copyright (C) 2014 Open-Source
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.github.gquintana.metrics.proxy.CachingProxyFactory;
+import com.github.gquintana.metrics.proxy.GeneratedProxyFactory;
+import com.github.gquintana.metrics.proxy.ProxyFactory;
+import com.github.gquintana.metrics.proxy.ReflectProxyFactory;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures time to first instrumented query in a fresh JVM, with and without
+ * {@link JdbcProxyFactory#warmUp(ClassLoader)}.
+ * The H2 driver is warmed up before measuring, only proxy and handler costs are measured.
+ * Run with {@code mvn test-compile} then the main method using the test classpath.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(10)
+@State(Scope.Benchmark)
+public class StartupBenchmark {
+    @Param({"reflect", "caching", "generated"})
+    private String proxyFactoryName;
+    @Param({"false", "true"})
+    private boolean warmUp;
+    private DataSource rawDataSource;
+    private JdbcProxyFactory jdbcProxyFactory;
+
+    @Setup
+    public void setUp() throws SQLException {
+        rawDataSource = H2DbUtil.createDataSource();
+        try (Connection connection = rawDataSource.getConnection()) {
+            H2DbUtil.initTable(connection);
+            try (PreparedStatement statement = connection.prepareStatement("select * from METRICS_TEST where ID=?")) {
+                statement.setInt(1, 1);
+                H2DbUtil.close(statement.executeQuery());
+            }
+        }
+        ProxyFactory proxyFactory;
+        switch (proxyFactoryName) {
+            case "caching":
+                proxyFactory = new CachingProxyFactory();
+                break;
+            case "generated":
+                proxyFactory = new GeneratedProxyFactory();
+                break;
+            default:
+                proxyFactory = new ReflectProxyFactory();
+        }
+        jdbcProxyFactory = new JdbcProxyFactory(new SimpleMeterRegistry(), new DefaultMetricNamingStrategy(), proxyFactory);
+        if (warmUp) {
+            // As if the background warm up was over when the first query comes
+            jdbcProxyFactory.warmUp(getClass().getClassLoader());
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        try (Connection connection = rawDataSource.getConnection()) {
+            H2DbUtil.dropTable(connection);
+        }
+        H2DbUtil.close(rawDataSource);
+    }
+
+    @Benchmark
+    public int firstQuery() throws SQLException {
+        DataSource dataSource = jdbcProxyFactory.wrapDataSource(rawDataSource);
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement("select * from METRICS_TEST where ID=?")) {
+            statement.setInt(1, 1);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next() ? resultSet.getInt(1) : -1;
+            }
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(StartupBenchmark.class.getSimpleName()).build()).run();
+    }
+}
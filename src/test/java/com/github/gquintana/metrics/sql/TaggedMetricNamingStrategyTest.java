@@ -0,0 +1,118 @@
+package com.github.gquintana.metrics.sql;
+
+/*
+ * #%L
+ * Metrics SQL
+ * %%
+ * Copyright (C) 2014 Open-Source
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.sql.DataSource;
+import java.sql.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test {@link TaggedMetricNamingStrategy}
+ */
+public class TaggedMetricNamingStrategyTest {
+    private MeterRegistry meterRegistry;
+    private DataSource rawDataSource;
+    private DataSource dataSource;
+
+    @Before
+    public void setUp() throws SQLException {
+        meterRegistry = new SimpleMeterRegistry();
+        rawDataSource = H2DbUtil.createDataSource();
+        try (Connection connection = rawDataSource.getConnection()) {
+            H2DbUtil.initTable(connection);
+        }
+        dataSource = MetricsSql.forRegistry(meterRegistry)
+                .withTaggedNamingStrategy("test_db")
+                .wrap(rawDataSource);
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        try (Connection connection = rawDataSource.getConnection()) {
+            H2DbUtil.dropTable(connection);
+        }
+        H2DbUtil.close(dataSource);
+    }
+
+    @Test
+    public void testGetTags() {
+        TaggedMetricNamingStrategy strategy = new TaggedMetricNamingStrategy();
+        String sqlId = strategy.getSqlId("SELECT 1");
+        assertEquals(HashedMetricNamingStrategy.hash(SqlFingerprinter.fingerprint("SELECT 1")), sqlId);
+        assertEquals(sqlId, strategy.getSqlId("SELECT 2"));
+        Tags tags = strategy.getTags(MetricFamily.PREPARED_STATEMENT_EXECUTE, "SELECT 1", sqlId);
+        assertEquals(Tags.of("database", "default", "kind", "prepared", "sql", sqlId), tags);
+        assertSame(tags, strategy.getTags(MetricFamily.PREPARED_STATEMENT_EXECUTE, "SELECT 1", sqlId));
+        assertEquals(Tags.of("database", "default", "sql", sqlId), strategy.getTags(MetricFamily.RESULT_SET_LIFE, "SELECT 1", sqlId));
+    }
+
+    @Test
+    public void testTagsCacheBounded() {
+        TaggedMetricNamingStrategy strategy = new TaggedMetricNamingStrategy();
+        for (int i = 0; i < TaggedMetricNamingStrategy.TAGS_CACHE_SIZE * 2; i++) {
+            String sql = "select * from table_" + i;
+            strategy.getTags(MetricFamily.STATEMENT_EXECUTE, sql, strategy.getSqlId(sql));
+        }
+        assertEquals(TaggedMetricNamingStrategy.TAGS_CACHE_SIZE, strategy.getTagsCacheSize());
+    }
+
+    @Test
+    public void testStatementsAndResultSet() throws SQLException {
+        // Act
+        Connection connection = dataSource.getConnection();
+        Statement statement = connection.createStatement();
+        ResultSet resultSet = statement.executeQuery("select * from METRICS_TEST");
+        while (resultSet.next()) {
+            resultSet.getString("TEXT");
+        }
+        H2DbUtil.close(resultSet, statement);
+        PreparedStatement preparedStatement = connection.prepareStatement("select * from METRICS_TEST where ID=?");
+        preparedStatement.setInt(1, 3);
+        preparedStatement.execute();
+        H2DbUtil.close(preparedStatement, connection);
+        // Assert
+        TaggedMetricNamingStrategy strategy = new TaggedMetricNamingStrategy();
+        String selectId = strategy.getSqlId("select * from METRICS_TEST");
+        String selectByIdId = strategy.getSqlId("select * from METRICS_TEST where ID=?");
+        assertEquals(1L, meterRegistry.get("jdbc.connection.get").tag("database", "test_db").timer().count());
+        assertEquals(1L, meterRegistry.get("jdbc.connection.life").tag("database", "test_db").timer().count());
+        assertEquals(1L, meterRegistry.get("jdbc.statement.life").tags("kind", "statement", "sql", "none").timer().count());
+        assertEquals(1L, meterRegistry.get("jdbc.statement.execute").tags("kind", "statement", "sql", selectId).timer().count());
+        assertEquals(1L, meterRegistry.get("jdbc.statement.life").tags("kind", "prepared", "sql", selectByIdId).timer().count());
+        assertEquals(1L, meterRegistry.get("jdbc.statement.execute").tags("kind", "prepared", "sql", selectByIdId).timer().count());
+        assertEquals(1L, meterRegistry.get("jdbc.resultset.life").tag("sql", selectId).timer().count());
+        assertEquals(10.0, meterRegistry.get("jdbc.resultset.rows").tag("sql", selectId).counter().count(), 0.1);
+    }
+
+    @Test
+    public void testDriverUrl() {
+        DriverUrl driverUrl = DriverUrl.parse("jdbc:metrics:h2:mem:test;metrics_naming_strategy=tagged");
+        assertEquals(TaggedMetricNamingStrategy.class, driverUrl.getNamingStrategyClass());
+    }
+}
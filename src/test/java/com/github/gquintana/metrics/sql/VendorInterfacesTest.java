@@ -0,0 +1,111 @@
+package com.github.gquintana.metrics.sql;
+
+/*
+ * #%L
+ * Metrics SQL
+ * %%
+ * Copyright (C) 2014 Open-Source
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.github.gquintana.metrics.proxy.GeneratedProxyFactory;
+import com.github.gquintana.metrics.proxy.ProxyFactory;
+import com.github.gquintana.metrics.proxy.ReflectProxyFactory;
+import com.github.gquintana.metrics.util.ParametersBuilder;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.h2.jdbc.JdbcConnectionBackwardsCompat;
+import org.h2.jdbc.JdbcResultSetBackwardsCompat;
+import org.h2.jdbc.JdbcStatementBackwardsCompat;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.sql.*;
+import java.util.Collection;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test {@link MetricsSql.Builder#withVendorInterfaces()}
+ */
+@RunWith(Parameterized.class)
+public class VendorInterfacesTest {
+    private final ProxyFactory proxyFactory;
+    private MeterRegistry meterRegistry;
+    private Connection rawConnection;
+
+    public VendorInterfacesTest(ProxyFactory proxyFactory) {
+        this.proxyFactory = proxyFactory;
+    }
+
+    @Parameterized.Parameters
+    public static Collection<Object[]> getParameters() {
+        return new ParametersBuilder()
+                .add(new ReflectProxyFactory())
+                .add(new GeneratedProxyFactory())
+                .build();
+    }
+
+    @Before
+    public void setUp() throws SQLException {
+        meterRegistry = new SimpleMeterRegistry();
+        rawConnection = H2DbUtil.openConnection();
+        H2DbUtil.initTable(rawConnection);
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        H2DbUtil.dropTable(rawConnection);
+        H2DbUtil.close(rawConnection);
+    }
+
+    @Test
+    public void testVendorInterfaces() throws SQLException {
+        // Act
+        Connection connection = MetricsSql.forRegistry(meterRegistry)
+                .withProxyFactory(proxyFactory)
+                .withVendorInterfaces()
+                .wrap(rawConnection);
+        Statement statement = connection.createStatement();
+        ResultSet resultSet = statement.executeQuery("select * from METRICS_TEST");
+        int rows = 0;
+        while (resultSet.next()) {
+            rows++;
+        }
+        // Assert
+        assertTrue(connection instanceof JdbcConnectionBackwardsCompat);
+        assertTrue(statement instanceof JdbcStatementBackwardsCompat);
+        assertTrue(resultSet instanceof JdbcResultSetBackwardsCompat);
+        assertFalse(connection instanceof org.h2.jdbc.JdbcConnection);
+        H2DbUtil.close(resultSet, statement);
+        assertEquals(10, rows);
+        assertEquals(1L, meterRegistry.get("java.sql.Statement.[select * from metrics_test].exec").timer().count());
+        assertEquals(1L, meterRegistry.get("java.sql.ResultSet.[select * from metrics_test]").timer().count());
+    }
+
+    @Test
+    public void testJdbcInterfacesOnly() throws SQLException {
+        // Act
+        Connection connection = MetricsSql.forRegistry(meterRegistry)
+                .withProxyFactory(proxyFactory)
+                .wrap(rawConnection);
+        // Assert
+        assertFalse(connection instanceof JdbcConnectionBackwardsCompat);
+        assertTrue(connection.isWrapperFor(JdbcConnectionBackwardsCompat.class));
+    }
+}
@@ -0,0 +1,154 @@
+package com.github.gquintana.metrics.sql;
+
+/*
+ * #%L
+ * Metrics SQL
+ * %%
+ * Copyright (C) 2014 Open-Source
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.github.gquintana.metrics.proxy.GeneratedProxyFactory;
+import com.github.gquintana.metrics.proxy.ProxyClass;
+import com.github.gquintana.metrics.proxy.ProxyHandler;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.sql.DataSource;
+import javax.sql.RowSet;
+import javax.sql.rowset.CachedRowSet;
+import javax.sql.rowset.FilteredRowSet;
+import javax.sql.rowset.JdbcRowSet;
+import javax.sql.rowset.JoinRowSet;
+import javax.sql.rowset.WebRowSet;
+import java.sql.*;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test {@link JdbcProxyFactory#warmUp(ClassLoader)}
+ */
+public class WarmUpTest {
+    private MeterRegistry meterRegistry;
+    private DataSource rawDataSource;
+    private RecordingProxyFactory proxyFactory;
+
+    /**
+     * Proxy factory recording proxied interfaces
+     */
+    private static class RecordingProxyFactory extends GeneratedProxyFactory {
+        private final Set<Class<?>> interfaces = ConcurrentHashMap.newKeySet();
+        private final Set<ClassLoader> classLoaders = ConcurrentHashMap.newKeySet();
+
+        @Override
+        public <T> T newProxy(ProxyHandler<T> proxyHandler, ProxyClass proxyClass) {
+            interfaces.addAll(Arrays.asList(proxyClass.getInterfaces()));
+            classLoaders.add(proxyClass.getClassLoader());
+            return super.newProxy(proxyHandler, proxyClass);
+        }
+    }
+
+    @Before
+    public void setUp() throws SQLException {
+        meterRegistry = new SimpleMeterRegistry();
+        rawDataSource = H2DbUtil.createDataSource();
+        try (Connection connection = rawDataSource.getConnection()) {
+            H2DbUtil.initTable(connection);
+        }
+        proxyFactory = new RecordingProxyFactory();
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        try (Connection connection = rawDataSource.getConnection()) {
+            H2DbUtil.dropTable(connection);
+        }
+        H2DbUtil.close(rawDataSource);
+    }
+
+    @Test
+    public void testWarmUp() {
+        // Act
+        new JdbcProxyFactory(meterRegistry, new DefaultMetricNamingStrategy(), proxyFactory).warmUp(getClass().getClassLoader());
+        // Assert
+        assertEquals(new HashSet<Class<?>>(Arrays.asList(DataSource.class, Connection.class,
+                Statement.class, PreparedStatement.class, CallableStatement.class,
+                ResultSet.class, RowSet.class, JdbcRowSet.class, CachedRowSet.class,
+                WebRowSet.class, FilteredRowSet.class, JoinRowSet.class)), proxyFactory.interfaces);
+        assertTrue(meterRegistry.getMeters().isEmpty());
+    }
+
+    @Test
+    public void testWarmUpInBackground() throws Exception {
+        // Act
+        JdbcProxyFactory jdbcProxyFactory = MetricsSql.forRegistry(meterRegistry)
+                .withProxyFactory(proxyFactory)
+                .build();
+        jdbcProxyFactory.warmUpInBackground(getClass().getClassLoader()).join();
+        DataSource dataSource = jdbcProxyFactory.wrapDataSource(rawDataSource);
+        Connection connection = dataSource.getConnection();
+        Statement statement = connection.createStatement();
+        ResultSet resultSet = statement.executeQuery("select * from METRICS_TEST");
+        H2DbUtil.close(resultSet, statement, connection);
+        // Assert
+        assertTrue(proxyFactory.interfaces.contains(JoinRowSet.class));
+        assertEquals(1L, meterRegistry.get("java.sql.Statement.[select * from metrics_test].exec").timer().count());
+        assertEquals(1L, meterRegistry.get("java.sql.ResultSet.[select * from metrics_test]").timer().count());
+    }
+
+    @Test
+    public void testWarmUpWrappedClassLoader() throws Exception {
+        // Act
+        Thread thread = Thread.currentThread();
+        ClassLoader contextClassLoader = thread.getContextClassLoader();
+        thread.setContextClassLoader(new ClassLoader(contextClassLoader) {
+        });
+        try {
+            MetricsSql.forRegistry(meterRegistry)
+                    .withProxyFactory(proxyFactory)
+                    .withWarmUp()
+                    .wrap(rawDataSource);
+        } finally {
+            thread.setContextClassLoader(contextClassLoader);
+        }
+        for (int i = 0; i < 500 && !proxyFactory.interfaces.contains(JoinRowSet.class); i++) {
+            Thread.sleep(10L);
+        }
+        // Assert
+        assertTrue(proxyFactory.interfaces.contains(JoinRowSet.class));
+        assertEquals(new HashSet<>(Arrays.asList(rawDataSource.getClass().getClassLoader())), proxyFactory.classLoaders);
+    }
+
+    @Test
+    public void testWarmUpDisabledTypes() {
+        // Act
+        MetricNamingStrategy namingStrategy = new DefaultMetricNamingStrategy() {
+            @Override
+            public boolean isEnabled(MetricFamily metricFamily) {
+                return metricFamily == MetricFamily.CONNECTION_GET;
+            }
+        };
+        new JdbcProxyFactory(meterRegistry, namingStrategy, proxyFactory).warmUp(getClass().getClassLoader());
+        // Assert
+        assertEquals(new HashSet<Class<?>>(Arrays.asList(DataSource.class)), proxyFactory.interfaces);
+    }
+}
@@ -0,0 +1,29 @@
+select user0_.id as id1_4_, user0_.created_at as created_2_4_, user0_.email as email3_4_, user0_.first_name as first_na4_4_, user0_.last_name as last_nam5_4_, user0_.password_hash as password6_4_, user0_.status as status7_4_, user0_.updated_at as updated_8_4_ from users user0_ where user0_.email='john.doe@example.com' and user0_.status=1
+
+select orders0_.customer_id as customer5_2_0_, orders0_.id as id1_2_0_, orders0_.id as id1_2_1_, orders0_.amount as amount2_2_1_, orders0_.created_at as created_3_2_1_, orders0_.customer_id as customer5_2_1_, orders0_.status as status4_2_1_ from orders orders0_ where orders0_.customer_id in (101, 102, 103, 104, 105, 106, 107, 108, 109, 110, 111, 112, 113, 114, 115, 116)
+
+/* load one-to-many com.example.Order.lines */ SELECT lines0_.ORDER_ID AS ORDER_ID4_3_0_, lines0_.ID AS ID1_3_0_, lines0_.ID AS ID1_3_1_, lines0_.PRODUCT_ID AS PRODUCT_2_3_1_, lines0_.QUANTITY AS QUANTITY3_3_1_
+FROM ORDER_LINES lines0_
+WHERE lines0_.ORDER_ID = 987654
+
+INSERT INTO audit_log (id, entity, entity_id, action, payload, created_at) VALUES (nextval('audit_seq'), 'Order', 987654, 'UPDATE', '{"status":"SHIPPED","carrier":"UPS","tracking":"1Z999AA10123456784"}', '2018-06-12 15:50:00')
+
+insert into metrics(id, name, value) values (1, 'cpu', 0.75), (2, 'memory', 0.5), (3, 'disk', 0.25), (4, 'network', 1.0)
+
+UPDATE accounts SET balance = balance - 250.00, updated_at = CURRENT_TIMESTAMP WHERE id = 42 AND balance >= 250.00
+
+-- Daily report
+SELECT date_trunc('day', o.created_at) AS day, count(*) AS orders, sum(o.amount) AS revenue
+FROM orders o
+JOIN customers c ON c.id = o.customer_id
+WHERE o.created_at >= '2018-01-01' AND o.created_at < '2018-02-01' AND c.country IN ('FR', 'DE', 'IT', 'ES')
+GROUP BY 1
+ORDER BY 1
+
+select "Id", "FirstName", "LastName" from "Customers" where "Id" = 17
+
+SELECT [p].[ProductId], [p].[Name], [p].[Price] FROM [Products] AS [p] WHERE [p].[CategoryId] = @__categoryId_0 AND [p].[Price] > 19.99
+
+select * from METRICS_TEST where ID=?
+
+delete from sessions where last_access < 1528812600000 and user_id not in (select id from users where status = 'ACTIVE')